@@ -0,0 +1,163 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.apache.maven.monitor.logging.DefaultLog;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Fixtures shared by the benchmarks.
+ */
+final class BenchmarkSupport {
+
+    /**
+     * A typical script, checked by end-to-end benchmarks.
+     */
+    static final String SCRIPT = "#!/bin/bash\n\necho \"Hello\"\nfor item in $(ls -1); do echo $item; done\n";
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * @return a maven logger discarding everything, so that benchmarks do not measure console output
+     */
+    static Log silentLog() {
+        return new DefaultLog(new ConsoleLogger(Logger.LEVEL_DISABLED, "benchmark"));
+    }
+
+    /**
+     * Creates a tree of files, 100 per directory in directories 3 levels deep, half of them named *.sh.
+     *
+     * @param root  the root of the tree
+     * @param files the number of files
+     * @return the scripts (*.sh) created
+     * @throws IOException if files cannot be written
+     */
+    static List<Path> createTree(Path root, int files) throws IOException {
+        final List<Path> scripts = new ArrayList<>();
+        for (int i = 0; i < files; i++) {
+            final int dir = i / 100;
+            final Path directory = root.resolve("d" + dir / 100).resolve("d" + dir / 10).resolve("d" + dir);
+            Files.createDirectories(directory);
+            final boolean script = i % 2 == 0;
+            final Path file = directory.resolve("f" + i + (script ? ".sh" : ".txt"));
+            Files.write(file, SCRIPT.getBytes(StandardCharsets.UTF_8));
+            if (script) {
+                scripts.add(file);
+            }
+        }
+        return scripts;
+    }
+
+    /**
+     * Creates a fast stand-in for shellcheck, that checks nothing and exits with 0 (unix only).
+     *
+     * @param directory where to create it
+     * @return the stub binary
+     * @throws IOException if it cannot be written
+     */
+    static Path createStubBinary(Path directory) throws IOException {
+        final Path stub = directory.resolve("shellcheck-stub");
+        Files.write(stub, "#!/bin/sh\nexit 0\n".getBytes(StandardCharsets.UTF_8));
+        Architecture.detect().makeExecutable(stub);
+        return stub;
+    }
+
+    /**
+     * @param directory where the embedded binary is extracted
+     * @return the shellcheck binary to benchmark: the one in the "shellcheck.binary" system property or, if not
+     * set, the one embedded in the plugin (extracted in the given directory)
+     * @throws Exception if the embedded binary cannot be extracted
+     */
+    static Path realBinary(Path directory) throws Exception {
+        final String configured = System.getProperty("shellcheck.binary");
+        if (configured != null) {
+            return Paths.get(configured);
+        }
+        return resolver(directory, Optional.of(new BinaryStore(directory.resolve("store"))))
+                .resolve(BinaryResolutionMethod.embedded);
+    }
+
+    /**
+     * @param directory   the target directory of the resolver
+     * @param binaryStore the binary store, if any
+     * @return a binary resolver with no download urls configured
+     */
+    static BinaryResolver resolver(Path directory, Optional<BinaryStore> binaryStore) {
+        return resolver(directory, Collections.emptyMap(), binaryStore);
+    }
+
+    /**
+     * @param directory          the target directory of the resolver
+     * @param releaseArchiveUrls the download urls
+     * @param binaryStore        the binary store, if any
+     * @return a binary resolver
+     */
+    static BinaryResolver resolver(Path directory, Map<String, URL> releaseArchiveUrls,
+                                   Optional<BinaryStore> binaryStore) {
+        return new BinaryResolver(directory, Optional.empty(), releaseArchiveUrls,
+                Collections.emptyMap(), Optional.empty(), binaryStore, "benchmark", silentLog());
+    }
+
+    /**
+     * Deletes a directory tree.
+     *
+     * @param root the root of the tree
+     * @throws IOException if something cannot be deleted
+     */
+    static void delete(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,138 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The binary resolution paths: extraction of the embedded binary, reuse of an already resolved binary (from the
+ * binary store or the project target directory) and download (from a local file:// release archive, so that only
+ * the plugin cost is measured, not the network).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BinaryResolutionBenchmark {
+
+    private Path root;
+    private Path coldTarget;
+    private Path warmTarget;
+    private BinaryStore warmStore;
+    private Path releaseArchive;
+
+    @Setup(Level.Trial)
+    public void prepare() throws Exception {
+        root = Files.createTempDirectory("shellcheck-resolution");
+        coldTarget = root.resolve("cold");
+
+        warmStore = new BinaryStore(root.resolve("store"));
+        BenchmarkSupport.resolver(root.resolve("warm-store"), Optional.of(warmStore)).resolve(BinaryResolutionMethod.embedded);
+        warmTarget = root.resolve("warm-target");
+        BenchmarkSupport.resolver(warmTarget, Optional.empty()).resolve(BinaryResolutionMethod.embedded);
+
+        // a release archive with the embedded binary
+        releaseArchive = root.resolve("shellcheck.tar.xz");
+        final Architecture arch = Architecture.detect();
+        final byte[] binary = readEmbeddedBinary(arch);
+        try (final TarArchiveOutputStream tar = new TarArchiveOutputStream(new XZCompressorOutputStream(Files.newOutputStream(releaseArchive)))) {
+            final TarArchiveEntry entry = new TarArchiveEntry("shellcheck-v" + Shellcheck.VERSION + "/shellcheck" + arch.idiomaticExecutableSuffix());
+            entry.setSize(binary.length);
+            tar.putArchiveEntry(entry);
+            tar.write(binary);
+            tar.closeArchiveEntry();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void cleanColdTarget() throws IOException {
+        BenchmarkSupport.delete(coldTarget);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteAll() throws IOException {
+        BenchmarkSupport.delete(root);
+    }
+
+    @Benchmark
+    public Path embeddedExtraction() throws Exception {
+        return BenchmarkSupport.resolver(coldTarget, Optional.empty()).resolve(BinaryResolutionMethod.embedded);
+    }
+
+    @Benchmark
+    public Path embeddedFromStore() throws Exception {
+        return BenchmarkSupport.resolver(root.resolve("warm-store"), Optional.of(warmStore)).resolve(BinaryResolutionMethod.embedded);
+    }
+
+    @Benchmark
+    public Path embeddedUpToDateInTarget() throws Exception {
+        return BenchmarkSupport.resolver(warmTarget, Optional.empty()).resolve(BinaryResolutionMethod.embedded);
+    }
+
+    @Benchmark
+    public Path download() throws Exception {
+        return BenchmarkSupport.resolver(coldTarget,
+                Collections.singletonMap(Architecture.osArchKey(), releaseArchive.toUri().toURL()),
+                Optional.empty()).resolve(BinaryResolutionMethod.download);
+    }
+
+    private static byte[] readEmbeddedBinary(Architecture arch) throws IOException {
+        try (final InputStream in = BinaryResolutionBenchmark.class.getResourceAsStream(arch.embeddedBinPath())) {
+            if (in == null) {
+                throw new IOException("No embedded binary for [" + arch + "] in the plugin jar");
+            }
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.apache.maven.plugin.logging.Log;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Discovery of the files to check (the default "**&#47;*.sh" include) in synthetic trees of different sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DiscoveryBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int files;
+
+    private Path root;
+    private List<SourceDir> sourceDirs;
+    private final Log log = BenchmarkSupport.silentLog();
+
+    @Setup(Level.Trial)
+    public void createTree() throws IOException {
+        root = Files.createTempDirectory("shellcheck-discovery");
+        BenchmarkSupport.createTree(root, files);
+
+        final SourceDir sourceDir = new SourceDir();
+        sourceDir.setDirectory(root.toFile().getAbsolutePath());
+        sourceDir.addInclude("**/*.sh");
+        sourceDirs = Collections.singletonList(sourceDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTree() throws IOException {
+        BenchmarkSupport.delete(root);
+    }
+
+    @Benchmark
+    public List<Path> find() {
+        return ScriptFinder.find(sourceDirs, log);
+    }
+}
@@ -0,0 +1,91 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of shellcheck json1 output (from file, as the plugin does) with different numbers of findings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class Json1ParserBenchmark {
+
+    @Param({"1000", "100000"})
+    private int findings;
+
+    private Path output;
+
+    @Setup(Level.Trial)
+    public void writeOutput() throws IOException {
+        output = Files.createTempFile("shellcheck", ".json");
+        try (final BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            writer.write("{\"comments\":[");
+            for (int i = 0; i < findings; i++) {
+                writer.write(i == 0 ? "" : ",");
+                writer.write("{\"file\":\"/repo/module-" + (i / 100) + "/src/main/sh/script.sh\",\"line\":" + i
+                        + ",\"endLine\":" + i + ",\"column\":6,\"endColumn\":11,\"level\":\"info\",\"code\":2086,"
+                        + "\"message\":\"Double quote to prevent globbing and word splitting.\","
+                        + "\"fix\":{\"replacements\":[{\"line\":" + i + ",\"endLine\":" + i + ",\"column\":6,"
+                        + "\"endColumn\":6,\"insertionPoint\":\"afterEnd\",\"precedence\":7,\"replacement\":\"\\\"\"},"
+                        + "{\"line\":" + i + ",\"endLine\":" + i + ",\"column\":11,\"endColumn\":11,"
+                        + "\"insertionPoint\":\"beforeStart\",\"precedence\":7,\"replacement\":\"\\\"\"}]}}");
+            }
+            writer.write("]}");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteOutput() throws IOException {
+        Files.deleteIfExists(output);
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) throws IOException {
+        Json1Parser.parse(output, blackhole::consume);
+    }
+}
@@ -0,0 +1,86 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end shellcheck runs, with the real binary (the embedded one, or the one in the "shellcheck.binary" system
+ * property) and with a stub that exits immediately, isolating the cost of process handling from shellcheck's own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ShellcheckRunBenchmark {
+
+    @Param({"stub", "real"})
+    private String binaryKind;
+
+    @Param({"1", "100"})
+    private int files;
+
+    private Path root;
+    private Path binary;
+    private List<Path> scripts;
+
+    @Setup(Level.Trial)
+    public void prepare() throws Exception {
+        root = Files.createTempDirectory("shellcheck-run");
+        scripts = BenchmarkSupport.createTree(root.resolve("src"), files * 2);
+        binary = binaryKind.equals("stub")
+                ? BenchmarkSupport.createStubBinary(root)
+                : BenchmarkSupport.realBinary(root.resolve("bin"));
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteAll() throws IOException {
+        BenchmarkSupport.delete(root);
+    }
+
+    @Benchmark
+    public int run() throws IOException, InterruptedException {
+        return Shellcheck.run(binary, Collections.emptyList(), root, scripts).exitCode;
+    }
+}
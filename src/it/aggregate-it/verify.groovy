@@ -0,0 +1,7 @@
+import java.nio.file.Files
+import java.nio.file.Paths
+
+def report = Files.readAllLines(Paths.get(basedir.getAbsolutePath(), "target/shellcheck-plugin/aggregate-report.txt"))
+
+assert report.contains("dev.dimlight.it:module-a:pom:1.0-SNAPSHOT: [2] findings")
+assert report.contains("dev.dimlight.it:module-b:pom:1.0-SNAPSHOT: [0] findings")
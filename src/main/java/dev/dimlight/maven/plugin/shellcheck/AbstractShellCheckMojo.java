@@ -0,0 +1,817 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * The configuration and the steps shared by the goals running shellcheck: binary resolution, (cached, parallel)
+ * execution and findings reporting.
+ */
+public abstract class AbstractShellCheckMojo extends AbstractMojo {
+
+    /**
+     * The way the plugin should attempt binary resolution
+     */
+    @Parameter(required = true, readonly = true, defaultValue = "download")
+    private BinaryResolutionMethod binaryResolutionMethod;
+
+    /**
+     * The path of the external binary, used only if binaryResolutionMethod is set to "external"
+     *
+     * @see BinaryResolutionMethod
+     */
+    @Parameter(required = false, readonly = true)
+    private File externalBinaryPath;
+
+    /**
+     * If true, the embedded binary is extracted once in a store shared by all builds of the current user (in
+     * binaryStoreDirectory) and used from there, instead of being extracted to the plugin output directory at every
+     * build.
+     */
+    @Parameter(required = true, defaultValue = "true")
+    private boolean useBinaryStore;
+
+    /**
+     * The directory of the shared binary store, used only if useBinaryStore is true.
+     */
+    @Parameter(required = true, defaultValue = "${user.home}/.m2/shellcheck-plugin/binaries")
+    private File binaryStoreDirectory;
+
+    /**
+     * The URL at which the release archive containing shellcheck will be downloaded,
+     * used only if binaryResolutionMethod is set to "download"
+     *
+     * @see BinaryResolutionMethod
+     */
+    @Parameter(required = false, readonly = true)
+    private Map<String, URL> releaseArchiveUrls;
+
+    /**
+     * The expected sha-256 (hex) of the release archives in releaseArchiveUrls, with the same keys.
+     * If provided, a downloaded archive not matching it fails the build, otherwise its sha-256 is just logged.
+     */
+    @Parameter(required = false)
+    private Map<String, String> releaseArchiveSha256s;
+
+    /**
+     * The command line options to use when invoking the shellcheck binary.
+     * A map is used to avoid having to parse a command line from scratch (which is not as easy as splitting on
+     * whitespace since whitespace might be quoted).
+     * The inconvenience is rather small, since configuration is written and rarely changed.
+     */
+    @Parameter(required = false, readonly = true, defaultValue = "")
+    private List<String> args;
+
+    /**
+     * If true, the build fails when shellcheck finds problems (i.e. on non-zero shellcheck exit code).
+     */
+    @Parameter(required = true, defaultValue = "false")
+    private boolean failBuildIfWarnings;
+
+    /**
+     * The maximum number of shellcheck processes to run concurrently, each one checking its own shard of the files:
+     * a number, or "auto" (the default) for the number of available processors, bounded by the cpu quota and the
+     * memory limit (see memoryPerProcessMb) of the cgroups of the build (e.g. of a container).
+     * The bound is for the whole build: in parallel builds (-T) the modules share it, the first execution sets it.
+     */
+    @Parameter(required = false, defaultValue = "auto")
+    private String parallelism;
+
+    /**
+     * The memory (in MB) a shellcheck process may use, for parallelism "auto" under a memory limit: the processes
+     * running at the same time fit in the limit, minus the maximum heap of maven.
+     */
+    @Parameter(required = true, defaultValue = "256")
+    private long memoryPerProcessMb;
+
+    /**
+     * The maximum length of the command line of a shellcheck process (in bytes, args and environment, on unices and
+     * in chars on windows): more processes are run if the files to check do not fit a single command line.
+     * Defaults to a safe limit for the platform.
+     */
+    @Parameter(required = false)
+    private Long maxCommandLineLength;
+
+    /**
+     * The maximum time (in seconds) a single shellcheck process may run before being killed, unlimited if not set.
+     * When a process is killed its files are bisected to find the ones on which shellcheck takes too long, which are
+     * reported: the build fails unless skipTimedOutFiles is true.
+     */
+    @Parameter(required = false)
+    private Long processTimeoutSeconds;
+
+    /**
+     * If true, the files on which shellcheck exceeds processTimeoutSeconds are skipped (and listed in the
+     * "unanalysed.txt" file in the plugin output directory) instead of failing the build.
+     */
+    @Parameter(required = true, defaultValue = "false")
+    private boolean skipTimedOutFiles;
+
+    /**
+     * The maximum number of shellcheck output lines printed in the build log, further lines are only written in the
+     * output files in the plugin output directory. Stderr lines (shellcheck errors) have a limit of their own, so that
+     * they are printed whatever the size of the report. A negative value means no limit.
+     */
+    @Parameter(required = true, defaultValue = "-1")
+    private int maxLogLines;
+
+    /**
+     * If true, shellcheck is run with "--format=json1" (replacing any format given in args) and its findings are
+     * parsed and printed one per line (as in shellcheck "gcc" format), followed by a summary.
+     * The raw json1 output is still available in the plugin output directory.
+     */
+    @Parameter(required = true, defaultValue = "false")
+    private boolean parseFindings;
+
+    /**
+     * If true, shellcheck results are cached per file (in the plugin output directory) and files whose content,
+     * shellcheck args and shellcheck version did not change since a previous run are not checked again.
+     */
+    @Parameter(required = true, defaultValue = "false")
+    private boolean useResultCache;
+
+    /**
+     * If true, shellcheck results are cached in a directory shared by all builds of the current user (instead of
+     * the plugin output directory) so that they survive "mvn clean" and are reused across modules and branches.
+     * Takes precedence over useResultCache.
+     */
+    @Parameter(required = true, defaultValue = "false")
+    private boolean useSharedResultCache;
+
+    /**
+     * The directory of the shared result cache, used only if useSharedResultCache is true.
+     */
+    @Parameter(required = true, defaultValue = "${user.home}/.m2/shellcheck-plugin/cache")
+    private File sharedResultCacheDirectory;
+
+    /**
+     * The size (in MB) above which the least recently used entries of the shared result cache are evicted.
+     */
+    @Parameter(required = true, defaultValue = "100")
+    private long sharedResultCacheMaxSizeMb;
+
+    /**
+     * If true, the files without extension found in the source dirs (and not excluded) are checked as well if they
+     * start with a shebang invoking sh, bash, dash or ksh (directly or through env) or have a "# shellcheck shell=..."
+     * directive, whatever the includes are. Verdicts are cached by file last modified time and size.
+     */
+    @Parameter(required = true, defaultValue = "false")
+    private boolean detectShebangs;
+
+    /**
+     * If true, only the files changed (committed or not, and untracked ones) relative to gitBaseRef are checked, as
+     * found in the local git repository (no network access). All the files are checked if the project is not in a
+     * git working tree or gitBaseRef cannot be resolved.
+     */
+    @Parameter(required = true, defaultValue = "false")
+    private boolean checkChangedFilesOnly;
+
+    /**
+     * The ref changes are relative to, when checkChangedFilesOnly is true (e.g. the target branch of a pull request).
+     * Changes are actually relative to the merge base of this ref and HEAD.
+     */
+    @Parameter(required = true, defaultValue = "origin/main")
+    private String gitBaseRef;
+
+    /**
+     * If true, when checkChangedFilesOnly is true, the files sourcing a changed file (directly or through other
+     * sourced files) are checked as well.
+     */
+    @Parameter(required = true, defaultValue = "false")
+    private boolean includeDependents;
+
+    /**
+     * If true, only the findings on lines added or modified since gitBaseRef (committed or not, and in untracked
+     * files) are reported and can fail the build, as found in the local git repository. Implies parseFindings.
+     * All the findings are reported if the project is not in a git working tree or gitBaseRef cannot be resolved.
+     */
+    @Parameter(required = true, defaultValue = "false")
+    private boolean reportChangedLinesOnly;
+
+    /**
+     * If true, shellcheck is not run when the files to check (by size and modification time, or by content when these
+     * are not reliable), the files they source (with "-x"), the args and the binary did not change since the previous
+     * execution: its result is replayed instead, failure included.
+     * ".shellcheckrc" files are not taken into account, use "--norc".
+     */
+    @Parameter(required = true, defaultValue = "false")
+    private boolean skipIfUnchanged;
+
+    /**
+     * The build directory, outputs are written in its "shellcheck-plugin" subdirectory.
+     */
+    @Parameter(required = true, defaultValue = "${project.build.directory}")
+    private File outputDirectory;
+
+    //
+    // non externally configurable stuff
+    //
+
+    private final Metrics metrics = new Metrics();
+
+    private final long startMillis = System.currentTimeMillis();
+
+    private final Map<Path, String> binaryVersions = new HashMap<>();
+
+    @Parameter(defaultValue = "${session}", readonly = true)
+    private MavenSession mavenSession;
+
+    @Parameter(defaultValue = "${plugin.version}", readonly = true)
+    private String pluginVersion;
+
+    /**
+     * @return the paths of the plugin outputs
+     */
+    protected PluginPaths pluginPaths() {
+        return new PluginPaths(outputDirectory.toPath());
+    }
+
+    /**
+     * @return the metrics of this execution
+     */
+    protected Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Writes the metrics of this execution to "metrics.json" in the plugin output directory and prints a summary.
+     * Failures are only logged, metrics must never fail the build.
+     */
+    protected void writeMetrics() {
+        try {
+            metrics.write(pluginPaths().getPathInPluginOutputDirectory("metrics.json"));
+        } catch (IOException e) {
+            getLog().warn("Cannot write shellcheck metrics: " + e.getMessage());
+        }
+        getLog().info(metrics.summary());
+    }
+
+    /**
+     * Counts the given scripts and their total size in the metrics.
+     *
+     * @param scripts the scripts to check
+     * @throws IOException if the size of a script cannot be read
+     */
+    protected void countScripts(List<Path> scripts) throws IOException {
+        long bytes = 0;
+        for (Path script : scripts) {
+            bytes += Files.size(script);
+        }
+        metrics.count("files", scripts.size());
+        metrics.count("bytes", bytes);
+    }
+
+    /**
+     * @return a sniffer of files without extension if they must be sniffed, with its verdicts cached in the plugin
+     * output directory
+     * @throws IOException if the cached verdicts cannot be read
+     */
+    protected Optional<ShebangSniffer> newShebangSniffer() throws IOException {
+        if (!detectShebangs) {
+            return Optional.empty();
+        }
+        return Optional.of(new ShebangSniffer(pluginPaths().getPathInPluginOutputDirectory("shebangs.txt")));
+    }
+
+    /**
+     * Counts the sniffed files in the metrics and saves the sniffer verdicts for the next builds.
+     *
+     * @param sniffer the sniffer used to find the scripts, if any
+     * @throws IOException if the verdicts cannot be saved
+     */
+    protected void saveShebangSniffer(Optional<ShebangSniffer> sniffer) throws IOException {
+        if (sniffer.isPresent()) {
+            metrics.count("sniffCacheHits", sniffer.get().getHits());
+            metrics.count("sniffCacheMisses", sniffer.get().getMisses());
+            sniffer.get().save();
+        }
+    }
+
+    /**
+     * Selects the scripts changed relative to gitBaseRef (and their dependents, if configured to do so), if only
+     * changed files must be checked.
+     *
+     * @param scripts   the scripts found in the source dirs
+     * @param directory a directory in the git working tree (e.g. the project base dir)
+     * @return the scripts to check, all of them if changes cannot be computed
+     * @throws IOException          if git fails or the scripts cannot be read
+     * @throws InterruptedException if interrupted while waiting for git
+     */
+    protected List<Path> selectChangedScripts(List<Path> scripts, Path directory) throws IOException, InterruptedException {
+        if (!checkChangedFilesOnly) {
+            return scripts;
+        }
+        final Optional<Git> git = Git.open(directory);
+        if (!git.isPresent()) {
+            getLog().warn("[" + directory + "] is not in a git working tree, checking all the files");
+            return scripts;
+        }
+        final Optional<String> baseCommit = git.get().mergeBase(gitBaseRef);
+        if (!baseCommit.isPresent()) {
+            getLog().warn("Cannot resolve git base ref [" + gitBaseRef + "], checking all the files");
+            return scripts;
+        }
+
+        final Set<Path> changed = git.get().changedFiles(baseCommit.get());
+        final Map<Path, Path> scriptsByRealPath = new LinkedHashMap<>();
+        for (Path script : scripts) {
+            scriptsByRealPath.put(script.toRealPath(), script);
+        }
+        final Set<Path> selected = new HashSet<>(changed);
+        if (includeDependents) {
+            selected.addAll(SourceGraph.scan(scriptsByRealPath.keySet(), getArgs())
+                    .transitiveDependents(changed));
+        }
+
+        final List<Path> changedScripts = new ArrayList<>();
+        scriptsByRealPath.forEach((realPath, script) -> {
+            if (selected.contains(realPath)) {
+                changedScripts.add(script);
+            }
+        });
+        getLog().info("shellcheck: [" + changedScripts.size() + "] of [" + scripts.size()
+                + "] files changed since [" + gitBaseRef + "] (" + baseCommit.get() + ")"
+                + (includeDependents ? " or sourcing changed files" : ""));
+        return changedScripts;
+    }
+
+    /**
+     * Computes the lines changed since gitBaseRef, if only the findings on changed lines must be reported.
+     *
+     * @param directory a directory in the git working tree (e.g. the project base dir)
+     * @return the changed lines, empty if all the findings must be reported
+     * @throws IOException          if git fails
+     * @throws InterruptedException if interrupted while waiting for git
+     */
+    protected Optional<ChangedLines> changedLines(Path directory) throws IOException, InterruptedException {
+        if (!reportChangedLinesOnly) {
+            return Optional.empty();
+        }
+        final Optional<Git> git = Git.open(directory);
+        if (!git.isPresent()) {
+            getLog().warn("[" + directory + "] is not in a git working tree, reporting all the findings");
+            return Optional.empty();
+        }
+        final Optional<String> baseCommit = git.get().mergeBase(gitBaseRef);
+        if (!baseCommit.isPresent()) {
+            getLog().warn("Cannot resolve git base ref [" + gitBaseRef + "], reporting all the findings");
+            return Optional.empty();
+        }
+        final ChangedLines changedLines = git.get().changedLines(baseCommit.get());
+        getLog().info("shellcheck: reporting only findings on the lines changed since [" + gitBaseRef + "] ("
+                + baseCommit.get() + "), in [" + changedLines.getFileCount() + "] files");
+        return Optional.of(changedLines);
+    }
+
+    /**
+     * @return true if the build must fail when shellcheck finds problems
+     */
+    protected boolean isFailBuildIfWarnings() {
+        return failBuildIfWarnings;
+    }
+
+    /**
+     * @return true if shellcheck findings must be parsed and reported by the plugin
+     */
+    protected boolean isParseFindings() {
+        return parseFindings || reportChangedLinesOnly;
+    }
+
+    /**
+     * @return the names of the parameters set to true that only make sense for a single check of the files, failing the
+     * build or checking what changed since a git ref or a previous execution
+     */
+    protected List<String> getCheckOnlyParametersSet() {
+        final List<String> set = new ArrayList<>();
+        if (failBuildIfWarnings) {
+            set.add("failBuildIfWarnings");
+        }
+        if (checkChangedFilesOnly) {
+            set.add("checkChangedFilesOnly");
+        }
+        if (reportChangedLinesOnly) {
+            set.add("reportChangedLinesOnly");
+        }
+        if (skipIfUnchanged) {
+            set.add("skipIfUnchanged");
+        }
+        return set;
+    }
+
+    /**
+     * @return true if the files without extension are sniffed to be shell scripts
+     */
+    protected boolean isDetectShebangs() {
+        return detectShebangs;
+    }
+
+    /**
+     * @return the configured shellcheck args
+     */
+    protected List<String> getArgs() {
+        return args == null ? Collections.emptyList() : args;
+    }
+
+    /**
+     * @return the current maven session
+     */
+    protected MavenSession getMavenSession() {
+        return mavenSession;
+    }
+
+    /**
+     * Resolves the shellcheck binary according to the configured resolution method.
+     *
+     * @return the path of an executable shellcheck binary
+     * @throws MojoExecutionException if the binary cannot be resolved
+     * @throws IOException            if some io operation fails (e.g download or permission change)
+     */
+    protected Path resolveBinary() throws MojoExecutionException, IOException {
+        final BinaryResolver binaryResolver = new BinaryResolver(outputDirectory.toPath(),
+                Optional.ofNullable(externalBinaryPath).map(File::toPath),
+                Optional.ofNullable(releaseArchiveUrls).orElse(Collections.emptyMap()),
+                Optional.ofNullable(releaseArchiveSha256s).orElse(Collections.emptyMap()),
+                Optional.ofNullable(mavenSession.getSettings().getActiveProxy()),
+                useBinaryStore ? Optional.of(new BinaryStore(binaryStoreDirectory.toPath())) : Optional.empty(),
+                pluginVersion,
+                getLog());
+
+        return binaryResolver.resolve(binaryResolutionMethod);
+    }
+
+    /**
+     * Resolves the binary and runs shellcheck on the given scripts, as {@link #runShellcheck} does, unless
+     * skipIfUnchanged is true and nothing changed since the previous execution: its result is then replayed, without
+     * even resolving the binary.
+     *
+     * @param scripts   the scripts to check
+     * @param json1     true to run shellcheck with "--format=json1", whatever format is configured in args
+     * @param forwarder where the output lines are forwarded
+     * @return the (merged, or replayed) shellcheck result
+     * @throws MojoExecutionException if the binary cannot be resolved or the configuration is invalid
+     * @throws IOException            if something goes bad doing io things (writing files etc...)
+     * @throws InterruptedException   if the thread gets interrupted while waiting for shellcheck to finish
+     */
+    protected Shellcheck.Result runShellcheckIfChanged(List<Path> scripts, boolean json1, OutputForwarder forwarder)
+            throws MojoExecutionException, IOException, InterruptedException {
+        final PluginPaths pluginPaths = pluginPaths();
+        Optional<ExecutionStamp> stamp = Optional.empty();
+        Optional<ExecutionStamp.Snapshot> snapshot = Optional.empty();
+        if (skipIfUnchanged) {
+            final List<String> configuration = stampedConfiguration(json1);
+            try (Metrics.Phase phase = metrics.phase("upToDateCheck")) {
+                stamp = Optional.of(new ExecutionStamp(pluginPaths.getPathInPluginOutputDirectory("stamp")));
+                if (stamp.get().isUpToDate(configuration, scripts, startMillis)) {
+                    metrics.count("hashedFiles", stamp.get().getHashedFiles());
+                    getLog().info("shellcheck: nothing changed since the previous execution, replaying its result");
+                    return stamp.get().replay(pluginPaths.getPathInPluginOutputDirectory("shellcheck.stdout"),
+                            pluginPaths.getPathInPluginOutputDirectory("shellcheck.stderr"), forwarder);
+                }
+                final Collection<Path> dependencies = SourceGraph.followsSources(getArgs())
+                        ? dependencies(scripts)
+                        : Collections.emptyList();
+                snapshot = Optional.of(stamp.get().snapshot(configuration, scripts, dependencies, startMillis));
+                metrics.count("hashedFiles", stamp.get().getHashedFiles());
+                stamp.get().invalidate();
+            }
+        }
+
+        final Path binary;
+        try (Metrics.Phase phase = metrics.phase("binaryResolution")) {
+            binary = resolveBinary();
+        }
+        final Shellcheck.Result result;
+        try (Metrics.Phase phase = metrics.phase("execution")) {
+            result = runShellcheck(binary, scripts, json1, forwarder);
+        }
+        // worse than findings may be transient (e.g. an unreadable file)
+        if (stamp.isPresent() && result.exitCode <= 1 && result.timedOut.isEmpty()) {
+            stamp.get().write(snapshot.get(), result);
+        }
+        return result;
+    }
+
+    /**
+     * @return what the output of shellcheck depends on, besides the files: the args and the identity of the binary
+     */
+    private List<String> stampedConfiguration(boolean json1) throws IOException {
+        final List<String> configuration = new ArrayList<>();
+        configuration.add(pluginVersion);
+        configuration.add(binaryResolutionMethod.name());
+        configuration.add(Architecture.osArchKey());
+        switch (binaryResolutionMethod) {
+            case external:
+                final Path external = Optional.ofNullable(externalBinaryPath).map(File::toPath)
+                        .orElseThrow(() -> new IOException("externalBinaryPath is not set"));
+                configuration.add(external.toAbsolutePath().toString());
+                configuration.add(String.valueOf(Files.size(external)));
+                configuration.add(String.valueOf(Files.getLastModifiedTime(external).toMillis()));
+                break;
+            case download:
+                configuration.add(String.valueOf(Optional.ofNullable(releaseArchiveUrls)
+                        .map(urls -> urls.get(Architecture.osArchKey())).orElse(null)));
+                configuration.add(String.valueOf(Optional.ofNullable(releaseArchiveSha256s)
+                        .map(sha256s -> sha256s.get(Architecture.osArchKey())).orElse(null)));
+                break;
+            default:
+                // the embedded binary is identified by the plugin version
+        }
+        configuration.addAll(json1 ? Shellcheck.withFormat(getArgs(), "json1") : getArgs());
+        return configuration;
+    }
+
+    private Set<Path> dependencies(List<Path> scripts) throws IOException {
+        final SourceGraph sourceGraph = SourceGraph.scan(scripts, getArgs());
+        final Set<Path> dependencies = new TreeSet<>();
+        for (Path script : scripts) {
+            dependencies.addAll(sourceGraph.transitiveDependencies(script));
+        }
+        return dependencies;
+    }
+
+    /**
+     * @param forwardStdout false if stdout must not be forwarded to the maven log (e.g. since it is json)
+     * @return a forwarder of shellcheck output to the maven log, honoring maxLogLines
+     */
+    protected OutputForwarder newOutputForwarder(boolean forwardStdout) {
+        return new OutputForwarder(getLog(), maxLogLines, forwardStdout);
+    }
+
+    /**
+     * Runs shellcheck on the given scripts, in parallel and using the result cache if configured to do so.
+     * Processes are balanced by the time taken on each script by the previous runs, kept in the plugin output
+     * directory.
+     *
+     * @param binary    the shellcheck binary
+     * @param scripts   the scripts to check
+     * @param json1     true to run shellcheck with "--format=json1", whatever format is configured in args
+     * @param forwarder where the output lines are forwarded
+     * @return the (merged) shellcheck result
+     * @throws MojoExecutionException if the configuration is invalid
+     * @throws IOException            if something goes bad doing io things (writing files etc...)
+     * @throws InterruptedException   if the thread gets interrupted while waiting for shellcheck to finish
+     */
+    protected Shellcheck.Result runShellcheck(Path binary, List<Path> scripts, boolean json1, OutputForwarder forwarder)
+            throws MojoExecutionException, IOException, InterruptedException {
+        final PluginPaths pluginPaths = pluginPaths();
+        final List<String> configuredArgs = getArgs();
+        final List<String> shellcheckArgs = json1
+                ? Shellcheck.withFormat(configuredArgs, "json1")
+                : configuredArgs;
+
+        final Optional<Duration> timeout = processTimeout();
+        final Optional<ResultCache> resultCache = resultCache(pluginPaths);
+        final CostHistory costs = new CostHistory(pluginPaths.getPathInPluginOutputDirectory("costs.txt"));
+        final ParallelShellcheck.ShardListener listener = (shard, shardResult, wallNanos) -> {
+            metrics.shardCompleted(shard, shardResult, wallNanos);
+            costs.shardCompleted(shard, shardResult, wallNanos);
+        };
+        final Shellcheck.Result result;
+        if (resultCache.isPresent()) {
+            final Optional<SourceGraph> sourceGraph = SourceGraph.followsSources(shellcheckArgs)
+                    ? Optional.of(SourceGraph.scan(scripts, shellcheckArgs))
+                    : Optional.empty();
+            final CachedShellcheck cachedShellcheck = new CachedShellcheck(resultCache.get(),
+                    binaryVersion(binary), sourceGraph);
+            result = cachedShellcheck.run(binary, shellcheckArgs,
+                    pluginPaths.getPluginOutputDirectory(), scripts, processScheduler(), commandLineBatcher(), costs,
+                    timeout, listener, forwarder);
+            getLog().info("shellcheck result cache: [" + cachedShellcheck.getHits() + "] hits, ["
+                    + cachedShellcheck.getMisses() + "] misses");
+            metrics.count("cacheHits", cachedShellcheck.getHits());
+            metrics.count("cacheMisses", cachedShellcheck.getMisses());
+        } else {
+            result = ParallelShellcheck.run(binary, shellcheckArgs, pluginPaths.getPluginOutputDirectory(),
+                    scripts, processScheduler(), commandLineBatcher(), costs, timeout, listener, forwarder);
+        }
+        costs.save();
+        metrics.count("timedOut", result.timedOut.size());
+        handleTimedOut(result, pluginPaths);
+        return result;
+    }
+
+    /**
+     * The version is asked to the binary once, goals may run shellcheck many times (e.g. watch).
+     */
+    private String binaryVersion(Path binary) throws IOException, InterruptedException {
+        String version = binaryVersions.get(binary);
+        if (version == null) {
+            version = Shellcheck.version(binary);
+            binaryVersions.put(binary, version);
+        }
+        return version;
+    }
+
+    /**
+     * Reports the files on which shellcheck timed out, failing the build unless they can be skipped.
+     */
+    private void handleTimedOut(Shellcheck.Result result, PluginPaths pluginPaths) throws MojoExecutionException, IOException {
+        final Path unanalysed = pluginPaths.getPathInPluginOutputDirectory("unanalysed.txt");
+        Files.deleteIfExists(unanalysed);
+        if (result.timedOut.isEmpty()) {
+            return;
+        }
+
+        for (Path script : result.timedOut) {
+            getLog().warn("shellcheck did not complete within [" + processTimeoutSeconds + "s] on [" + script + "]");
+        }
+        if (!skipTimedOutFiles) {
+            throw new MojoExecutionException("shellcheck timed out on [" + result.timedOut.size()
+                    + "] files (see the warnings above), set skipTimedOutFiles to skip them");
+        }
+        Files.write(unanalysed, result.timedOut.stream()
+                .map(script -> script.toFile().getAbsolutePath())
+                .collect(Collectors.toList()), StandardCharsets.UTF_8);
+        getLog().warn("[" + result.timedOut.size() + "] files were not analysed, listed in [" + unanalysed + "]");
+    }
+
+    /**
+     * Prints the findings of a json1 result one per line, followed by a summary with the counts per level.
+     *
+     * @param result    a result of shellcheck run with "--format=json1"
+     * @param forwarder where the findings are printed
+     * @param findings  a further consumer of the findings
+     * @throws IOException if the result cannot be read or is not in json1 format
+     */
+    protected void reportFindings(Shellcheck.Result result, OutputForwarder forwarder, Consumer<Finding> findings)
+            throws IOException {
+        reportFindings(result, forwarder, finding -> true, findings);
+    }
+
+    /**
+     * Prints the reportable findings of a json1 result one per line, followed by a summary with the counts per level.
+     *
+     * @param result     a result of shellcheck run with "--format=json1"
+     * @param forwarder  where the findings are printed
+     * @param reportable the findings to be reported, the others are just counted
+     * @param findings   a further consumer of the reported findings
+     * @return the number of reported findings
+     * @throws IOException if the result cannot be read or is not in json1 format
+     */
+    protected int reportFindings(Shellcheck.Result result, OutputForwarder forwarder, Predicate<Finding> reportable,
+                                 Consumer<Finding> findings) throws IOException {
+        final Map<Finding.Level, Integer> counts = new EnumMap<>(Finding.Level.class);
+        final int[] notReported = {0};
+        result.forEachFinding(finding -> {
+            if (!reportable.test(finding)) {
+                notReported[0]++;
+                return;
+            }
+            forwarder.warn(finding.toGccFormat());
+            counts.merge(finding.level, 1, Integer::sum);
+            findings.accept(finding);
+        });
+
+        final int total = counts.values().stream().mapToInt(Integer::intValue).sum();
+        metrics.count("findings", total);
+        getLog().info("shellcheck findings: [" + total + "] ("
+                + Arrays.stream(Finding.Level.values())
+                .map(level -> "[" + counts.getOrDefault(level, 0) + "] " + level)
+                .collect(Collectors.joining(", "))
+                + ")"
+                + (notReported[0] > 0 ? ", [" + notReported[0] + "] more not reported" : ""));
+        return total;
+    }
+
+    /**
+     * @param changedLines the changed lines, if only the findings on them must be reported
+     * @return a filter of the findings on changed lines, accepting anything if changedLines is empty
+     */
+    protected static Predicate<Finding> onChangedLines(Optional<ChangedLines> changedLines) {
+        if (!changedLines.isPresent()) {
+            return finding -> true;
+        }
+        // findings are many, the files they are in few
+        final Map<String, Path> realPaths = new HashMap<>();
+        return finding -> changedLines.get().intersects(
+                realPaths.computeIfAbsent(finding.file, AbstractShellCheckMojo::realPath), finding.line, finding.endLine);
+    }
+
+    private static Path realPath(String file) {
+        try {
+            return Paths.get(file).toRealPath();
+        } catch (IOException e) {
+            return Paths.get(file).toAbsolutePath().normalize();
+        }
+    }
+
+    private Optional<ResultCache> resultCache(PluginPaths pluginPaths) {
+        if (useSharedResultCache) {
+            return Optional.of(new ResultCache(sharedResultCacheDirectory.toPath(),
+                    sharedResultCacheMaxSizeMb * 1024 * 1024));
+        }
+        if (useResultCache) {
+            return Optional.of(new ResultCache(pluginPaths.getPathInPluginOutputDirectory("cache")));
+        }
+        return Optional.empty();
+    }
+
+    private Optional<Duration> processTimeout() throws MojoExecutionException {
+        if (processTimeoutSeconds == null) {
+            return Optional.empty();
+        }
+        if (processTimeoutSeconds < 1) {
+            throw new MojoExecutionException("Invalid processTimeoutSeconds [" + processTimeoutSeconds + "], must be at least 1");
+        }
+        return Optional.of(Duration.ofSeconds(processTimeoutSeconds));
+    }
+
+    private CommandLineBatcher commandLineBatcher() {
+        final Architecture arch = Architecture.detect();
+        return maxCommandLineLength == null
+                ? CommandLineBatcher.forCurrentProcess(arch)
+                : new CommandLineBatcher(arch, maxCommandLineLength);
+    }
+
+    /**
+     * @return the scheduler shared by all the executions of the build
+     */
+    private ProcessScheduler processScheduler() throws MojoExecutionException {
+        final int effectiveParallelism = effectiveParallelism();
+        final ProcessScheduler scheduler = ProcessScheduler.forSession(mavenSession.getRepositorySession(),
+                effectiveParallelism);
+        if (scheduler.getParallelism() != effectiveParallelism) {
+            getLog().debug("shellcheck processes bounded to [" + scheduler.getParallelism()
+                    + "] by a previous execution of the build, instead of [" + effectiveParallelism + "]");
+        }
+        return scheduler;
+    }
+
+    private int effectiveParallelism() throws MojoExecutionException {
+        if (parallelism == null || "auto".equalsIgnoreCase(parallelism.trim())) {
+            return autoParallelism();
+        }
+        final int configured;
+        try {
+            configured = Integer.parseInt(parallelism.trim());
+        } catch (NumberFormatException e) {
+            throw new MojoExecutionException("Invalid parallelism [" + parallelism + "], must be \"auto\" or a number");
+        }
+        if (configured < 1) {
+            throw new MojoExecutionException("Invalid parallelism [" + parallelism + "], must be at least 1");
+        }
+        return configured;
+    }
+
+    private int autoParallelism() {
+        final CgroupLimits limits = CgroupLimits.read(Paths.get("/"));
+        final int availableProcessors = Runtime.getRuntime().availableProcessors();
+        final long maxHeap = Runtime.getRuntime().maxMemory();
+        final int auto = limits.parallelism(availableProcessors, maxHeap == Long.MAX_VALUE ? 0 : maxHeap,
+                memoryPerProcessMb * 1024 * 1024);
+        getLog().debug("shellcheck parallelism: auto [" + auto + "], [" + availableProcessors + "] processors"
+                + (limits.getCpus().isPresent() ? ", cpu limit [" + limits.getCpus().getAsDouble() + "]" : "")
+                + (limits.getMemoryBytes().isPresent()
+                ? ", memory limit [" + limits.getMemoryBytes().getAsLong() / (1024 * 1024) + "] MB" : ""));
+        return auto;
+    }
+}
@@ -0,0 +1,280 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Checks the shell files of all the projects in the reactor with a single (parallel) shellcheck run.
+ * <p>
+ * The source dirs of each project (directory, includes, excludes, useDefaultExcludes and followSymlinks) are read
+ * from its configuration of this plugin ("src/main/sh", the default, if not configured), files found in more projects
+ * are checked once.
+ * Findings are reported per project in "shellcheck-plugin/aggregate-report.txt", in the build directory of the
+ * project where the goal is run. The build fails if a project configured with failBuildIfWarnings (or, if not
+ * configured, the failBuildIfWarnings of this goal) has findings.
+ */
+@Mojo(name = "aggregate", aggregator = true, defaultPhase = LifecyclePhase.VERIFY, threadSafe = true)
+public class AggregateMojo extends AbstractShellCheckMojo {
+
+    @Parameter(defaultValue = "${reactorProjects}", readonly = true)
+    private List<MavenProject> reactorProjects;
+
+    @Parameter(defaultValue = "${plugin}", readonly = true)
+    private PluginDescriptor pluginDescriptor;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+
+        try {
+            // dedupe by real path, keeping the first project (in reactor order) claiming a file
+            final Map<Path, Path> scriptsByRealPath = new LinkedHashMap<>();
+            final List<Path> scriptsToCheck;
+            try (Metrics.Phase phase = getMetrics().phase("discovery")) {
+                final Optional<ShebangSniffer> sniffer = newShebangSniffer();
+                for (MavenProject project : reactorProjects) {
+                    for (Path script : ScriptFinder.find(sourceDirs(project), sniffer, getLog())) {
+                        scriptsByRealPath.putIfAbsent(script.toRealPath(), script);
+                    }
+                }
+                saveShebangSniffer(sniffer);
+            }
+            final Optional<ChangedLines> changedLines;
+            try (Metrics.Phase phase = getMetrics().phase("changeDetection")) {
+                final Path topLevelDirectory = getMavenSession().getTopLevelProject().getBasedir().toPath();
+                scriptsToCheck = selectChangedScripts(new ArrayList<>(scriptsByRealPath.values()), topLevelDirectory);
+                changedLines = changedLines(topLevelDirectory);
+                countScripts(scriptsToCheck);
+            }
+            getLog().info("shellcheck aggregate: [" + scriptsToCheck.size() + "] files in ["
+                    + reactorProjects.size() + "] projects");
+
+            final Path binary;
+            try (Metrics.Phase phase = getMetrics().phase("binaryResolution")) {
+                binary = resolveBinary();
+            }
+
+            // findings are needed to attribute them to projects
+            final OutputForwarder forwarder = newOutputForwarder(false);
+            final Shellcheck.Result result;
+            try (Metrics.Phase phase = getMetrics().phase("execution")) {
+                result = runShellcheck(binary, scriptsToCheck, true, forwarder);
+            }
+            final Map<MavenProject, List<Finding>> findingsByProject = new LinkedHashMap<>();
+            final List<Finding> unattributed = new ArrayList<>();
+            try (Metrics.Phase phase = getMetrics().phase("reporting")) {
+                reactorProjects.forEach(project -> findingsByProject.put(project, new ArrayList<>()));
+                reportFindings(result, forwarder, onChangedLines(changedLines), finding -> owner(finding.file)
+                        .map(findingsByProject::get)
+                        .orElse(unattributed)
+                        .add(finding));
+                forwarder.finish(result.stdout, result.stderr);
+
+                writeReport(findingsByProject, unattributed);
+            }
+
+            final List<String> failingProjects = new ArrayList<>();
+            findingsByProject.forEach((project, findings) -> {
+                if (!findings.isEmpty() && failBuildIfWarnings(project)) {
+                    failingProjects.add(project.getArtifactId());
+                }
+            });
+            if (!unattributed.isEmpty() && isFailBuildIfWarnings()) {
+                failingProjects.add("(outside of the reactor)");
+            }
+            if (!failingProjects.isEmpty()) {
+                throw new MojoExecutionException("There are shellcheck problems in " + failingProjects);
+            }
+            // worse than findings, e.g. unreadable files or bad args
+            if (result.exitCode > 1 && isFailBuildIfWarnings()) {
+                throw new MojoExecutionException("There are shellcheck problems: shellcheck exit code [" + result.exitCode + "]");
+            }
+
+        } catch (IOException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException(e.getMessage(), e);
+        } finally {
+            writeMetrics();
+        }
+    }
+
+    /**
+     * @return the project with the deepest base directory containing the file, if any.
+     */
+    private Optional<MavenProject> owner(String file) {
+        final Path path = Paths.get(file).toAbsolutePath().normalize();
+        // the base directories containing the file contain each other, the deepest is contained by all the others
+        return reactorProjects.stream()
+                .filter(project -> path.startsWith(basedir(project)))
+                .reduce((owner, project) -> basedir(project).startsWith(basedir(owner)) ? project : owner);
+    }
+
+    private static Path basedir(MavenProject project) {
+        return project.getBasedir().toPath().toAbsolutePath().normalize();
+    }
+
+    private void writeReport(Map<MavenProject, List<Finding>> findingsByProject, List<Finding> unattributed)
+            throws IOException {
+        final Path report = pluginPaths().getPathInPluginOutputDirectory("aggregate-report.txt");
+        Files.createDirectories(report.getParent());
+        try (final BufferedWriter writer = Files.newBufferedWriter(report, StandardCharsets.UTF_8)) {
+            for (Map.Entry<MavenProject, List<Finding>> entry : findingsByProject.entrySet()) {
+                writeSection(writer, entry.getKey().getId(), entry.getValue());
+            }
+            if (!unattributed.isEmpty()) {
+                writeSection(writer, "(outside of the reactor)", unattributed);
+            }
+        }
+        getLog().info("shellcheck aggregate report: [" + report + "]");
+    }
+
+    private static void writeSection(BufferedWriter writer, String title, List<Finding> findings) throws IOException {
+        writer.write(title + ": [" + findings.size() + "] findings");
+        writer.newLine();
+        for (Finding finding : findings) {
+            writer.write("    " + finding.toGccFormat());
+            writer.newLine();
+        }
+    }
+
+    /**
+     * @return the source dirs configured for this plugin in the project (in any execution), or the default one.
+     */
+    private List<SourceDir> sourceDirs(MavenProject project) {
+        final List<SourceDir> sourceDirs = new ArrayList<>();
+        for (Xpp3Dom configuration : configurations(project)) {
+            final Xpp3Dom sourceDirsDom = configuration.getChild("sourceDirs");
+            if (sourceDirsDom == null) {
+                continue;
+            }
+            for (Xpp3Dom sourceDirDom : sourceDirsDom.getChildren()) {
+                final SourceDir sourceDir = new SourceDir();
+                final String directory = value(sourceDirDom, "directory").orElse(".");
+                // relative directories are relative to the project, as maven does for File parameters
+                final File directoryFile = new File(directory).isAbsolute()
+                        ? new File(directory)
+                        : new File(project.getBasedir(), directory);
+                sourceDir.setDirectory(directoryFile.getAbsolutePath());
+                values(sourceDirDom, "includes").forEach(sourceDir::addInclude);
+                values(sourceDirDom, "excludes").forEach(sourceDir::addExclude);
+                // as the check goal would, so that both check the same files
+                value(sourceDirDom, "useDefaultExcludes").map(Boolean::parseBoolean)
+                        .ifPresent(sourceDir::setUseDefaultExcludes);
+                value(sourceDirDom, "followSymlinks").map(Boolean::parseBoolean)
+                        .ifPresent(sourceDir::setFollowSymlinks);
+                sourceDirs.add(sourceDir);
+            }
+        }
+        if (sourceDirs.isEmpty()) {
+            sourceDirs.add(ScriptFinder.defaultSourceDir(project.getBasedir(), shellFileExtension(project)));
+        }
+        return sourceDirs;
+    }
+
+    /**
+     * @return the shellFileExtension configured for this plugin in the project, or the default one.
+     */
+    private String shellFileExtension(MavenProject project) {
+        for (Xpp3Dom configuration : configurations(project)) {
+            final Optional<String> value = value(configuration, "shellFileExtension");
+            if (value.isPresent()) {
+                return value.get();
+            }
+        }
+        return ".sh";
+    }
+
+    /**
+     * @return the failBuildIfWarnings configured for this plugin in the project, or the one of this goal.
+     */
+    private boolean failBuildIfWarnings(MavenProject project) {
+        for (Xpp3Dom configuration : configurations(project)) {
+            final Optional<String> value = value(configuration, "failBuildIfWarnings");
+            if (value.isPresent()) {
+                return Boolean.parseBoolean(value.get());
+            }
+        }
+        return isFailBuildIfWarnings();
+    }
+
+    /**
+     * @return the configurations of this plugin in the project, executions first (they override the plugin one).
+     */
+    private List<Xpp3Dom> configurations(MavenProject project) {
+        final List<Xpp3Dom> configurations = new ArrayList<>();
+        final Plugin plugin = project.getBuild() == null ? null : project.getBuild().getPluginsAsMap().get(pluginDescriptor.getPluginLookupKey());
+        if (plugin == null) {
+            return configurations;
+        }
+        for (PluginExecution execution : plugin.getExecutions()) {
+            if (execution.getConfiguration() instanceof Xpp3Dom) {
+                configurations.add((Xpp3Dom) execution.getConfiguration());
+            }
+        }
+        if (plugin.getConfiguration() instanceof Xpp3Dom) {
+            configurations.add((Xpp3Dom) plugin.getConfiguration());
+        }
+        return configurations;
+    }
+
+    private static Optional<String> value(Xpp3Dom dom, String child) {
+        return Optional.ofNullable(dom.getChild(child))
+                .map(Xpp3Dom::getValue)
+                .map(String::trim)
+                .filter(value -> !value.isEmpty());
+    }
+
+    private static List<String> values(Xpp3Dom dom, String child) {
+        final List<String> values = new ArrayList<>();
+        final Xpp3Dom parent = dom.getChild(child);
+        if (parent != null) {
+            for (Xpp3Dom item : parent.getChildren()) {
+                Optional.ofNullable(item.getValue()).map(String::trim).ifPresent(values::add);
+            }
+        }
+        return values;
+    }
+}
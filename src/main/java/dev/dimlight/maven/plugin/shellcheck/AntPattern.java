@@ -0,0 +1,241 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * An include/exclude pattern of a FileSet, compiled once and matched against paths relative to the FileSet directory,
+ * with the same semantics of the maven DirectoryScanner (case sensitive, "**" matching any number of directories, a
+ * trailing "/" meaning "/**", "%regex[..]" and "%ant[..]" prefixed patterns).
+ * <p>
+ * Relative paths are always given with '/' as separator.
+ */
+public final class AntPattern {
+
+    private static final String REGEX_PREFIX = "%regex[";
+    private static final String ANT_PREFIX = "%ant[";
+    private static final String DEEP = "**";
+
+    /**
+     * The regular expression the whole relative path must match.
+     */
+    private final Pattern pathRegex;
+
+    /**
+     * Null for "%regex[..]" patterns, that cannot be matched segment by segment.
+     */
+    private final Segment[] segments;
+
+    /**
+     * True if the pattern is absolute, such a pattern never matches a relative path (as in DirectoryScanner).
+     */
+    private final boolean absolute;
+
+    /**
+     * For patterns ending with "/**", the regular expression a directory must match for everything under it to match
+     * the pattern, null otherwise.
+     */
+    private final Pattern everythingUnderRegex;
+
+    private AntPattern(Pattern pathRegex, Segment[] segments, boolean absolute) {
+        this.pathRegex = pathRegex;
+        this.segments = segments;
+        this.absolute = absolute;
+        if (segments != null && segments.length > 1 && segments[segments.length - 1].deep) {
+            this.everythingUnderRegex = Pattern.compile(
+                    pathRegex(Arrays.asList(segments).subList(0, segments.length - 1)));
+        } else {
+            this.everythingUnderRegex = null;
+        }
+    }
+
+    /**
+     * Compiles a FileSet pattern.
+     *
+     * @param pattern the pattern, as written in the FileSet includes or excludes
+     * @return the compiled pattern
+     */
+    public static AntPattern compile(String pattern) {
+        String normalized = pattern.trim().replace('\\', '/');
+        if (normalized.endsWith("/")) {
+            normalized += DEEP;
+        }
+
+        if (normalized.startsWith(REGEX_PREFIX) && normalized.endsWith("]")) {
+            final String regex = normalized.substring(REGEX_PREFIX.length(), normalized.length() - 1);
+            return new AntPattern(Pattern.compile(regex), null, false);
+        }
+        if (normalized.startsWith(ANT_PREFIX) && normalized.endsWith("]")) {
+            normalized = normalized.substring(ANT_PREFIX.length(), normalized.length() - 1);
+        }
+
+        final List<Segment> segments = new ArrayList<>();
+        for (String token : normalized.split("/")) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            final boolean deep = DEEP.equals(token);
+            // consecutive "**" are the same as a single one
+            if (deep && !segments.isEmpty() && segments.get(segments.size() - 1).deep) {
+                continue;
+            }
+            segments.add(new Segment(token, deep));
+        }
+
+        final boolean absolute = normalized.startsWith("/");
+        return new AntPattern(Pattern.compile(pathRegex(segments)), segments.toArray(new Segment[0]), absolute);
+    }
+
+    /**
+     * Compiles a list of FileSet patterns.
+     *
+     * @param patterns the patterns
+     * @return the compiled patterns, in the same order
+     */
+    public static List<AntPattern> compileAll(Iterable<String> patterns) {
+        final List<AntPattern> compiled = new ArrayList<>();
+        for (String pattern : patterns) {
+            compiled.add(compile(pattern));
+        }
+        return compiled;
+    }
+
+    /**
+     * @param relativePath a path relative to the FileSet directory, with '/' as separator
+     * @return true if the pattern matches the path
+     */
+    public boolean matches(String relativePath) {
+        if (absolute) {
+            return false;
+        }
+        if (segments == null) {
+            // regex patterns are written against the platform separator
+            return pathRegex.matcher(relativePath.replace('/', File.separatorChar)).matches();
+        }
+        return pathRegex.matcher(relativePath).matches();
+    }
+
+    /**
+     * Tells whether some path under a directory could match the pattern, i.e. if the directory must be walked.
+     *
+     * @param relativeDirectory the path of the directory relative to the FileSet directory, with '/' as separator
+     * @return false only if no path under the directory can match the pattern
+     */
+    public boolean couldMatchUnder(String relativeDirectory) {
+        if (absolute) {
+            return false;
+        }
+        if (segments == null) {
+            return true;
+        }
+        final String[] directories = relativeDirectory.split("/");
+        for (int i = 0; i < directories.length; i++) {
+            if (i >= segments.length) {
+                return false;
+            }
+            if (segments[i].deep) {
+                return true;
+            }
+            if (!segments[i].matches(directories[i])) {
+                return false;
+            }
+        }
+        return directories.length < segments.length;
+    }
+
+    /**
+     * Tells whether every path under a directory matches the pattern (e.g. "**&#47;.git/**" for any .git directory),
+     * so that an excluded directory does not need to be walked at all.
+     *
+     * @param relativeDirectory the path of the directory relative to the FileSet directory, with '/' as separator
+     * @return true if every path under the directory matches the pattern
+     */
+    public boolean matchesEverythingUnder(String relativeDirectory) {
+        return !absolute && everythingUnderRegex != null && everythingUnderRegex.matcher(relativeDirectory).matches();
+    }
+
+    /**
+     * Builds the regular expression matching the whole relative path for the given segments.
+     */
+    private static String pathRegex(List<Segment> segments) {
+        final StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < segments.size(); i++) {
+            final Segment segment = segments.get(i);
+            final boolean last = i == segments.size() - 1;
+            if (!segment.deep) {
+                regex.append(segment.regex).append(last ? "" : "/");
+            } else if (!last) {
+                // zero or more directories
+                regex.append("(?:[^/]*/)*");
+            } else if (i == 0) {
+                regex.append(".*");
+            } else {
+                // "a/**" matches "a" itself as well as everything under it
+                regex.setLength(regex.length() - 1);
+                regex.append("(?:/.*)?");
+            }
+        }
+        return regex.toString();
+    }
+
+    /**
+     * A path segment of a pattern, a literal or a glob with '*' and '?' wildcards, or "**".
+     */
+    private static final class Segment {
+
+        private final boolean deep;
+        private final String regex;
+        private final Pattern pattern;
+
+        Segment(String token, boolean deep) {
+            this.deep = deep;
+            final StringBuilder builder = new StringBuilder();
+            final StringBuilder literal = new StringBuilder();
+            for (char c : token.toCharArray()) {
+                if (c == '*' || c == '?') {
+                    if (literal.length() > 0) {
+                        builder.append(Pattern.quote(literal.toString()));
+                        literal.setLength(0);
+                    }
+                    builder.append(c == '*' ? "[^/]*" : "[^/]");
+                } else {
+                    literal.append(c);
+                }
+            }
+            if (literal.length() > 0) {
+                builder.append(Pattern.quote(literal.toString()));
+            }
+            this.regex = builder.toString();
+            this.pattern = Pattern.compile(regex);
+        }
+
+        boolean matches(String name) {
+            return pattern.matcher(name).matches();
+        }
+    }
+}
@@ -196,6 +196,19 @@ public enum Architecture {
         }
     }
 
+    /**
+     * The maximum size of the command line of a new process: 32767 chars on windows (CreateProcess limit), a
+     * conservative 128KiB on unices, where it also includes the environment (linux has 2MiB by default, macos 256KiB).
+     *
+     * @return the maximum size of a command line, in chars on windows, in bytes (args and environment) elsewhere.
+     */
+    public long commandLineLengthLimit() {
+        if (this.equals(Windows_x86)) {
+            return 32767;
+        }
+        return 128 * 1024;
+    }
+
     /**
      * @return the idiomatic suffix for executables dependending on os/arch, i.e. "" for nixes and ".exe" for win.
      */
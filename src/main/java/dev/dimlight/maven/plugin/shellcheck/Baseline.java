@@ -0,0 +1,185 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A baseline of accepted findings, so that only new findings are reported (e.g. on legacy scripts).
+ * <p>
+ * Findings are identified by a fingerprint that does not depend on their line number: a hash of the shellcheck code,
+ * the path of the file (relative to a root directory) and the code the finding is on, with whitespace normalized.
+ * Moving code around does not invalidate the baseline, changing the code a finding is on does.
+ * The baseline is a multiset of fingerprints: n identical findings in a file are suppressed only if the baseline has
+ * (at least) n of them. Lookups are hash based, whatever the size of the baseline.
+ * <p>
+ * The baseline file has a line per finding, sorted: the fingerprint followed (for humans) by the code and the file.
+ */
+public class Baseline {
+
+    private final Map<String, Integer> remaining;
+
+    private Baseline(Map<String, Integer> remaining) {
+        this.remaining = remaining;
+    }
+
+    /**
+     * Computes the fingerprints of findings, reading each file at most once.
+     */
+    public static class Fingerprinter {
+
+        private final Path root;
+        private final Map<String, List<String>> linesByFile = new HashMap<>();
+
+        /**
+         * @param root the directory file paths in fingerprints are relative to (e.g. the project base dir)
+         */
+        public Fingerprinter(Path root) {
+            this.root = root.toAbsolutePath().normalize();
+        }
+
+        /**
+         * @param finding a finding
+         * @return the fingerprint of the finding
+         */
+        public String fingerprint(Finding finding) {
+            final List<String> lines = linesByFile.computeIfAbsent(finding.file, Fingerprinter::readLines);
+            final StringBuilder code = new StringBuilder();
+            for (int line = Math.max(1, finding.line); line <= Math.min(lines.size(), finding.endLine); line++) {
+                code.append(lines.get(line - 1)).append('\n');
+            }
+            final String normalizedCode = code.toString().trim().replaceAll("\\s+", " ");
+            final String key = "SC" + finding.code + "\0" + relativePath(finding.file) + "\0" + normalizedCode;
+            // 128 bits are plenty to avoid collisions among findings
+            return Digests.hex(Digests.sha256().digest(key.getBytes(StandardCharsets.UTF_8))).substring(0, 32);
+        }
+
+        /**
+         * @param file the path of a file, as in findings
+         * @return the path of the file relative to the root, with '/' separators
+         */
+        public String relativePath(String file) {
+            final Path path = Paths.get(file).toAbsolutePath().normalize();
+            final Path relative = path.startsWith(root) ? root.relativize(path) : path;
+            return relative.toString().replace('\\', '/');
+        }
+
+        private static List<String> readLines(String file) {
+            try {
+                // iso-8859-1 never fails decoding, whatever the encoding of the file
+                return Files.readAllLines(Paths.get(file), StandardCharsets.ISO_8859_1);
+            } catch (IOException e) {
+                return Collections.emptyList();
+            }
+        }
+    }
+
+    /**
+     * Reads a baseline file.
+     *
+     * @param file the baseline file
+     * @return the baseline
+     * @throws IOException if the file cannot be read
+     */
+    public static Baseline read(Path file) throws IOException {
+        final Map<String, Integer> fingerprints = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                final int end = trimmed.indexOf(' ');
+                fingerprints.merge(end == -1 ? trimmed : trimmed.substring(0, end), 1, Integer::sum);
+            }
+        }
+        return new Baseline(fingerprints);
+    }
+
+    /**
+     * Writes a baseline file.
+     *
+     * @param file         the baseline file
+     * @param findings     the findings to be accepted
+     * @param fingerprints the fingerprinter of the findings
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path file, List<Finding> findings, Fingerprinter fingerprints) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        for (Finding finding : findings) {
+            lines.add(fingerprints.fingerprint(finding) + " SC" + finding.code + " "
+                    + fingerprints.relativePath(finding.file));
+        }
+        // sorted, so that baselines of the same findings are identical
+        Collections.sort(lines);
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("# shellcheck baseline: fingerprint, code, file. Regenerate with the \"baseline\" goal");
+            writer.newLine();
+            for (String line : lines) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Consumes a finding from the baseline, if there.
+     *
+     * @param fingerprint the fingerprint of a finding
+     * @return true if the finding is in the baseline (and must not be reported)
+     */
+    public boolean suppress(String fingerprint) {
+        final Integer count = remaining.get(fingerprint);
+        if (count == null) {
+            return false;
+        }
+        if (count == 1) {
+            remaining.remove(fingerprint);
+        } else {
+            remaining.put(fingerprint, count - 1);
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of findings of the baseline not consumed so far (e.g. fixed ones)
+     */
+    public int getRemaining() {
+        return remaining.values().stream().mapToInt(Integer::intValue).sum();
+    }
+}
@@ -0,0 +1,83 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs shellcheck on the files specified with sourceDirs (as the "check" goal does) and writes all the findings to
+ * the baseline file, so that the "check" goal with useBaseline reports only the findings that are not there.
+ */
+@Mojo(name = "baseline", threadSafe = true)
+public class BaselineMojo extends ShellCheckMojo {
+
+    @Override
+    public void execute() throws MojoExecutionException {
+
+        try {
+
+            final List<Path> scripts = discoverScripts();
+            countScripts(scripts);
+
+            final Path binary;
+            try (Metrics.Phase phase = getMetrics().phase("binaryResolution")) {
+                binary = resolveBinary();
+            }
+
+            final OutputForwarder forwarder = newOutputForwarder(false);
+            final Shellcheck.Result result;
+            try (Metrics.Phase phase = getMetrics().phase("execution")) {
+                result = runShellcheck(binary, scripts, true, forwarder);
+            }
+            // a broken run would make a baseline missing findings
+            if (result.exitCode > 1) {
+                forwarder.finish(result.stdout, result.stderr);
+                throw new MojoExecutionException("Cannot write the baseline, shellcheck failed with exit code ["
+                        + result.exitCode + "]");
+            }
+
+            try (Metrics.Phase phase = getMetrics().phase("reporting")) {
+                final List<Finding> findings = new ArrayList<>();
+                result.forEachFinding(findings::add);
+                forwarder.finish(result.stdout, result.stderr);
+                Baseline.write(getBaselineFile(), findings, new Baseline.Fingerprinter(getBaseDir()));
+                getLog().info("shellcheck baseline: [" + findings.size() + "] findings written to ["
+                        + getBaselineFile() + "]");
+            }
+
+        } catch (IOException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException(e.getMessage(), e);
+        } finally {
+            writeMetrics();
+        }
+    }
+}
@@ -23,70 +23,67 @@ package dev.dimlight.maven.plugin.shellcheck;
  */
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-import org.apache.maven.execution.MavenSession;
-import org.apache.maven.plugin.BuildPluginManager;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
-import org.apache.maven.project.MavenProject;
+import org.apache.maven.settings.Proxy;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.Map;
 import java.util.Optional;
 
-import static org.twdata.maven.mojoexecutor.MojoExecutor.artifactId;
-import static org.twdata.maven.mojoexecutor.MojoExecutor.configuration;
-import static org.twdata.maven.mojoexecutor.MojoExecutor.element;
-import static org.twdata.maven.mojoexecutor.MojoExecutor.executeMojo;
-import static org.twdata.maven.mojoexecutor.MojoExecutor.executionEnvironment;
-import static org.twdata.maven.mojoexecutor.MojoExecutor.goal;
-import static org.twdata.maven.mojoexecutor.MojoExecutor.groupId;
-import static org.twdata.maven.mojoexecutor.MojoExecutor.name;
-import static org.twdata.maven.mojoexecutor.MojoExecutor.plugin;
-import static org.twdata.maven.mojoexecutor.MojoExecutor.version;
-
 /**
  * Groups differents ways of getting hold of the correct shellcheck binary.
  */
 public class BinaryResolver {
 
     private final Log log;
-    private final MavenProject mavenProject;
-    private final MavenSession mavenSession;
-    private final BuildPluginManager pluginManager;
     private final Optional<Path> externalBinaryPath;
     private final Architecture arch;
     private final PluginPaths pluginPaths;
     private final Map<String, URL> releaseArchiveUrls;
+    private final Map<String, String> releaseArchiveSha256s;
+    private final ReleaseArchiveDownloader downloader;
+    private final Optional<BinaryStore> binaryStore;
+    private final String pluginVersion;
+    private final BinaryStamp binaryStamp;
 
     /**
-     * @param mavenProject         maven component for the delegated plugin download
-     * @param mavenSession         maven component for the delegated plugin download
-     * @param pluginManager        maven component for the delegated plugin download
-     * @param mavenTargetDirectory the path to the current project target directory
-     * @param externalBinaryPath   the path to the external binary
-     * @param releaseArchiveUrl    the url where to find the wanted release of shellcheck
-     * @param log                  a maven logger
+     * @param mavenTargetDirectory  the path to the current project target directory
+     * @param externalBinaryPath    the path to the external binary
+     * @param releaseArchiveUrl     the url where to find the wanted release of shellcheck
+     * @param releaseArchiveSha256s the expected sha-256 of the release archives, by os.name-os.arch key
+     * @param proxy                 the active proxy in maven settings, used for downloads
+     * @param binaryStore           the store of binaries shared among builds, if the binary must be
+     *                              extracted there (instead of the project target directory)
+     * @param pluginVersion         the version of this plugin, binaries resolved by other versions are not reused
+     * @param log                   a maven logger
      */
-    public BinaryResolver(MavenProject mavenProject, MavenSession mavenSession, BuildPluginManager pluginManager,
-                          Path mavenTargetDirectory,
+    public BinaryResolver(Path mavenTargetDirectory,
                           Optional<Path> externalBinaryPath,
                           Map<String, URL> releaseArchiveUrl,
+                          Map<String, String> releaseArchiveSha256s,
+                          Optional<Proxy> proxy,
+                          Optional<BinaryStore> binaryStore,
+                          String pluginVersion,
                           Log log) {
-        this.mavenProject = mavenProject;
-        this.mavenSession = mavenSession;
-        this.pluginManager = pluginManager;
         this.releaseArchiveUrls = releaseArchiveUrl;
+        this.releaseArchiveSha256s = releaseArchiveSha256s;
+        this.downloader = new ReleaseArchiveDownloader(proxy, log);
         this.externalBinaryPath = externalBinaryPath;
+        this.binaryStore = binaryStore;
+        this.pluginVersion = pluginVersion;
         this.log = log;
         this.arch = Architecture.detect();
         log.info("os arch: [" + Architecture.osArchKey() + "]");
         this.pluginPaths = new PluginPaths(mavenTargetDirectory);
+        this.binaryStamp = new BinaryStamp(pluginPaths.getPathInPluginOutputDirectory("shellcheck.stamp"));
     }
 
     /**
@@ -127,14 +124,15 @@ public class BinaryResolver {
     /**
      * Downloads shellcheck for the current architecture and returns the path of the downloaded binary.
      * <p>
-     * The actual download is delegated to a maven plugin executed via mojo-executor.
-     * This is less clean than a proper implementation but it's also orders of magnitude simpler as it automatically
-     * deals with: caching, different compression formats and maven proxy settings.
+     * Only the binary is extracted from the release archive, while it is being downloaded, and the archive is
+     * verified against its expected sha-256 (if configured).
+     * If a binary store is available the binary is stored there, once per release url, otherwise it is stored in the
+     * project target directory and the download is skipped if the binary downloaded from the same url by a previous
+     * build is still there, untouched.
      *
      * @return the path to the downloaded binary
-     * @throws MojoExecutionException if the delegated execution to the download maven plugin fails or if we can't find
-     *                                the file after the download
-     * @throws IOException            in case we fail to make the downloaded binary executable (unix only)
+     * @throws MojoExecutionException if the downloaded binary cannot be read or executed
+     * @throws IOException            if the download fails, the archive has no binary or does not match its sha-256
      */
     private Path downloadShellcheckBinary() throws MojoExecutionException, IOException {
         URL u = releaseArchiveUrls.get(Architecture.osArchKey());
@@ -142,38 +140,44 @@ public class BinaryResolver {
             log.warn("No shellcheck download url provided for current os.name-os.arch [" + Architecture.osArchKey() + "]");
             u = arch.downloadUrl();
         }
-        final String url = u.toExternalForm();
+        final URL archiveUrl = u;
+        final String url = archiveUrl.toExternalForm();
+        final Optional<String> expectedSha256 = Optional.ofNullable(releaseArchiveSha256s.get(Architecture.osArchKey()));
+
+        if (binaryStore.isPresent()) {
+            // stored by url (and expected sha-256), there's no way to know the version of a release before downloading it
+            final String storeKey = url + "\0" + expectedSha256.orElse("");
+            final String storeVersion = "download-" + Digests.hex(Digests.sha256()
+                    .digest(storeKey.getBytes(StandardCharsets.UTF_8))).substring(0, 16);
+            final Path storedBinary = binaryStore.get().install(storeVersion, arch, () -> {
+                log.info("shellcheck release will be fetched at [" + url + "]");
+                return downloader.openBinary(archiveUrl, expectedSha256, arch);
+            });
+            log.debug("Using stored binary [" + storedBinary + "] downloaded from [" + url + "]");
+            return validateBinaryPath(storedBinary, BinaryResolutionMethod.download);
+        }
+
+        final Optional<Path> upToDateBinary = binaryStamp.upToDateBinary(url, pluginVersion);
+        if (upToDateBinary.isPresent()) {
+            log.info("shellcheck release from [" + url + "] already downloaded at [" + upToDateBinary.get() + "]");
+            return validateBinaryPath(upToDateBinary.get(), BinaryResolutionMethod.download);
+        }
+        binaryStamp.invalidate();
 
         log.info("shellcheck release will be fetched at [" + url + "]");
 
-        final Path downloadAndUnpackPath = pluginPaths.getPluginOutputDirectory();
-        executeMojo(
-                plugin(
-                        groupId("com.googlecode.maven-download-plugin"),
-                        artifactId("download-maven-plugin"),
-                        version("1.6.0")
-                ),
-                goal("wget"),
-                configuration(
-                        element(name("uri"), url), // url is an alias!
-                        element(name("unpack"), "true"),
-                        element(name("outputDirectory"), downloadAndUnpackPath.toFile().getAbsolutePath())
-                ),
-                executionEnvironment(
-                        mavenProject,
-                        mavenSession,
-                        pluginManager
-                )
-        );
-
-        final Path expectedDownloadedBinary = pluginPaths.guessUnpackedBinary(downloadAndUnpackPath, arch);
-        arch.makeExecutable(expectedDownloadedBinary);
-
-        return validateBinaryPath(expectedDownloadedBinary, BinaryResolutionMethod.download);
+        final Path binaryPath = pluginPaths.getPathInPluginOutputDirectory("shellcheck" + arch.idiomaticExecutableSuffix());
+        downloader.download(archiveUrl, expectedSha256, arch, binaryPath);
+        binaryStamp.write(binaryPath, url, pluginVersion);
+
+        return validateBinaryPath(binaryPath, BinaryResolutionMethod.download);
     }
 
     /**
      * Extracts the shellcheck binary choosing from the binaries embedded in the jar according to the detected arch.
+     * If a binary store is available the binary is extracted there, only if not already extracted by a previous
+     * build, otherwise it is extracted to the project target directory (unless already extracted there by a previous
+     * build and untouched since then).
      *
      * @return the path to the usable, architecture-dependent, shellcheck binary.
      * @throws IOException            if something goes bad while extracting and copying to the project build directory.
@@ -184,6 +188,25 @@ public class BinaryResolver {
     private Path extractEmbeddedShellcheckBinary() throws IOException, MojoExecutionException {
         log.debug("Detected arch is [" + arch + "]");
 
+        final String binResourcePath = arch.embeddedBinPath();
+        if (getClass().getResource(binResourcePath) == null) {
+            throw new MojoExecutionException("No embedded binary found for shellcheck");
+        }
+
+        if (binaryStore.isPresent()) {
+            final Path storedBinary = binaryStore.get().install(Shellcheck.VERSION, arch,
+                    () -> getClass().getResourceAsStream(binResourcePath));
+            log.debug("Using stored binary [" + storedBinary + "]");
+            return validateBinaryPath(storedBinary, BinaryResolutionMethod.embedded);
+        }
+
+        final Optional<Path> upToDateBinary = binaryStamp.upToDateBinary(binResourcePath, pluginVersion);
+        if (upToDateBinary.isPresent()) {
+            log.debug("Using already extracted binary [" + upToDateBinary.get() + "]");
+            return validateBinaryPath(upToDateBinary.get(), BinaryResolutionMethod.embedded);
+        }
+        binaryStamp.invalidate();
+
         final String binaryTargetName = "shellcheck" + arch.idiomaticExecutableSuffix();
         final Path binaryPath = pluginPaths.getPathInPluginOutputDirectory(binaryTargetName);
 
@@ -191,7 +214,6 @@ public class BinaryResolver {
         log.debug("Path [" + binaryPath + "] was created? [" + created + "]");
 
         // copy from inside the jar to /target/shellcheck
-        final String binResourcePath = arch.embeddedBinPath();
         log.debug("Will try to use binary [" + binResourcePath + "]");
         try (final InputStream resourceAsStream = getClass().getResourceAsStream(binResourcePath)) {
             if (resourceAsStream == null) {
@@ -202,6 +224,7 @@ public class BinaryResolver {
 
         // make the extracted file executable
         arch.makeExecutable(binaryPath);
+        binaryStamp.write(binaryPath, binResourcePath, pluginVersion);
 
         return validateBinaryPath(binaryPath, BinaryResolutionMethod.embedded);
     }
@@ -0,0 +1,152 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A stamp file recording where a resolved binary comes from and how it looked like right after being resolved.
+ * <p>
+ * It allows to skip resolution (extraction, download) on later builds with just a few stat calls: the binary is
+ * up-to-date if it was resolved from the same source by the same plugin version and its size and modification time
+ * did not change since then. Its content is also checked against the recorded sha-256, once per jvm, so that a
+ * corrupted or replaced binary is resolved again.
+ */
+public class BinaryStamp {
+
+    private static final String SOURCE = "source";
+    private static final String PLUGIN_VERSION = "pluginVersion";
+    private static final String BINARY = "binary";
+    private static final String SIZE = "size";
+    private static final String LAST_MODIFIED = "lastModified";
+    private static final String SHA256 = "sha256";
+
+    /**
+     * Stamps (binary, size, modification time and digest) already verified by this jvm, e.g. by a previous module.
+     */
+    private static final Set<String> VERIFIED_STAMPS = ConcurrentHashMap.newKeySet();
+
+    private final Path stampFile;
+
+    /**
+     * @param stampFile the file where the stamp is stored.
+     */
+    public BinaryStamp(Path stampFile) {
+        this.stampFile = stampFile;
+    }
+
+    /**
+     * @param source        what the binary is resolved from (e.g. a resource path or url)
+     * @param pluginVersion the version of this plugin
+     * @return the binary recorded in the stamp, if the stamp matches source and plugin version and the binary was not
+     * modified since the stamp was written (same size, modification time and sha-256).
+     * @throws IOException if the stamp exists but cannot be read
+     */
+    public Optional<Path> upToDateBinary(String source, String pluginVersion) throws IOException {
+        final Properties stamp = new Properties();
+        try (final InputStream in = Files.newInputStream(stampFile)) {
+            stamp.load(in);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+
+        if (!source.equals(stamp.getProperty(SOURCE)) || !pluginVersion.equals(stamp.getProperty(PLUGIN_VERSION))
+                || stamp.getProperty(BINARY) == null) {
+            return Optional.empty();
+        }
+
+        final Path binary = Paths.get(stamp.getProperty(BINARY));
+        try {
+            final BasicFileAttributes attributes = Files.readAttributes(binary, BasicFileAttributes.class);
+            final boolean unchanged = String.valueOf(attributes.size()).equals(stamp.getProperty(SIZE))
+                    && String.valueOf(attributes.lastModifiedTime().toMillis()).equals(stamp.getProperty(LAST_MODIFIED));
+            return unchanged && isVerified(binary, stamp) ? Optional.of(binary) : Optional.empty();
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static boolean isVerified(Path binary, Properties stamp) throws IOException {
+        final String sha256 = stamp.getProperty(SHA256);
+        if (sha256 == null) {
+            return false;
+        }
+        if (VERIFIED_STAMPS.contains(key(stamp))) {
+            return true;
+        }
+        if (!Digests.sha256(binary).equals(sha256)) {
+            return false;
+        }
+        VERIFIED_STAMPS.add(key(stamp));
+        return true;
+    }
+
+    private static String key(Properties stamp) {
+        return stamp.getProperty(BINARY) + " " + stamp.getProperty(SIZE) + " " + stamp.getProperty(LAST_MODIFIED)
+                + " " + stamp.getProperty(SHA256);
+    }
+
+    /**
+     * Records a freshly resolved binary.
+     *
+     * @param binary        the resolved binary
+     * @param source        what the binary was resolved from
+     * @param pluginVersion the version of this plugin
+     * @throws IOException if the binary cannot be read or the stamp cannot be written
+     */
+    public void write(Path binary, String source, String pluginVersion) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(binary, BasicFileAttributes.class);
+        final Properties stamp = new Properties();
+        stamp.setProperty(SOURCE, source);
+        stamp.setProperty(PLUGIN_VERSION, pluginVersion);
+        stamp.setProperty(BINARY, binary.toAbsolutePath().toString());
+        stamp.setProperty(SIZE, String.valueOf(attributes.size()));
+        stamp.setProperty(LAST_MODIFIED, String.valueOf(attributes.lastModifiedTime().toMillis()));
+        stamp.setProperty(SHA256, Digests.sha256(binary));
+
+        Files.createDirectories(stampFile.getParent());
+        try (final OutputStream out = Files.newOutputStream(stampFile)) {
+            stamp.store(out, "shellcheck binary resolution stamp");
+        }
+    }
+
+    /**
+     * Removes the stamp, to be done before touching the binary so that a failure never leaves a stale stamp.
+     *
+     * @throws IOException if the stamp cannot be deleted
+     */
+    public void invalidate() throws IOException {
+        Files.deleteIfExists(stampFile);
+    }
+}
@@ -0,0 +1,170 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A store of shellcheck binaries shared by all the builds of a user, so that a binary is extracted once per
+ * version/architecture instead of once per module build.
+ * <p>
+ * Binaries are stored at {@code <root>/<version>/<arch>/shellcheck}, next to a digest file with their sha-256 and
+ * size. Binaries are written to a temporary file and atomically renamed in place (already executable), so that they
+ * never appear partially written, the digest file is written last. Builds needing a missing binary at the same time
+ * (e.g. the modules of a parallel build) store it once, the others wait for it.
+ * A stored binary is reused as long as its size matches the digest file, its full digest is verified once per jvm.
+ */
+public class BinaryStore {
+
+    private static final String DIGEST_FILE_NAME = "shellcheck.sha256";
+
+    /**
+     * Binaries whose digest has already been verified by this jvm (e.g. by a previous module of the reactor).
+     */
+    private static final Set<Path> VERIFIED_BINARIES = ConcurrentHashMap.newKeySet();
+
+    private final Path root;
+
+    /**
+     * The source of a binary to be stored.
+     */
+    @FunctionalInterface
+    public interface BinarySource {
+
+        /**
+         * @return a new stream with the content of the binary
+         * @throws IOException if the stream cannot be opened
+         */
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * @param root the root directory of the store, created if missing.
+     */
+    public BinaryStore(Path root) {
+        this.root = root;
+    }
+
+    /**
+     * Returns the stored binary for the given version and architecture, storing it from source first if missing or
+     * corrupted.
+     *
+     * @param version the version of the binary
+     * @param arch    the architecture of the binary
+     * @param source  where to read the binary if not already stored
+     * @return the path to the stored, executable, binary
+     * @throws IOException if the binary cannot be stored
+     */
+    public Path install(String version, Architecture arch, BinarySource source) throws IOException {
+        final Path directory = root.resolve(version).resolve(arch.name());
+        final Path binary = directory.resolve("shellcheck" + arch.idiomaticExecutableSuffix());
+        final Path digestFile = directory.resolve(DIGEST_FILE_NAME);
+
+        if (isIntact(binary, digestFile)) {
+            return binary;
+        }
+
+        Files.createDirectories(directory);
+        // the modules of a parallel build (or concurrent builds) needing the same binary wait for the first one
+        try (LockFile lock = LockFile.acquire(directory.resolve(".lock"))) {
+            if (isIntact(binary, digestFile)) {
+                return binary;
+            }
+            store(binary, digestFile, arch, source);
+        }
+        return binary;
+    }
+
+    private static void store(Path binary, Path digestFile, Architecture arch, BinarySource source) throws IOException {
+        final Path directory = binary.getParent();
+        final Path tmpBinary = Files.createTempFile(directory, "shellcheck", ".tmp");
+        final Path tmpDigestFile = Files.createTempFile(directory, DIGEST_FILE_NAME, ".tmp");
+        try {
+            final MessageDigest digest = Digests.sha256();
+            try (final InputStream in = new DigestInputStream(source.open(), digest);
+                 final OutputStream out = Files.newOutputStream(tmpBinary)) {
+                final byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            }
+            arch.makeExecutable(tmpBinary);
+            Files.write(tmpDigestFile, (Digests.hex(digest.digest()) + " " + Files.size(tmpBinary))
+                    .getBytes(StandardCharsets.UTF_8));
+
+            moveInPlace(tmpBinary, binary);
+            moveInPlace(tmpDigestFile, digestFile);
+        } finally {
+            Files.deleteIfExists(tmpBinary);
+            Files.deleteIfExists(tmpDigestFile);
+        }
+
+        VERIFIED_BINARIES.add(binary);
+    }
+
+    /**
+     * Checks a stored binary against its digest file: only the size is checked if this jvm already verified it,
+     * the full digest otherwise.
+     */
+    private static boolean isIntact(Path binary, Path digestFile) throws IOException {
+        final String[] recorded;
+        try {
+            recorded = new String(Files.readAllBytes(digestFile), StandardCharsets.UTF_8).trim().split(" ");
+            if (recorded.length != 2 || Files.size(binary) != Long.parseLong(recorded[1])) {
+                return false;
+            }
+        } catch (NoSuchFileException | NumberFormatException e) {
+            return false;
+        }
+
+        if (VERIFIED_BINARIES.contains(binary)) {
+            return true;
+        }
+        if (!Digests.sha256(binary).equals(recorded[0])) {
+            return false;
+        }
+        VERIFIED_BINARIES.add(binary);
+        return true;
+    }
+
+    private static void moveInPlace(Path tmp, Path destination) throws IOException {
+        try {
+            Files.move(tmp, destination, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, destination, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
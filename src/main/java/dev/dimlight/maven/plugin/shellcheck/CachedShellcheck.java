@@ -0,0 +1,420 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Runs shellcheck only on the scripts whose results are not already cached, replaying the cached results for the
+ * others.
+ * <p>
+ * Results are cached per script, keyed on the content and the extension of the script (shellcheck infers the shell
+ * dialect from it, without a shebang), the content of the rc file shellcheck reads for the script (the nearest
+ * .shellcheckrc going up from its directory, or the one of the user, unless "--norc" or "--rcfile" are given), the
+ * shellcheck args and the shellcheck version.
+ * In order to have a result for each script, the json1 outputs of the processes checking the cache misses are split by
+ * script; outputs of other formats cannot be told apart by script, their misses are checked by a process each.
+ * Absolute paths of the scripts are replaced by a placeholder in the cached outputs, so that an entry can be replayed
+ * for any script having the same content.
+ * <p>
+ * When shellcheck follows sourced files, the key also covers the content of the files sourced by the script,
+ * transitively, so that changing a library invalidates exactly the results of the scripts depending on it.
+ */
+public class CachedShellcheck {
+
+    private static final String SCRIPT_PATH_PLACEHOLDER = "@@shellcheck-maven-plugin:script@@";
+    private static final String JSON_SCRIPT_PATH_PLACEHOLDER = "@@shellcheck-maven-plugin:json-script@@";
+
+    private final ResultCache cache;
+    private final String binaryVersion;
+    private final Optional<SourceGraph> sourceGraph;
+    private final Map<Path, String> dependencyDigests = new HashMap<>();
+    private final Map<Path, Optional<Path>> rcFilesByDirectory = new HashMap<>();
+    private int hits;
+    private int misses;
+
+    /**
+     * @param cache         the cache to use
+     * @param binaryVersion the version of the shellcheck binary, since results depend on it
+     * @param sourceGraph   the files sourced by the scripts, if shellcheck follows them (results depend on them)
+     */
+    public CachedShellcheck(ResultCache cache, String binaryVersion, Optional<SourceGraph> sourceGraph) {
+        this.cache = cache;
+        this.binaryVersion = binaryVersion;
+        this.sourceGraph = sourceGraph;
+    }
+
+    /**
+     * Runs shellcheck on the cache misses among the given scripts, storing their results in the cache, and merges
+     * them with the cached ones, in the order of the scripts.
+     * <p>
+     * With the json1 format, misses are checked in shards balanced by cost, whose outputs are split by script; a shard
+     * whose output cannot be split (e.g. a failure, or findings in other files) is checked again a script at a time.
+     * With other formats each miss is checked by its own shellcheck process.
+     * Cached results are read again while merging, so that only the outputs of a shard at a time are held in memory.
+     *
+     * @param shellcheckBinary the binary for shellcheck
+     * @param args             the command line args to be passed to the shellcheck binary
+     * @param outdir           where the output files will be stored
+     * @param scriptsToCheck   the scripts to check
+     * @param scheduler        bounds the number of shellcheck processes running concurrently
+     * @param batcher          splits shards whose command line would be too long
+     * @param costs            the expected cost of each script, to balance the shards
+     * @param timeout          the maximum time a shellcheck process may run, if any: scripts timing out are not
+     *                         analysed (nor cached)
+     * @param listener         notified of the completion of each shellcheck process
+     * @param forwarder        where the output lines are forwarded
+     * @return the merged result, as if a single shellcheck process had checked all the scripts
+     * @throws IOException          if something goes bad doing io things (writing files etc...)
+     * @throws InterruptedException if the thread gets interrupted while waiting for shellcheck to finish
+     */
+    public Shellcheck.Result run(Path shellcheckBinary,
+                                 List<String> args,
+                                 Path outdir,
+                                 List<Path> scriptsToCheck,
+                                 ProcessScheduler scheduler,
+                                 CommandLineBatcher batcher,
+                                 CostHistory costs,
+                                 Optional<Duration> timeout,
+                                 ParallelShellcheck.ShardListener listener,
+                                 OutputForwarder forwarder) throws IOException, InterruptedException {
+
+        final Path shardsDir = outdir.resolve("shards");
+        Files.createDirectories(shardsDir);
+
+        final List<String> keys = new ArrayList<>(scriptsToCheck.size());
+        final List<Path> missScripts = new ArrayList<>();
+        final Map<Path, Integer> missIndexes = new HashMap<>();
+        final Map<Integer, Shellcheck.Result> missResults = new HashMap<>();
+
+        for (int i = 0; i < scriptsToCheck.size(); i++) {
+            final Path script = scriptsToCheck.get(i);
+            final String key = key(args, script);
+            keys.add(key);
+            if (!cache.contains(key)) {
+                missScripts.add(script);
+                missIndexes.put(script, i);
+            }
+        }
+
+        hits += scriptsToCheck.size() - missScripts.size();
+        misses += missScripts.size();
+
+        final boolean splittable = Shellcheck.format(args).filter("json1"::equals).isPresent();
+        final List<List<Path>> missShards = new ArrayList<>();
+        if (splittable) {
+            for (List<Path> shard : ParallelShellcheck.balance(missScripts,
+                    ParallelShellcheck.maxShards(scheduler.getParallelism()), costs::estimate)) {
+                missShards.addAll(batcher.batches(shellcheckBinary, args, shard));
+            }
+        } else {
+            missScripts.forEach(script -> missShards.add(Collections.singletonList(script)));
+        }
+
+        final List<Path> unsplit = new ArrayList<>();
+        ParallelShellcheck.runShards(shellcheckBinary, args, shardsDir, missShards, scheduler, costs, timeout, listener,
+                (shardIndex, result) -> {
+                    final List<Path> shard = missShards.get(shardIndex);
+                    if (shard.size() == 1) {
+                        storeMiss(missIndexes.get(shard.get(0)), shard.get(0), result, keys, missResults);
+                        return;
+                    }
+                    final Optional<Map<String, StringBuilder>> commentsByScript = splitJson1(result, shard);
+                    for (Path script : shard) {
+                        final int scriptIndex = missIndexes.get(script);
+                        if (result.timedOut.contains(script)) {
+                            storeMiss(scriptIndex, script, timedOut(shardsDir, scriptIndex, script), keys, missResults);
+                        } else if (commentsByScript.isPresent()) {
+                            final StringBuilder comments = commentsByScript.get().get(script.toFile().getAbsolutePath());
+                            storeMiss(scriptIndex, script, json1Result(shardsDir, scriptIndex, comments), keys, missResults);
+                        } else {
+                            unsplit.add(script);
+                        }
+                    }
+                });
+
+        final List<List<Path>> unsplitShards = new ArrayList<>();
+        unsplit.forEach(script -> unsplitShards.add(Collections.singletonList(script)));
+        ParallelShellcheck.runShards(shellcheckBinary, args, shardsDir.resolve("unsplit"), unsplitShards, scheduler,
+                costs, timeout, listener, (shardIndex, result) -> {
+                    final Path script = unsplitShards.get(shardIndex).get(0);
+                    storeMiss(missIndexes.get(script), script, result, keys, missResults);
+                });
+        cache.evictIfNeeded();
+
+        final Path stdout = outdir.resolve("shellcheck.stdout");
+        final Path stderr = outdir.resolve("shellcheck.stderr");
+
+        int exitCode = 0;
+        final List<Path> timedOut = new ArrayList<>();
+        try (final OutputStream out = forwarder.forwardingStdout(Files.newOutputStream(stdout));
+             final OutputStream err = forwarder.forwardingStderr(Files.newOutputStream(stderr))) {
+            final OutputMerger merger = new OutputMerger(args, out);
+            for (int i = 0; i < scriptsToCheck.size(); i++) {
+                final Path script = scriptsToCheck.get(i);
+                Shellcheck.Result missResult = missResults.get(i);
+                final Optional<ResultCache.Entry> entry = missResult == null ? cache.get(keys.get(i)) : Optional.empty();
+
+                if (missResult == null && !entry.isPresent()) {
+                    // evicted by a concurrent build in the meanwhile
+                    missResult = scheduler.run(() -> ParallelShellcheck.runBisecting(shellcheckBinary, args,
+                            shardsDir.resolve("evicted.stdout"), shardsDir.resolve("evicted.stderr"),
+                            Collections.singletonList(script), timeout));
+                }
+
+                if (missResult != null) {
+                    merger.append(missResult.stdout);
+                    Files.copy(missResult.stderr, err);
+                    exitCode = Math.max(exitCode, missResult.exitCode);
+                    timedOut.addAll(missResult.timedOut);
+                } else {
+                    merger.append(fromPlaceholders(entry.get().stdout, script));
+                    err.write(fromPlaceholders(entry.get().stderr, script));
+                    exitCode = Math.max(exitCode, entry.get().exitCode);
+                }
+            }
+            merger.finish();
+        }
+
+        return new Shellcheck.Result(exitCode, stdout, stderr, timedOut);
+    }
+
+    /**
+     * Keeps the result of a script checked by this run, caching it unless it may be a transient failure.
+     */
+    private void storeMiss(int scriptIndex, Path script, Shellcheck.Result result, List<String> keys,
+                           Map<Integer, Shellcheck.Result> missResults) throws IOException {
+        missResults.put(scriptIndex, result);
+        // 0 (clean) and 1 (problems found) depend only on the key, anything else may be a transient failure
+        if (result.exitCode <= 1 && result.timedOut.isEmpty()) {
+            cache.put(keys.get(scriptIndex), new ResultCache.Entry(result.exitCode,
+                    toPlaceholders(Files.readAllBytes(result.stdout), script),
+                    toPlaceholders(Files.readAllBytes(result.stderr), script)));
+        }
+    }
+
+    /**
+     * Splits the json1 output of a process checking many scripts by script.
+     *
+     * @return the json texts of the comments of each script (by absolute path, comma separated), nothing if the
+     * process failed or wrote to stderr, or if a comment is not about one of the scripts
+     */
+    private static Optional<Map<String, StringBuilder>> splitJson1(Shellcheck.Result result, List<Path> scripts)
+            throws IOException {
+        if (result.exitCode > 1 || Files.size(result.stderr) > 0) {
+            return Optional.empty();
+        }
+        final Map<String, StringBuilder> commentsByScript = new HashMap<>();
+        for (Path script : scripts) {
+            commentsByScript.put(script.toFile().getAbsolutePath(), new StringBuilder());
+        }
+        final boolean[] attributable = {true};
+        Json1Parser.parseWithJson(result.stdout, (finding, json) -> {
+            final StringBuilder comments = commentsByScript.get(finding.file);
+            if (comments == null) {
+                attributable[0] = false;
+                return;
+            }
+            comments.append(comments.length() == 0 ? "" : ",").append(json);
+        });
+        return attributable[0] ? Optional.of(commentsByScript) : Optional.empty();
+    }
+
+    /**
+     * @return the result of a script as if checked by its own shellcheck process, given its json1 comments
+     */
+    private static Shellcheck.Result json1Result(Path shardsDir, int scriptIndex, StringBuilder comments)
+            throws IOException {
+        final Path stdout = shardsDir.resolve("script-" + scriptIndex + ".stdout");
+        final Path stderr = shardsDir.resolve("script-" + scriptIndex + ".stderr");
+        Files.write(stdout, ("{\"comments\":[" + comments + "]}").getBytes(StandardCharsets.UTF_8));
+        Files.write(stderr, new byte[0]);
+        // shellcheck exits with 1 when there are comments
+        return new Shellcheck.Result(comments.length() == 0 ? 0 : 1, stdout, stderr);
+    }
+
+    private static Shellcheck.Result timedOut(Path shardsDir, int scriptIndex, Path script) throws IOException {
+        final Path stdout = shardsDir.resolve("script-" + scriptIndex + ".stdout");
+        final Path stderr = shardsDir.resolve("script-" + scriptIndex + ".stderr");
+        Files.write(stdout, new byte[0]);
+        Files.write(stderr, new byte[0]);
+        return new Shellcheck.Result(0, stdout, stderr, Collections.singletonList(script));
+    }
+
+    /**
+     * @return the number of scripts whose result was found in the cache so far.
+     */
+    public int getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of scripts whose result was not found in the cache so far.
+     */
+    public int getMisses() {
+        return misses;
+    }
+
+    private String key(List<String> args, Path script) throws IOException {
+        final MessageDigest digest = Digests.sha256();
+        digest.update(binaryVersion.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        for (String arg : args) {
+            digest.update(arg.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        digest.update((byte) 0);
+        digest.update(extension(script).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        final Optional<Path> rcFile = rcFile(args, script);
+        // by content only, as for the script itself
+        digest.update((rcFile.isPresent() ? dependencyDigest(rcFile.get()) : "").getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        Digests.update(digest, script);
+        if (sourceGraph.isPresent()) {
+            // by content only (sorted by path), as for the script itself, to be shared among checkouts
+            for (Path dependency : sourceGraph.get().transitiveDependencies(script)) {
+                digest.update((byte) 0);
+                digest.update(dependencyDigest(dependency).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return Digests.hex(digest.digest());
+    }
+
+    private static String extension(Path script) {
+        final String name = script.getFileName().toString();
+        // a leading dot makes a hidden file, not an extension
+        return name.lastIndexOf('.') <= 0 ? "" : name.substring(name.lastIndexOf('.'));
+    }
+
+    /**
+     * @return the rc file shellcheck reads when checking the script, if any: the one given with "--rcfile", or the
+     * nearest .shellcheckrc (or shellcheckrc) in the directory of the script or in its parents, or else the one of the
+     * user ($XDG_CONFIG_HOME/shellcheckrc, ~/.config/shellcheckrc, ~/.shellcheckrc); none with "--norc"
+     */
+    private Optional<Path> rcFile(List<String> args, Path script) {
+        Optional<Path> rcFile = Optional.empty();
+        for (int i = 0; i < args.size(); i++) {
+            final String arg = args.get(i);
+            if (arg.equals("--norc")) {
+                return Optional.empty();
+            } else if (arg.equals("--rcfile") && i + 1 < args.size()) {
+                rcFile = Optional.of(Paths.get(args.get(++i)));
+            } else if (arg.startsWith("--rcfile=")) {
+                rcFile = Optional.of(Paths.get(arg.substring("--rcfile=".length())));
+            }
+        }
+        if (rcFile.isPresent()) {
+            return rcFile.filter(Files::isRegularFile);
+        }
+        final Path directory = script.toAbsolutePath().normalize().getParent();
+        return directory == null ? userRcFile() : nearestRcFile(directory);
+    }
+
+    /**
+     * Scripts share their directories, the rc file of a directory is searched once.
+     */
+    private Optional<Path> nearestRcFile(Path directory) {
+        Optional<Path> rcFile = rcFilesByDirectory.get(directory);
+        if (rcFile == null) {
+            rcFile = rcFileIn(directory, ".shellcheckrc", "shellcheckrc");
+            if (!rcFile.isPresent()) {
+                rcFile = directory.getParent() == null ? userRcFile() : nearestRcFile(directory.getParent());
+            }
+            rcFilesByDirectory.put(directory, rcFile);
+        }
+        return rcFile;
+    }
+
+    private static Optional<Path> userRcFile() {
+        final String xdgConfigHome = System.getenv("XDG_CONFIG_HOME");
+        final Path home = Paths.get(System.getProperty("user.home"));
+        final Optional<Path> xdgRcFile = rcFileIn(xdgConfigHome == null || xdgConfigHome.isEmpty()
+                ? home.resolve(".config") : Paths.get(xdgConfigHome), "shellcheckrc");
+        return xdgRcFile.isPresent() ? xdgRcFile : rcFileIn(home, ".shellcheckrc");
+    }
+
+    private static Optional<Path> rcFileIn(Path directory, String... names) {
+        for (String name : names) {
+            final Path rcFile = directory.resolve(name);
+            if (Files.isRegularFile(rcFile)) {
+                return Optional.of(rcFile);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Libraries are sourced by many scripts (and rc files are shared by many scripts), their digest is computed once.
+     */
+    private String dependencyDigest(Path dependency) throws IOException {
+        String dependencyDigest = dependencyDigests.get(dependency);
+        if (dependencyDigest == null) {
+            dependencyDigest = Digests.sha256(dependency);
+            dependencyDigests.put(dependency, dependencyDigest);
+        }
+        return dependencyDigest;
+    }
+
+    static byte[] toPlaceholders(byte[] output, Path script) {
+        final String scriptPath = script.toFile().getAbsolutePath();
+        // json formats escape backslashes (windows paths)
+        final byte[] jsonReplaced = replace(output, jsonEscape(scriptPath), JSON_SCRIPT_PATH_PLACEHOLDER);
+        return replace(jsonReplaced, scriptPath, SCRIPT_PATH_PLACEHOLDER);
+    }
+
+    static byte[] fromPlaceholders(byte[] output, Path script) {
+        final String scriptPath = script.toFile().getAbsolutePath();
+        final byte[] jsonReplaced = replace(output, JSON_SCRIPT_PATH_PLACEHOLDER, jsonEscape(scriptPath));
+        return replace(jsonReplaced, SCRIPT_PATH_PLACEHOLDER, scriptPath);
+    }
+
+    private static String jsonEscape(String path) {
+        return path.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * Replaces text in raw output bytes.
+     * Latin-1 maps every byte to a char and back, so the bytes not being replaced are preserved whatever the encoding.
+     */
+    private static byte[] replace(byte[] bytes, String target, String replacement) {
+        final String targetLatin1 = new String(target.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+        final String replacementLatin1 = new String(replacement.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+        return new String(bytes, StandardCharsets.ISO_8859_1)
+                .replace(targetLatin1, replacementLatin1)
+                .getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
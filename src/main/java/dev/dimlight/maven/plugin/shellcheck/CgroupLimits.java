@@ -0,0 +1,287 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalLong;
+
+/**
+ * The cpu and memory limits of the cgroups of the current process (e.g. the cpu quota and memory limit of a
+ * kubernetes pod), with cgroup v1 and v2, as found in /proc and /sys/fs/cgroup.
+ * <p>
+ * Controllers are located through /proc/self/mountinfo and /proc/self/cgroup; limits set on the parent cgroups apply
+ * as well, so the lowest one along the hierarchy (up to the mount point) is taken. Anything that cannot be read
+ * (e.g. not on linux) means no limit.
+ */
+public class CgroupLimits {
+
+    /**
+     * cgroup v1 reports no memory limit as a huge (page aligned) value.
+     */
+    private static final long UNLIMITED_MEMORY = 1L << 60;
+
+    private final OptionalDouble cpus;
+    private final OptionalLong memoryBytes;
+
+    /**
+     * A mounted cgroup hierarchy.
+     */
+    private static final class Mount {
+
+        private final String root;
+        private final String mountPoint;
+        private final boolean v2;
+        private final List<String> controllers;
+
+        Mount(String root, String mountPoint, boolean v2, List<String> controllers) {
+            this.root = root;
+            this.mountPoint = mountPoint;
+            this.v2 = v2;
+            this.controllers = controllers;
+        }
+    }
+
+    /**
+     * @param cpus        the cpu limit, in cpus (e.g. 1.5 for a quota of 150ms every 100ms), if any
+     * @param memoryBytes the memory limit, in bytes, if any
+     */
+    public CgroupLimits(OptionalDouble cpus, OptionalLong memoryBytes) {
+        this.cpus = cpus;
+        this.memoryBytes = memoryBytes;
+    }
+
+    /**
+     * Reads the limits of the current process.
+     *
+     * @param root the root of the file system, where "proc" and "sys" are ("/" but in tests)
+     * @return the limits, none if they cannot be read
+     */
+    public static CgroupLimits read(Path root) {
+        try {
+            final List<Mount> mounts = mounts(root);
+            final List<String> cgroups = Files.readAllLines(root.resolve("proc/self/cgroup"), StandardCharsets.UTF_8);
+
+            OptionalDouble cpus = OptionalDouble.empty();
+            final Optional<Path> cpuDirectory = directory(root, mounts, cgroups, "cpu");
+            if (cpuDirectory.isPresent()) {
+                cpus = cpuLimit(cpuDirectory.get(), mountPointOf(root, mounts, cgroups, "cpu"));
+            }
+            OptionalLong memoryBytes = OptionalLong.empty();
+            final Optional<Path> memoryDirectory = directory(root, mounts, cgroups, "memory");
+            if (memoryDirectory.isPresent()) {
+                memoryBytes = memoryLimit(memoryDirectory.get(), mountPointOf(root, mounts, cgroups, "memory"));
+            }
+            return new CgroupLimits(cpus, memoryBytes);
+        } catch (IOException | RuntimeException e) {
+            return new CgroupLimits(OptionalDouble.empty(), OptionalLong.empty());
+        }
+    }
+
+    /**
+     * @return the cpu limit, in cpus, if any
+     */
+    public OptionalDouble getCpus() {
+        return cpus;
+    }
+
+    /**
+     * @return the memory limit, in bytes, if any
+     */
+    public OptionalLong getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * Sizes the number of concurrent processes so that they neither exceed the cpus nor the memory available.
+     *
+     * @param availableProcessors   the processors seen by the jvm (not container aware on old jvms)
+     * @param reservedMemoryBytes   the memory not available to processes (e.g. the maximum heap of this jvm)
+     * @param memoryPerProcessBytes the memory a process may use
+     * @return the number of processes, at least 1
+     */
+    public int parallelism(int availableProcessors, long reservedMemoryBytes, long memoryPerProcessBytes) {
+        // rounded up, as container aware jvms do: a fraction of a cpu is still worth a process
+        int parallelism = cpus.isPresent()
+                ? Math.min(availableProcessors, (int) Math.ceil(cpus.getAsDouble()))
+                : availableProcessors;
+        if (memoryBytes.isPresent() && memoryPerProcessBytes > 0) {
+            final long processes = (memoryBytes.getAsLong() - reservedMemoryBytes) / memoryPerProcessBytes;
+            parallelism = (int) Math.min(parallelism, processes);
+        }
+        return Math.max(1, parallelism);
+    }
+
+    private static List<Mount> mounts(Path root) throws IOException {
+        final List<Mount> mounts = new ArrayList<>();
+        for (String line : Files.readAllLines(root.resolve("proc/self/mountinfo"), StandardCharsets.UTF_8)) {
+            // id parent major:minor root mount-point options [optional fields] - type source super-options
+            final List<String> fields = Arrays.asList(line.split(" "));
+            final int separator = fields.indexOf("-");
+            if (separator < 5 || fields.size() < separator + 4) {
+                continue;
+            }
+            final String type = fields.get(separator + 1);
+            if ("cgroup2".equals(type)) {
+                mounts.add(new Mount(unescape(fields.get(3)), unescape(fields.get(4)), true, new ArrayList<>()));
+            } else if ("cgroup".equals(type)) {
+                mounts.add(new Mount(unescape(fields.get(3)), unescape(fields.get(4)), false,
+                        Arrays.asList(fields.get(separator + 3).split(","))));
+            }
+        }
+        return mounts;
+    }
+
+    /**
+     * @return the directory of the cgroup of the current process for the controller, v1 taking precedence over v2
+     * (in hybrid setups v2 has no controllers)
+     */
+    private static Optional<Path> directory(Path root, List<Mount> mounts, List<String> cgroups, String controller) {
+        return mount(mounts, cgroups, controller).map(mountAndPath -> {
+            final Mount mount = mountAndPath.mount;
+            final Path mountPoint = resolve(root, mount.mountPoint);
+            // the cgroup path is relative to the root of the mount, unless the mount is from another namespace
+            final String path = mountAndPath.path.startsWith(mount.root)
+                    ? mountAndPath.path.substring(mount.root.length())
+                    : mountAndPath.path;
+            final Path directory = resolve(mountPoint, path);
+            return Files.isDirectory(directory) && directory.startsWith(mountPoint) ? directory : mountPoint;
+        });
+    }
+
+    private static Path mountPointOf(Path root, List<Mount> mounts, List<String> cgroups, String controller) {
+        return resolve(root, mount(mounts, cgroups, controller).get().mount.mountPoint);
+    }
+
+    /**
+     * A mount and the path of the cgroup of the current process in its hierarchy.
+     */
+    private static final class MountAndPath {
+
+        private final Mount mount;
+        private final String path;
+
+        MountAndPath(Mount mount, String path) {
+            this.mount = mount;
+            this.path = path;
+        }
+    }
+
+    private static Optional<MountAndPath> mount(List<Mount> mounts, List<String> cgroups, String controller) {
+        // hierarchy-id:controllers:path, "0::path" being the v2 one
+        for (String line : cgroups) {
+            final String[] fields = line.split(":", 3);
+            if (fields.length == 3 && Arrays.asList(fields[1].split(",")).contains(controller)) {
+                for (Mount mount : mounts) {
+                    if (!mount.v2 && mount.controllers.contains(controller)) {
+                        return Optional.of(new MountAndPath(mount, fields[2]));
+                    }
+                }
+            }
+        }
+        for (String line : cgroups) {
+            final String[] fields = line.split(":", 3);
+            if (fields.length == 3 && "0".equals(fields[0]) && fields[1].isEmpty()) {
+                for (Mount mount : mounts) {
+                    if (mount.v2) {
+                        return Optional.of(new MountAndPath(mount, fields[2]));
+                    }
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static OptionalDouble cpuLimit(Path directory, Path mountPoint) throws IOException {
+        double lowest = Double.MAX_VALUE;
+        for (Path current = directory; current != null && current.startsWith(mountPoint); current = current.getParent()) {
+            // v2 "quota period" (quota is "max" if unlimited), v1 quota (-1 if unlimited) and period in two files
+            final Optional<String> max = readFirstLine(current.resolve("cpu.max"));
+            final Optional<String> quota = readFirstLine(current.resolve("cpu.cfs_quota_us"));
+            final Optional<String> period = readFirstLine(current.resolve("cpu.cfs_period_us"));
+            double cpus = Double.MAX_VALUE;
+            if (max.isPresent()) {
+                final String[] fields = max.get().split("\\s+");
+                if (fields.length == 2 && !"max".equals(fields[0])) {
+                    cpus = Double.parseDouble(fields[0]) / Double.parseDouble(fields[1]);
+                }
+            } else if (quota.isPresent() && period.isPresent() && Long.parseLong(quota.get()) > 0) {
+                cpus = Double.parseDouble(quota.get()) / Double.parseDouble(period.get());
+            }
+            lowest = Math.min(lowest, cpus);
+        }
+        return lowest == Double.MAX_VALUE ? OptionalDouble.empty() : OptionalDouble.of(lowest);
+    }
+
+    private static OptionalLong memoryLimit(Path directory, Path mountPoint) throws IOException {
+        long lowest = Long.MAX_VALUE;
+        for (Path current = directory; current != null && current.startsWith(mountPoint); current = current.getParent()) {
+            final Optional<String> max = readFirstLine(current.resolve("memory.max"));
+            final Optional<String> limit = max.isPresent() ? max : readFirstLine(current.resolve("memory.limit_in_bytes"));
+            if (limit.isPresent() && !"max".equals(limit.get())) {
+                final long bytes = Long.parseLong(limit.get());
+                if (bytes < UNLIMITED_MEMORY) {
+                    lowest = Math.min(lowest, bytes);
+                }
+            }
+        }
+        return lowest == Long.MAX_VALUE ? OptionalLong.empty() : OptionalLong.of(lowest);
+    }
+
+    private static Optional<String> readFirstLine(Path file) throws IOException {
+        try {
+            final List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            return lines.isEmpty() ? Optional.empty() : Optional.of(lines.get(0).trim());
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Resolves an absolute path (as found in /proc) against a root.
+     */
+    private static Path resolve(Path root, String absolutePath) {
+        Path resolved = root;
+        for (String name : absolutePath.split("/")) {
+            if (!name.isEmpty()) {
+                resolved = resolved.resolve(name);
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Paths in mountinfo have spaces, tabs, newlines and backslashes escaped as octal.
+     */
+    private static String unescape(String field) {
+        return field.replace("\\040", " ").replace("\\011", "\t").replace("\\012", "\n").replace("\\134", "\\");
+    }
+}
@@ -0,0 +1,180 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The lines changed in each file of a working tree, as an index of line intervals per file built from a unified diff
+ * with no context lines ("git diff -U0"): only added or modified lines (new side of the hunks) are changed lines.
+ * <p>
+ * The intervals of a file are kept merged and sorted in two arrays, a lookup is a binary search.
+ */
+public class ChangedLines {
+
+    private static final Pattern HUNK_HEADER = Pattern.compile("^@@ -\\d+(?:,\\d+)? \\+(\\d+)(?:,(\\d+))? @@");
+    private static final String NEW_FILE_HEADER = "+++ ";
+
+    private final Map<Path, Intervals> intervalsByFile;
+
+    private ChangedLines(Map<Path, Intervals> intervalsByFile) {
+        this.intervalsByFile = intervalsByFile;
+    }
+
+    /**
+     * The sorted, non overlapping, intervals of the changed lines of a file.
+     */
+    private static final class Intervals {
+
+        private final int[] starts;
+        private final int[] ends;
+
+        Intervals(List<int[]> intervals) {
+            intervals.sort((a, b) -> Integer.compare(a[0], b[0]));
+            final List<int[]> merged = new ArrayList<>();
+            for (int[] interval : intervals) {
+                final int[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+                if (last != null && interval[0] <= last[1] + 1) {
+                    last[1] = Math.max(last[1], interval[1]);
+                } else {
+                    merged.add(new int[]{interval[0], interval[1]});
+                }
+            }
+            this.starts = new int[merged.size()];
+            this.ends = new int[merged.size()];
+            for (int i = 0; i < merged.size(); i++) {
+                starts[i] = merged.get(i)[0];
+                ends[i] = merged.get(i)[1];
+            }
+        }
+
+        boolean intersects(int fromLine, int toLine) {
+            // the first interval ending at or after fromLine is the only candidate
+            int low = 0;
+            int high = ends.length;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (ends[middle] < fromLine) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low < ends.length && starts[low] <= toLine;
+        }
+    }
+
+    /**
+     * Parses a unified diff.
+     *
+     * @param root       the directory the paths in the diff are relative to (the top level of the working tree)
+     * @param diff       the output of "git diff -U0", with the default "a/" "b/" prefixes
+     * @param wholeFiles files to be considered changed in their entirety (e.g. untracked ones)
+     * @return the changed lines
+     */
+    public static ChangedLines parse(Path root, byte[] diff, Collection<Path> wholeFiles) {
+        final Map<Path, List<int[]>> intervals = new HashMap<>();
+        List<int[]> current = null;
+        for (String line : new String(diff, StandardCharsets.UTF_8).split("\n")) {
+            if (line.startsWith(NEW_FILE_HEADER)) {
+                final String path = unquote(line.substring(NEW_FILE_HEADER.length()).replaceAll("\t$", ""));
+                // a deleted file has no new side
+                current = !path.startsWith("b/")
+                        ? null
+                        : intervals.computeIfAbsent(root.resolve(stripPrefix(path)).normalize(), file -> new ArrayList<>());
+                continue;
+            }
+            final Matcher hunk = HUNK_HEADER.matcher(line);
+            if (current != null && hunk.find()) {
+                final int start = Integer.parseInt(hunk.group(1));
+                final int count = hunk.group(2) == null ? 1 : Integer.parseInt(hunk.group(2));
+                // a count of 0 is a deletion, no line of the new side changed
+                if (count > 0) {
+                    current.add(new int[]{start, start + count - 1});
+                }
+            }
+        }
+
+        final Map<Path, Intervals> intervalsByFile = new HashMap<>();
+        intervals.forEach((file, fileIntervals) -> intervalsByFile.put(file, new Intervals(fileIntervals)));
+        for (Path wholeFile : wholeFiles) {
+            final List<int[]> all = new ArrayList<>();
+            all.add(new int[]{1, Integer.MAX_VALUE});
+            intervalsByFile.put(wholeFile.normalize(), new Intervals(all));
+        }
+        return new ChangedLines(intervalsByFile);
+    }
+
+    /**
+     * @param file     an absolute, normalized, path
+     * @param fromLine the first line of a range
+     * @param toLine   the last line of the range (inclusive)
+     * @return true if any line of the range was changed in the file
+     */
+    public boolean intersects(Path file, int fromLine, int toLine) {
+        final Intervals intervals = intervalsByFile.get(file);
+        return intervals != null && intervals.intersects(fromLine, Math.max(fromLine, toLine));
+    }
+
+    /**
+     * @return the number of files with changed lines
+     */
+    public int getFileCount() {
+        return intervalsByFile.size();
+    }
+
+    private static String stripPrefix(String path) {
+        return path.substring("b/".length());
+    }
+
+    /**
+     * Git quotes paths with unusual characters as C strings (e.g. "b/with\"quote.sh").
+     */
+    private static String unquote(String path) {
+        if (path.length() < 2 || !path.startsWith("\"") || !path.endsWith("\"")) {
+            return path;
+        }
+        final StringBuilder unquoted = new StringBuilder();
+        for (int i = 1; i < path.length() - 1; i++) {
+            char c = path.charAt(i);
+            if (c == '\\' && i + 1 < path.length() - 1) {
+                c = path.charAt(++i);
+                if (c == 't') {
+                    c = '\t';
+                } else if (c == 'n') {
+                    c = '\n';
+                }
+            }
+            unquoted.append(c);
+        }
+        return unquoted.toString();
+    }
+}
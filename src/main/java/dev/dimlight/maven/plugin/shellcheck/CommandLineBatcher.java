@@ -0,0 +1,109 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits the scripts to check in batches small enough for the command line of a single shellcheck process,
+ * avoiding "Argument list too long" (E2BIG) failures on huge trees.
+ */
+public class CommandLineBatcher {
+
+    // the argv pointer (64 bit) and the terminating NUL of each arg on unices
+    private static final int UNIX_ARG_OVERHEAD = 8 + 1;
+    // the separating space and the quotes (when needed) of each arg on windows
+    private static final int WINDOWS_ARG_OVERHEAD = 1 + 2;
+
+    private final Architecture arch;
+    private final long maxLength;
+
+    /**
+     * @param arch      the architecture where shellcheck runs, that determines how args are counted
+     * @param maxLength the maximum length of a command line (see {@link Architecture#commandLineLengthLimit()})
+     */
+    public CommandLineBatcher(Architecture arch, long maxLength) {
+        this.arch = arch;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * @param arch the current architecture
+     * @return a batcher using the command line limit of the architecture, minus the space taken by the environment
+     * inherited by shellcheck (on unices).
+     */
+    public static CommandLineBatcher forCurrentProcess(Architecture arch) {
+        final CommandLineBatcher unlimited = new CommandLineBatcher(arch, Long.MAX_VALUE);
+        long environmentLength = 0;
+        if (arch.isUnixLike()) {
+            for (Map.Entry<String, String> variable : System.getenv().entrySet()) {
+                environmentLength += unlimited.argLength(variable.getKey() + "=" + variable.getValue());
+            }
+        }
+        return new CommandLineBatcher(arch, arch.commandLineLengthLimit() - environmentLength);
+    }
+
+    /**
+     * Splits the scripts in contiguous batches, each one fitting a command line with the given binary and args.
+     * A script too long to fit even alone gets its own batch (and its shellcheck process will likely fail).
+     *
+     * @param shellcheckBinary the binary for shellcheck
+     * @param args             the command line args to be passed to the shellcheck binary
+     * @param scripts          the scripts to check
+     * @return the batches, never empty ones
+     */
+    public List<List<Path>> batches(Path shellcheckBinary, List<String> args, List<Path> scripts) {
+        long fixedLength = argLength(shellcheckBinary.toFile().getAbsolutePath());
+        for (String arg : args) {
+            fixedLength += argLength(arg);
+        }
+
+        final List<List<Path>> batches = new ArrayList<>();
+        int from = 0;
+        long length = fixedLength;
+        for (int i = 0; i < scripts.size(); i++) {
+            final long scriptLength = argLength(scripts.get(i).toFile().getAbsolutePath());
+            if (i > from && length + scriptLength > maxLength) {
+                batches.add(scripts.subList(from, i));
+                from = i;
+                length = fixedLength;
+            }
+            length += scriptLength;
+        }
+        if (from < scripts.size()) {
+            batches.add(scripts.subList(from, scripts.size()));
+        }
+        return batches;
+    }
+
+    private long argLength(String arg) {
+        if (arch.isUnixLike()) {
+            return arg.getBytes(Charset.defaultCharset()).length + UNIX_ARG_OVERHEAD;
+        }
+        return arg.length() + WINDOWS_ARG_OVERHEAD;
+    }
+}
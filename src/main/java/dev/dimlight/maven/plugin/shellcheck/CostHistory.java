@@ -0,0 +1,203 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The time shellcheck takes on each file, as observed by the previous runs, to split the files in shards of about the
+ * same cost and to start the most expensive shards first.
+ * <p>
+ * The wall time of a shellcheck process is split among its files in proportion to their size (processes checking a
+ * single file give the exact figure), and averaged with the previous observations. The cost of a file is scaled by
+ * how much its size changed since it was observed; files never observed are estimated from their size, at the
+ * average time per byte of the observed ones.
+ * Costs are kept in a file, so that they survive builds. All methods are thread safe.
+ */
+public class CostHistory implements ParallelShellcheck.ShardListener {
+
+    /**
+     * The time per byte assumed when nothing was observed yet: only the ratios among costs matter then.
+     */
+    private static final double DEFAULT_NANOS_PER_BYTE = 1000;
+
+    private final Path historyFile;
+    private final Map<String, Cost> costs = new HashMap<>();
+    private long totalNanos;
+    private long totalSize;
+    private boolean updated;
+
+    /**
+     * The time shellcheck took on a file, when it had the given size.
+     */
+    private static final class Cost {
+
+        private final long nanos;
+        private final long size;
+
+        Cost(long nanos, long size) {
+            this.nanos = nanos;
+            this.size = size;
+        }
+    }
+
+    /**
+     * @param historyFile the file where costs are kept across builds, read if it exists
+     * @throws IOException if the history file exists but cannot be read
+     */
+    public CostHistory(Path historyFile) throws IOException {
+        this.historyFile = historyFile;
+        read();
+    }
+
+    /**
+     * @param script the script to be checked
+     * @return the expected time shellcheck takes on the script, in nanoseconds
+     */
+    public synchronized long estimate(Path script) {
+        final long size = size(script);
+        final Cost cost = costs.get(key(script));
+        if (cost != null && cost.size > 0) {
+            return Math.round((double) cost.nanos * size / cost.size);
+        }
+        if (cost != null) {
+            return cost.nanos;
+        }
+        return Math.round(nanosPerByte() * size);
+    }
+
+    /**
+     * Records the wall time of a shellcheck process. Processes that timed out are ignored, as their time is the
+     * timeout rather than the cost of their files.
+     */
+    @Override
+    public synchronized void shardCompleted(List<Path> scripts, Shellcheck.Result result, long wallNanos) {
+        if (!result.timedOut.isEmpty() || scripts.isEmpty()) {
+            return;
+        }
+        final long[] sizes = new long[scripts.size()];
+        long shardSize = 0;
+        for (int i = 0; i < scripts.size(); i++) {
+            sizes[i] = size(scripts.get(i));
+            shardSize += sizes[i];
+        }
+        for (int i = 0; i < scripts.size(); i++) {
+            final long observed = shardSize == 0
+                    ? wallNanos / scripts.size()
+                    : Math.round((double) wallNanos * sizes[i] / shardSize);
+            final String key = key(scripts.get(i));
+            final Cost previous = costs.get(key);
+            put(key, new Cost(previous == null ? observed : (previous.nanos + observed) / 2, sizes[i]));
+        }
+        updated = true;
+    }
+
+    /**
+     * Writes the costs in the history file, if any was recorded, forgetting the files that no longer exist.
+     *
+     * @throws IOException if the history file cannot be written
+     */
+    public synchronized void save() throws IOException {
+        if (!updated) {
+            return;
+        }
+        Files.createDirectories(historyFile.getParent());
+        final Path tmp = Files.createTempFile(historyFile.getParent(), historyFile.getFileName().toString(), ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Cost> entry : costs.entrySet()) {
+                    if (!Files.exists(historyFile.getFileSystem().getPath(entry.getKey()))) {
+                        continue;
+                    }
+                    writer.write(entry.getValue().nanos + " " + entry.getValue().size + " " + entry.getKey());
+                    writer.newLine();
+                }
+            }
+            try {
+                Files.move(tmp, historyFile, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, historyFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            updated = false;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private double nanosPerByte() {
+        return totalSize == 0 ? DEFAULT_NANOS_PER_BYTE : (double) totalNanos / totalSize;
+    }
+
+    private void put(String key, Cost cost) {
+        final Cost previous = costs.put(key, cost);
+        if (previous != null) {
+            totalNanos -= previous.nanos;
+            totalSize -= previous.size;
+        }
+        totalNanos += cost.nanos;
+        totalSize += cost.size;
+    }
+
+    private static String key(Path script) {
+        return script.toAbsolutePath().toString();
+    }
+
+    private static long size(Path script) {
+        try {
+            return Files.size(script);
+        } catch (IOException e) {
+            // shellcheck will complain about it, any estimate will do
+            return 0;
+        }
+    }
+
+    private void read() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(historyFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] fields = line.split(" ", 3);
+                if (fields.length != 3) {
+                    continue;
+                }
+                try {
+                    put(fields[2], new Cost(Long.parseLong(fields[0]), Long.parseLong(fields[1])));
+                } catch (NumberFormatException e) {
+                    // a corrupted line is just a cost to observe again
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // first run
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Watches directory trees for created, modified and deleted files, registering the directories created in the
+ * meanwhile as well (symbolic links to directories are not followed). Only the directories accepted by a filter are
+ * watched, with their subtrees, e.g. not to watch the excluded ones. Single directories (e.g. the ones of files out of
+ * the trees) can be watched too.
+ * <p>
+ * Changes are debounced: after the first event, events are collected until none arrives for the debounce time, so that
+ * a burst of saves (e.g. an editor writing a temporary file and renaming it, or a checkout) is returned at once.
+ * The platform may drop events under load, the caller must then consider everything changed.
+ */
+public class DirectoryWatcher implements Closeable {
+
+    /**
+     * The changes collected by {@link #awaitChanges(Duration)}.
+     */
+    public static class Changes {
+
+        /**
+         * The created, modified or deleted paths (directories included), sorted.
+         */
+        public final Set<Path> paths;
+
+        /**
+         * True if events were dropped, i.e. if paths may be missing changes.
+         */
+        public final boolean overflow;
+
+        /**
+         * @param paths    the changed paths
+         * @param overflow true if events were dropped
+         */
+        public Changes(Set<Path> paths, boolean overflow) {
+            this.paths = Collections.unmodifiableSet(paths);
+            this.overflow = overflow;
+        }
+    }
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Predicate<Path> mustWatch;
+
+    /**
+     * @param roots     the directory trees to watch, the ones not existing are ignored
+     * @param mustWatch tells whether a directory under the roots (with its real path) must be watched
+     * @throws IOException if the watch service cannot be created or a directory cannot be registered
+     */
+    public DirectoryWatcher(Collection<Path> roots, Predicate<Path> mustWatch) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.mustWatch = mustWatch;
+        for (Path root : roots) {
+            if (Files.isDirectory(root)) {
+                register(root.toRealPath(), new TreeSet<>());
+            }
+        }
+    }
+
+    /**
+     * Watches a single directory as well, not its subdirectories.
+     *
+     * @param directory the directory to watch, ignored if it does not exist or is already watched
+     * @throws IOException if the directory cannot be registered
+     */
+    public void watchDirectory(Path directory) throws IOException {
+        if (Files.isDirectory(directory) && !directories.containsValue(directory)) {
+            registerDirectory(directory);
+        }
+    }
+
+    /**
+     * @return the number of watched directories
+     */
+    public int getDirectoryCount() {
+        return directories.size();
+    }
+
+    /**
+     * Waits for changes and collects them until none happens for the debounce time.
+     *
+     * @param debounce how long changes must have stopped before returning
+     * @return the changes
+     * @throws IOException          if a created directory cannot be registered
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Changes awaitChanges(Duration debounce) throws IOException, InterruptedException {
+        final Set<Path> paths = new TreeSet<>();
+        boolean overflow = false;
+        WatchKey key = watchService.take();
+        while (key != null) {
+            final Path directory = directories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    overflow = true;
+                    continue;
+                }
+                if (directory == null) {
+                    continue;
+                }
+                final Path path = directory.resolve((Path) event.context());
+                paths.add(path);
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                        && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS) && mustWatch.test(path)) {
+                    register(path, paths);
+                }
+            }
+            if (!key.reset()) {
+                // deleted (or unmounted) directory
+                directories.remove(key);
+            }
+            key = watchService.poll(debounce.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        return new Changes(paths, overflow);
+    }
+
+    /**
+     * Registers a directory tree, adding its files to the changes: the ones created before the registration (e.g. by
+     * a checkout creating a directory and its content) would be missed otherwise. The subdirectories not to be watched
+     * are skipped, with their files.
+     */
+    private void register(Path root, Set<Path> files) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                if (!dir.equals(root) && !mustWatch.test(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                registerDirectory(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (!file.equals(root)) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // deleted in the meanwhile
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void registerDirectory(Path directory) throws IOException {
+        directories.put(directory.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE), directory);
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
@@ -0,0 +1,345 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A stamp recording the inputs of a shellcheck execution (the files checked, the files they source, the
+ * configuration and the binary) together with its outputs, so that a later execution with the same inputs can replay
+ * the outputs instead of running shellcheck.
+ * <p>
+ * Files are compared by size and modification time: only a stat call each. The content of a file is hashed only when
+ * its modification time is not reliable: when it changed while the size did not (e.g. after a fresh checkout, or a
+ * touch) or when it is too close to the start of the execution that wrote the stamp (the file may have been modified
+ * again within the timestamp granularity of the file system). If the contents match, the stamp is refreshed with the
+ * new modification times and the start of the current execution, so that they are hashed once.
+ */
+public class ExecutionStamp {
+
+    /**
+     * Modification times this close to the start of the stamped execution are not reliable (2 seconds, the coarsest
+     * granularity among common file systems).
+     */
+    static final long RACY_MILLIS = 2000;
+
+    private static final String STAMP = "stamp.txt";
+    private static final String STDOUT = "shellcheck.stdout";
+    private static final String STDERR = "shellcheck.stderr";
+
+    private final Path directory;
+    private final Optional<Snapshot> previous;
+    private int previousExitCode;
+    private int hashedFiles;
+
+    /**
+     * The inputs of an execution.
+     */
+    public static final class Snapshot {
+
+        private final String configuration;
+        private final long startMillis;
+        private final List<Entry> files;
+        private final List<Entry> dependencies;
+
+        private Snapshot(String configuration, long startMillis, List<Entry> files, List<Entry> dependencies) {
+            this.configuration = configuration;
+            this.startMillis = startMillis;
+            this.files = files;
+            this.dependencies = dependencies;
+        }
+    }
+
+    /**
+     * A stamped file.
+     */
+    private static final class Entry {
+
+        private final Path path;
+        private final long size;
+        private final long lastModifiedMillis;
+        private final String sha256;
+
+        Entry(Path path, long size, long lastModifiedMillis, String sha256) {
+            this.path = path;
+            this.size = size;
+            this.lastModifiedMillis = lastModifiedMillis;
+            this.sha256 = sha256;
+        }
+    }
+
+    /**
+     * @param directory the directory of the stamp and of the stamped outputs
+     * @throws IOException if the stamp exists but cannot be read
+     */
+    public ExecutionStamp(Path directory) throws IOException {
+        this.directory = directory;
+        this.previous = read();
+    }
+
+    /**
+     * @param configuration what, besides the files, the outputs depend on (shellcheck args, binary identity...)
+     * @param files         the files to check, in order
+     * @param startMillis   when the current execution started (before looking for files)
+     * @return true if the previous execution had the same inputs, in which case its outputs can be replayed
+     * @throws IOException if a stamped file exists but cannot be read
+     */
+    public boolean isUpToDate(List<String> configuration, List<Path> files, long startMillis) throws IOException {
+        if (!previous.isPresent()
+                || !previous.get().configuration.equals(digest(configuration))
+                || previous.get().files.size() != files.size()) {
+            return false;
+        }
+        for (int i = 0; i < files.size(); i++) {
+            if (!previous.get().files.get(i).path.equals(files.get(i).toAbsolutePath())) {
+                return false;
+            }
+        }
+
+        final List<Entry> refreshedFiles = new ArrayList<>();
+        final List<Entry> refreshedDependencies = new ArrayList<>();
+        for (Entry entry : previous.get().files) {
+            if (!matches(entry, refreshedFiles)) {
+                return false;
+            }
+        }
+        for (Entry entry : previous.get().dependencies) {
+            if (!matches(entry, refreshedDependencies)) {
+                return false;
+            }
+        }
+        if (hashedFiles > 0) {
+            // the hashed files were checked now, they are racy only if modified close to the current execution
+            writeStamp(new Snapshot(previous.get().configuration, startMillis, refreshedFiles, refreshedDependencies),
+                    previousExitCode);
+        }
+        return Files.isRegularFile(directory.resolve(STDOUT)) && Files.isRegularFile(directory.resolve(STDERR));
+    }
+
+    /**
+     * Records the inputs of an execution about to start, to be done before running shellcheck so that a file
+     * modified while shellcheck runs is never stamped with a content it was not checked with.
+     * The hashes of the files not modified since the previous execution are reused.
+     *
+     * @param configuration what, besides the files, the outputs depend on
+     * @param files         the files to check, in order
+     * @param dependencies  the files sourced by the files to check, if shellcheck follows them
+     * @param startMillis   when the execution started (before looking for files)
+     * @return the inputs
+     * @throws IOException if a file cannot be read
+     */
+    public Snapshot snapshot(List<String> configuration, List<Path> files, Collection<Path> dependencies,
+                             long startMillis) throws IOException {
+        final Map<Path, Entry> previousEntries = new HashMap<>();
+        previous.ifPresent(snapshot -> {
+            snapshot.files.forEach(entry -> previousEntries.put(entry.path, entry));
+            snapshot.dependencies.forEach(entry -> previousEntries.put(entry.path, entry));
+        });
+        final long racyAfter = previous.map(snapshot -> snapshot.startMillis - RACY_MILLIS).orElse(Long.MIN_VALUE);
+        final List<Entry> fileEntries = new ArrayList<>();
+        for (Path file : files) {
+            fileEntries.add(entry(file, previousEntries, racyAfter));
+        }
+        final List<Entry> dependencyEntries = new ArrayList<>();
+        for (Path dependency : dependencies) {
+            if (Files.isRegularFile(dependency)) {
+                dependencyEntries.add(entry(dependency, previousEntries, racyAfter));
+            }
+        }
+        return new Snapshot(digest(configuration), startMillis, fileEntries, dependencyEntries);
+    }
+
+    /**
+     * Removes the stamp, to be done before running shellcheck so that a failure never leaves a stale stamp.
+     *
+     * @throws IOException if the stamp cannot be deleted
+     */
+    public void invalidate() throws IOException {
+        Files.deleteIfExists(directory.resolve(STAMP));
+    }
+
+    /**
+     * Stamps the outputs of an execution with its inputs.
+     *
+     * @param snapshot the inputs, taken before running shellcheck
+     * @param result   the outputs
+     * @throws IOException if the outputs cannot be copied or the stamp cannot be written
+     */
+    public void write(Snapshot snapshot, Shellcheck.Result result) throws IOException {
+        Files.createDirectories(directory);
+        Files.copy(result.stdout, directory.resolve(STDOUT), StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(result.stderr, directory.resolve(STDERR), StandardCopyOption.REPLACE_EXISTING);
+        writeStamp(snapshot, result.exitCode);
+    }
+
+    /**
+     * Replays the outputs of the stamped execution, as if shellcheck had been run.
+     *
+     * @param stdout    where the stdout is written
+     * @param stderr    where the stderr is written
+     * @param forwarder where the output lines are forwarded
+     * @return the replayed result
+     * @throws IOException if the outputs cannot be copied
+     */
+    public Shellcheck.Result replay(Path stdout, Path stderr, OutputForwarder forwarder) throws IOException {
+        Files.createDirectories(stdout.getParent());
+        try (final OutputStream out = forwarder.forwardingStdout(Files.newOutputStream(stdout));
+             final OutputStream err = forwarder.forwardingStderr(Files.newOutputStream(stderr))) {
+            Files.copy(directory.resolve(STDOUT), out);
+            Files.copy(directory.resolve(STDERR), err);
+        }
+        return new Shellcheck.Result(previousExitCode, stdout, stderr);
+    }
+
+    /**
+     * @return the number of files whose content had to be hashed so far
+     */
+    public int getHashedFiles() {
+        return hashedFiles;
+    }
+
+    private boolean matches(Entry entry, List<Entry> refreshed) throws IOException {
+        final BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(entry.path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        if (attributes.size() != entry.size) {
+            return false;
+        }
+        final long lastModifiedMillis = attributes.lastModifiedTime().toMillis();
+        if (lastModifiedMillis == entry.lastModifiedMillis
+                && entry.lastModifiedMillis < previous.get().startMillis - RACY_MILLIS) {
+            refreshed.add(entry);
+            return true;
+        }
+        hashedFiles++;
+        if (!Digests.sha256(entry.path).equals(entry.sha256)) {
+            return false;
+        }
+        refreshed.add(new Entry(entry.path, entry.size, lastModifiedMillis, entry.sha256));
+        return true;
+    }
+
+    private Entry entry(Path file, Map<Path, Entry> previousEntries, long racyAfter) throws IOException {
+        final Path path = file.toAbsolutePath();
+        final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        final long lastModifiedMillis = attributes.lastModifiedTime().toMillis();
+        final Entry previousEntry = previousEntries.get(path);
+        if (previousEntry != null && previousEntry.size == attributes.size()
+                && previousEntry.lastModifiedMillis == lastModifiedMillis && lastModifiedMillis < racyAfter) {
+            return previousEntry;
+        }
+        hashedFiles++;
+        return new Entry(path, attributes.size(), lastModifiedMillis, Digests.sha256(path));
+    }
+
+    private static String digest(List<String> configuration) {
+        return Digests.hex(Digests.sha256().digest(
+                String.join("\0", configuration).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private void writeStamp(Snapshot snapshot, int exitCode) throws IOException {
+        final Path stamp = directory.resolve(STAMP);
+        Files.createDirectories(directory);
+        final Path tmp = Files.createTempFile(directory, STAMP, ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                writer.write("configuration " + snapshot.configuration);
+                writer.newLine();
+                writer.write("startMillis " + snapshot.startMillis);
+                writer.newLine();
+                writer.write("exitCode " + exitCode);
+                writer.newLine();
+                writeEntries(writer, "file", snapshot.files);
+                writeEntries(writer, "dependency", snapshot.dependencies);
+            }
+            try {
+                Files.move(tmp, stamp, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, stamp, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void writeEntries(BufferedWriter writer, String kind, List<Entry> entries) throws IOException {
+        for (Entry entry : entries) {
+            writer.write(kind + " " + entry.size + " " + entry.lastModifiedMillis + " " + entry.sha256 + " "
+                    + entry.path);
+            writer.newLine();
+        }
+    }
+
+    private Optional<Snapshot> read() throws IOException {
+        String configuration = null;
+        long startMillis = 0;
+        final List<Entry> files = new ArrayList<>();
+        final List<Entry> dependencies = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(directory.resolve(STAMP), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] fields = line.split(" ", 5);
+                if (fields.length == 2 && "configuration".equals(fields[0])) {
+                    configuration = fields[1];
+                } else if (fields.length == 2 && "startMillis".equals(fields[0])) {
+                    startMillis = Long.parseLong(fields[1]);
+                } else if (fields.length == 2 && "exitCode".equals(fields[0])) {
+                    previousExitCode = Integer.parseInt(fields[1]);
+                } else if (fields.length == 5 && ("file".equals(fields[0]) || "dependency".equals(fields[0]))) {
+                    final Entry entry = new Entry(directory.getFileSystem().getPath(fields[4]),
+                            Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]);
+                    ("file".equals(fields[0]) ? files : dependencies).add(entry);
+                } else {
+                    return Optional.empty();
+                }
+            }
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (NumberFormatException e) {
+            // a corrupted stamp is just an execution to run again
+            return Optional.empty();
+        }
+        return configuration == null
+                ? Optional.empty()
+                : Optional.of(new Snapshot(configuration, startMillis, files, dependencies));
+    }
+}
@@ -0,0 +1,228 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A problem reported by shellcheck, as described by its json1 output format.
+ * Lines and columns are 1-based, end positions are exclusive for columns.
+ */
+public class Finding {
+
+    /**
+     * The severity of a finding, from the most to the least severe.
+     */
+    public enum Level {
+
+        /**
+         * Something that will most likely break.
+         */
+        error,
+
+        /**
+         * Something that may break.
+         */
+        warning,
+
+        /**
+         * Something that is likely worth knowing.
+         */
+        info,
+
+        /**
+         * A stylistic issue.
+         */
+        style
+    }
+
+    /**
+     * The file where the problem was found, as it was passed to shellcheck.
+     */
+    public final String file;
+
+    /**
+     * The line where the problem starts.
+     */
+    public final int line;
+
+    /**
+     * The line where the problem ends.
+     */
+    public final int endLine;
+
+    /**
+     * The column where the problem starts.
+     */
+    public final int column;
+
+    /**
+     * The column where the problem ends.
+     */
+    public final int endColumn;
+
+    /**
+     * The severity of the problem.
+     */
+    public final Level level;
+
+    /**
+     * The shellcheck code of the problem, e.g. 2086 for SC2086.
+     */
+    public final int code;
+
+    /**
+     * The human readable description of the problem.
+     */
+    public final String message;
+
+    /**
+     * The automatic fix suggested by shellcheck, null if none.
+     */
+    public final Fix fix;
+
+    /**
+     * A fix for a finding, as a list of text replacements.
+     */
+    public static class Fix {
+
+        /**
+         * The replacements to be applied.
+         */
+        public final List<Replacement> replacements;
+
+        /**
+         * @param replacements the replacements to be applied.
+         */
+        public Fix(List<Replacement> replacements) {
+            this.replacements = Collections.unmodifiableList(replacements);
+        }
+    }
+
+    /**
+     * A replacement of a text range in a file.
+     */
+    public static class Replacement {
+
+        /**
+         * The line where the replaced range starts.
+         */
+        public final int line;
+
+        /**
+         * The line where the replaced range ends.
+         */
+        public final int endLine;
+
+        /**
+         * The column where the replaced range starts.
+         */
+        public final int column;
+
+        /**
+         * The column where the replaced range ends.
+         */
+        public final int endColumn;
+
+        /**
+         * Where the replacement is inserted for zero-width ranges, "beforeStart" or "afterEnd".
+         */
+        public final String insertionPoint;
+
+        /**
+         * Replacements with higher precedence are applied first.
+         */
+        public final int precedence;
+
+        /**
+         * The replacement text.
+         */
+        public final String replacement;
+
+        /**
+         * @param line           the line where the replaced range starts.
+         * @param endLine        the line where the replaced range ends.
+         * @param column         the column where the replaced range starts.
+         * @param endColumn      the column where the replaced range ends.
+         * @param insertionPoint where the replacement is inserted for zero-width ranges.
+         * @param precedence     the precedence of the replacement.
+         * @param replacement    the replacement text.
+         */
+        public Replacement(int line, int endLine, int column, int endColumn, String insertionPoint, int precedence,
+                           String replacement) {
+            this.line = line;
+            this.endLine = endLine;
+            this.column = column;
+            this.endColumn = endColumn;
+            this.insertionPoint = insertionPoint;
+            this.precedence = precedence;
+            this.replacement = replacement;
+        }
+    }
+
+    /**
+     * @param file      the file where the problem was found.
+     * @param line      the line where the problem starts.
+     * @param endLine   the line where the problem ends.
+     * @param column    the column where the problem starts.
+     * @param endColumn the column where the problem ends.
+     * @param level     the severity of the problem.
+     * @param code      the shellcheck code of the problem.
+     * @param message   the description of the problem.
+     * @param fix       the suggested fix, null if none.
+     */
+    public Finding(String file, int line, int endLine, int column, int endColumn, Level level, int code,
+                   String message, Fix fix) {
+        this.file = file;
+        this.line = line;
+        this.endLine = endLine;
+        this.column = column;
+        this.endColumn = endColumn;
+        this.level = level;
+        this.code = code;
+        this.message = message;
+        this.fix = fix;
+    }
+
+    /**
+     * @return the finding in the same single line format of shellcheck "gcc" format, e.g.
+     * "file.sh:3:6: note: Double quote to prevent globbing and word splitting. [SC2086]".
+     */
+    public String toGccFormat() {
+        return file + ":" + line + ":" + column + ": " + gccLevel() + ": " + message + " [SC" + code + "]";
+    }
+
+    private String gccLevel() {
+        switch (level) {
+            case error:
+                return "error";
+            case warning:
+                return "warning";
+            case info:
+            case style:
+            default:
+                return "note";
+        }
+    }
+}
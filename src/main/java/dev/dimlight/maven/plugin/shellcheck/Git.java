@@ -0,0 +1,171 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The local git repository of a project, queried through the git command line (no network access is needed).
+ */
+public class Git {
+
+    private final Path topLevel;
+
+    private Git(Path topLevel) {
+        this.topLevel = topLevel;
+    }
+
+    /**
+     * @param directory a directory, within a working tree
+     * @return the repository the directory is in, empty if git is not available or the directory is not in a working
+     * tree
+     * @throws InterruptedException if interrupted while waiting for git
+     */
+    public static Optional<Git> open(Path directory) throws InterruptedException {
+        try {
+            final String topLevel = new String(run(directory, "rev-parse", "--show-toplevel"), StandardCharsets.UTF_8).trim();
+            return Optional.of(new Git(Paths.get(topLevel).toRealPath()));
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return the top level directory of the working tree (a real path)
+     */
+    public Path getTopLevel() {
+        return topLevel;
+    }
+
+    /**
+     * Resolves the commit changes are relative to, for a base ref (e.g. the target branch of a pull request): the
+     * merge base of the ref and HEAD, so that the changes on the base ref since the branch was forked are ignored.
+     *
+     * @param baseRef a branch, tag, commit...
+     * @return the commit id of the merge base, empty if the ref cannot be resolved (e.g. missing in a shallow clone)
+     * @throws InterruptedException if interrupted while waiting for git
+     */
+    public Optional<String> mergeBase(String baseRef) throws InterruptedException {
+        try {
+            return Optional.of(new String(run(topLevel, "merge-base", baseRef, "HEAD"), StandardCharsets.UTF_8).trim());
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @param commit a commit id
+     * @return the existing files of the working tree that differ from the commit (committed or not) or are untracked
+     * (and not ignored), as real paths
+     * @throws IOException          if git fails
+     * @throws InterruptedException if interrupted while waiting for git
+     */
+    public Set<Path> changedFiles(String commit) throws IOException, InterruptedException {
+        final Set<Path> changed = new LinkedHashSet<>();
+        final List<String> relativePaths = new ArrayList<>();
+        relativePaths.addAll(nulSeparated(run(topLevel, "diff", "--name-only", "-z", "--no-renames", commit, "--")));
+        relativePaths.addAll(nulSeparated(run(topLevel, "ls-files", "--others", "--exclude-standard", "-z")));
+        for (String relativePath : relativePaths) {
+            final Path file = topLevel.resolve(relativePath);
+            // deleted files are not there to be checked
+            if (Files.isRegularFile(file)) {
+                changed.add(file.toRealPath());
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @param commit a commit id
+     * @return the lines of the working tree files that were added or modified since the commit (committed or not),
+     * untracked files (not ignored) being changed in their entirety
+     * @throws IOException          if git fails
+     * @throws InterruptedException if interrupted while waiting for git
+     */
+    public ChangedLines changedLines(String commit) throws IOException, InterruptedException {
+        final byte[] diff = run(topLevel, "-c", "core.quotePath=false", "diff", "-U0", "--no-color", "--no-ext-diff",
+                "--no-renames", "--src-prefix=a/", "--dst-prefix=b/", commit, "--");
+        final List<Path> untracked = new ArrayList<>();
+        for (String relativePath : nulSeparated(run(topLevel, "ls-files", "--others", "--exclude-standard", "-z"))) {
+            untracked.add(topLevel.resolve(relativePath));
+        }
+        return ChangedLines.parse(topLevel, diff, untracked);
+    }
+
+    private static List<String> nulSeparated(byte[] output) {
+        final List<String> values = new ArrayList<>();
+        for (String value : new String(output, StandardCharsets.UTF_8).split("\0")) {
+            if (!value.isEmpty()) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Runs git in a directory.
+     *
+     * @return the standard output of git
+     * @throws IOException if git cannot be run or fails
+     */
+    static byte[] run(Path directory, String... args) throws IOException, InterruptedException {
+        final List<String> command = new ArrayList<>();
+        command.add("git");
+        command.addAll(Arrays.asList(args));
+        final Path stderr = Files.createTempFile("git", ".stderr");
+        try {
+            final Process process = new ProcessBuilder(command)
+                    .directory(directory.toFile())
+                    .redirectError(stderr.toFile())
+                    .start();
+            final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+            try (InputStream in = process.getInputStream()) {
+                final byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    stdout.write(buffer, 0, read);
+                }
+            }
+            final int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                throw new IOException(command + " failed with exit code [" + exitCode + "]: "
+                        + new String(Files.readAllBytes(stderr), StandardCharsets.UTF_8).trim());
+            }
+            return stdout.toByteArray();
+        } finally {
+            Files.deleteIfExists(stderr);
+        }
+    }
+}
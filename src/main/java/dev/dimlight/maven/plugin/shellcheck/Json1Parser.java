@@ -0,0 +1,529 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A streaming parser for the shellcheck "json1" output format.
+ * <p>
+ * Findings are handed to a consumer as soon as they are parsed, no document tree is ever built, so that outputs of
+ * any size can be processed in constant memory. Keys are matched without creating strings and repeated file names
+ * and messages are shared between findings.
+ * <p>
+ * Multiple concatenated json1 documents (e.g. the outputs of several shellcheck processes) are accepted.
+ * Unknown keys are skipped.
+ * <p>
+ * Comments can also be handed over together with their json text, as found in the output, e.g. to split an output by
+ * file.
+ */
+public class Json1Parser {
+
+    private static final int EOF = -1;
+
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private long consumed;
+
+    private final StringBuilder text = new StringBuilder();
+    private String lastFile;
+    private final Map<Integer, String> lastMessageByCode = new HashMap<>();
+
+    private final boolean recordJson;
+
+    /**
+     * The json text of the comment being parsed, if recorded.
+     */
+    private final StringBuilder json = new StringBuilder();
+
+    /**
+     * Consumes the parsed comments together with their json text.
+     */
+    @FunctionalInterface
+    public interface CommentConsumer {
+
+        /**
+         * @param finding the parsed comment
+         * @param json    the json text of the comment (an object), if recorded, null otherwise
+         * @throws IOException if the consumer fails doing io
+         */
+        void accept(Finding finding, String json) throws IOException;
+    }
+
+    private Json1Parser(Reader reader, boolean recordJson) {
+        this.reader = reader;
+        this.recordJson = recordJson;
+    }
+
+    /**
+     * Parses json1 output from a reader.
+     *
+     * @param reader   the json1 output
+     * @param findings the consumer of the parsed findings
+     * @throws IOException if the reader fails or if the output is not valid json1
+     */
+    public static void parse(Reader reader, Consumer<Finding> findings) throws IOException {
+        new Json1Parser(reader, false).parseDocuments((finding, json) -> findings.accept(finding));
+    }
+
+    /**
+     * Parses a (utf-8) file containing json1 output.
+     *
+     * @param json1Output the file with json1 output
+     * @param findings    the consumer of the parsed findings
+     * @throws IOException if the file cannot be read or if it is not valid json1
+     */
+    public static void parse(Path json1Output, Consumer<Finding> findings) throws IOException {
+        try (final Reader reader = Files.newBufferedReader(json1Output, StandardCharsets.UTF_8)) {
+            parse(reader, findings);
+        }
+    }
+
+    /**
+     * Parses a (utf-8) file containing json1 output, recording the json text of each comment.
+     *
+     * @param json1Output the file with json1 output
+     * @param comments    the consumer of the parsed comments and of their json text
+     * @throws IOException if the file cannot be read, if it is not valid json1 or if the consumer fails
+     */
+    public static void parseWithJson(Path json1Output, CommentConsumer comments) throws IOException {
+        try (final Reader reader = Files.newBufferedReader(json1Output, StandardCharsets.UTF_8)) {
+            new Json1Parser(reader, true).parseDocuments(comments);
+        }
+    }
+
+    private void parseDocuments(CommentConsumer findings) throws IOException {
+        while (skipWhitespace() != EOF) {
+            expect('{');
+            if (skipWhitespace() == '}') {
+                next();
+                continue;
+            }
+            do {
+                readString();
+                expect(':');
+                if (textIs("comments")) {
+                    parseComments(findings);
+                } else {
+                    skipValue();
+                }
+            } while (endOfMember('}'));
+        }
+    }
+
+    private void parseComments(CommentConsumer findings) throws IOException {
+        expect('[');
+        if (skipWhitespace() == ']') {
+            next();
+            return;
+        }
+        do {
+            skipWhitespace();
+            json.setLength(0);
+            final Finding finding = parseComment();
+            findings.accept(finding, recordJson ? json.toString() : null);
+        } while (endOfMember(']'));
+    }
+
+    private Finding parseComment() throws IOException {
+        String file = null;
+        int line = 0;
+        int endLine = 0;
+        int column = 0;
+        int endColumn = 0;
+        Finding.Level level = null;
+        int code = 0;
+        boolean hasMessage = false;
+        final StringBuilder message = new StringBuilder();
+        Finding.Fix fix = null;
+
+        expect('{');
+        if (skipWhitespace() == '}') {
+            next();
+            throw malformed("empty comment");
+        }
+        do {
+            readString();
+            expect(':');
+            if (textIs("file")) {
+                readString();
+                file = file();
+            } else if (textIs("line")) {
+                line = readInt();
+            } else if (textIs("endLine")) {
+                endLine = readInt();
+            } else if (textIs("column")) {
+                column = readInt();
+            } else if (textIs("endColumn")) {
+                endColumn = readInt();
+            } else if (textIs("level")) {
+                readString();
+                level = level();
+            } else if (textIs("code")) {
+                code = readInt();
+            } else if (textIs("message")) {
+                readString();
+                message.setLength(0);
+                message.append(text);
+                hasMessage = true;
+            } else if (textIs("fix")) {
+                fix = parseFix();
+            } else {
+                skipValue();
+            }
+        } while (endOfMember('}'));
+
+        if (file == null || level == null || !hasMessage) {
+            throw malformed("comment without file, level or message");
+        }
+        return new Finding(file, line, endLine, column, endColumn, level, code, message(code, message), fix);
+    }
+
+    private Finding.Fix parseFix() throws IOException {
+        if (skipWhitespace() == 'n') {
+            expectLiteral("null");
+            return null;
+        }
+        final List<Finding.Replacement> replacements = new ArrayList<>();
+        expect('{');
+        if (skipWhitespace() == '}') {
+            next();
+            return new Finding.Fix(replacements);
+        }
+        do {
+            readString();
+            expect(':');
+            if (textIs("replacements")) {
+                expect('[');
+                if (skipWhitespace() == ']') {
+                    next();
+                } else {
+                    do {
+                        replacements.add(parseReplacement());
+                    } while (endOfMember(']'));
+                }
+            } else {
+                skipValue();
+            }
+        } while (endOfMember('}'));
+        return new Finding.Fix(replacements);
+    }
+
+    private Finding.Replacement parseReplacement() throws IOException {
+        int line = 0;
+        int endLine = 0;
+        int column = 0;
+        int endColumn = 0;
+        String insertionPoint = null;
+        int precedence = 0;
+        String replacement = "";
+
+        expect('{');
+        if (skipWhitespace() == '}') {
+            next();
+            throw malformed("empty replacement");
+        }
+        do {
+            readString();
+            expect(':');
+            if (textIs("line")) {
+                line = readInt();
+            } else if (textIs("endLine")) {
+                endLine = readInt();
+            } else if (textIs("column")) {
+                column = readInt();
+            } else if (textIs("endColumn")) {
+                endColumn = readInt();
+            } else if (textIs("insertionPoint")) {
+                readString();
+                insertionPoint = text.toString();
+            } else if (textIs("precedence")) {
+                precedence = readInt();
+            } else if (textIs("replacement")) {
+                readString();
+                replacement = text.toString();
+            } else {
+                skipValue();
+            }
+        } while (endOfMember('}'));
+
+        return new Finding.Replacement(line, endLine, column, endColumn, insertionPoint, precedence, replacement);
+    }
+
+    /**
+     * @return the file name just read, reusing the previous instance if equal (findings come grouped by file).
+     */
+    private String file() {
+        if (lastFile == null || !lastFile.contentEquals(text)) {
+            lastFile = text.toString();
+        }
+        return lastFile;
+    }
+
+    /**
+     * @return the message, reusing the last instance seen for the same code if equal.
+     */
+    private String message(int code, StringBuilder message) {
+        final String last = lastMessageByCode.get(code);
+        if (last != null && last.contentEquals(message)) {
+            return last;
+        }
+        final String current = message.toString();
+        lastMessageByCode.put(code, current);
+        return current;
+    }
+
+    private Finding.Level level() throws IOException {
+        for (Finding.Level level : Finding.Level.values()) {
+            if (textIs(level.name())) {
+                return level;
+            }
+        }
+        throw malformed("unknown level [" + text + "]");
+    }
+
+    private boolean textIs(String s) {
+        return s.contentEquals(text);
+    }
+
+    /**
+     * Consumes the separator after an object member or array element.
+     *
+     * @return true if another member/element follows, false if the closing char was consumed.
+     */
+    private boolean endOfMember(char closing) throws IOException {
+        final int c = skipWhitespace();
+        next();
+        if (c == ',') {
+            return true;
+        }
+        if (c == closing) {
+            return false;
+        }
+        throw malformed("expected [,] or [" + closing + "]");
+    }
+
+    private void skipValue() throws IOException {
+        final int c = skipWhitespace();
+        switch (c) {
+            case '"':
+                readString();
+                break;
+            case '{':
+                next();
+                if (skipWhitespace() == '}') {
+                    next();
+                    break;
+                }
+                do {
+                    readString();
+                    expect(':');
+                    skipValue();
+                } while (endOfMember('}'));
+                break;
+            case '[':
+                next();
+                if (skipWhitespace() == ']') {
+                    next();
+                    break;
+                }
+                do {
+                    skipValue();
+                } while (endOfMember(']'));
+                break;
+            case 't':
+                expectLiteral("true");
+                break;
+            case 'f':
+                expectLiteral("false");
+                break;
+            case 'n':
+                expectLiteral("null");
+                break;
+            default:
+                skipNumber();
+        }
+    }
+
+    private void skipNumber() throws IOException {
+        boolean any = false;
+        int c;
+        while ((c = peek()) != EOF && (Character.isDigit(c) || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E')) {
+            next();
+            any = true;
+        }
+        if (!any) {
+            throw malformed("unexpected char");
+        }
+    }
+
+    private int readInt() throws IOException {
+        int c = skipWhitespace();
+        boolean negative = false;
+        if (c == '-') {
+            negative = true;
+            next();
+            c = peek();
+        }
+        if (c == EOF || !Character.isDigit(c)) {
+            throw malformed("expected a number");
+        }
+        int value = 0;
+        while ((c = peek()) != EOF && Character.isDigit(c)) {
+            value = value * 10 + (c - '0');
+            next();
+        }
+        // not expected in json1, but valid json
+        if (c == '.' || c == 'e' || c == 'E') {
+            skipNumber();
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Reads a string into the reusable text buffer.
+     */
+    private void readString() throws IOException {
+        expect('"');
+        text.setLength(0);
+        while (true) {
+            final int c = next();
+            if (c == EOF) {
+                throw malformed("unterminated string");
+            }
+            if (c == '"') {
+                return;
+            }
+            if (c != '\\') {
+                text.append((char) c);
+                continue;
+            }
+            final int escaped = next();
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    text.append((char) escaped);
+                    break;
+                case 'b':
+                    text.append('\b');
+                    break;
+                case 'f':
+                    text.append('\f');
+                    break;
+                case 'n':
+                    text.append('\n');
+                    break;
+                case 'r':
+                    text.append('\r');
+                    break;
+                case 't':
+                    text.append('\t');
+                    break;
+                case 'u':
+                    text.append(readUnicodeEscape());
+                    break;
+                default:
+                    throw malformed("invalid escape");
+            }
+        }
+    }
+
+    private char readUnicodeEscape() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            final int digit = Character.digit(next(), 16);
+            if (digit < 0) {
+                throw malformed("invalid unicode escape");
+            }
+            value = value * 16 + digit;
+        }
+        return (char) value;
+    }
+
+    private void expectLiteral(String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (next() != literal.charAt(i)) {
+                throw malformed("expected [" + literal + "]");
+            }
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        if (skipWhitespace() != expected) {
+            throw malformed("expected [" + expected + "]");
+        }
+        next();
+    }
+
+    private int skipWhitespace() throws IOException {
+        int c;
+        while ((c = peek()) == ' ' || c == '\n' || c == '\r' || c == '\t') {
+            next();
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return EOF;
+        }
+        return buffer[position];
+    }
+
+    private int next() throws IOException {
+        if (position == limit && !fill()) {
+            return EOF;
+        }
+        consumed++;
+        if (recordJson) {
+            json.append(buffer[position]);
+        }
+        return buffer[position++];
+    }
+
+    private boolean fill() throws IOException {
+        limit = reader.read(buffer, 0, buffer.length);
+        position = 0;
+        if (limit <= 0) {
+            limit = 0;
+            return false;
+        }
+        return true;
+    }
+
+    private IOException malformed(String reason) {
+        return new IOException("Malformed shellcheck json1 output at char [" + consumed + "]: " + reason);
+    }
+}
@@ -0,0 +1,111 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * An output stream that splits what is written to it in (utf-8) lines and hands them to a consumer as soon as they are
+ * complete.
+ * <p>
+ * Memory is bounded: characters beyond the maximum line length are dropped (some shellcheck formats, e.g. json, are
+ * a single, possibly huge, line).
+ * Splitting is done on bytes, which is safe since in utf-8 a newline byte is never part of a multi-byte sequence.
+ */
+public class LineSplitter extends OutputStream {
+
+    private static final String TRUNCATION_MARKER = " [...]";
+
+    private final int maxLineBytes;
+    private final Consumer<String> lines;
+    private final ByteArrayOutputStream currentLine = new ByteArrayOutputStream();
+    private boolean truncated;
+
+    /**
+     * @param maxLineBytes the maximum number of bytes of a line, the rest of the line is dropped
+     * @param lines        the consumer of the lines (line terminator excluded)
+     */
+    public LineSplitter(int maxLineBytes, Consumer<String> lines) {
+        this.maxLineBytes = maxLineBytes;
+        this.lines = lines;
+    }
+
+    @Override
+    public void write(int b) {
+        if (b == '\n') {
+            emit();
+        } else if (currentLine.size() < maxLineBytes) {
+            currentLine.write(b);
+        } else {
+            truncated = true;
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        int lineStart = offset;
+        final int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            if (bytes[i] == '\n') {
+                append(bytes, lineStart, i - lineStart);
+                emit();
+                lineStart = i + 1;
+            }
+        }
+        append(bytes, lineStart, end - lineStart);
+    }
+
+    /**
+     * Hands the last line to the consumer, even if not terminated.
+     */
+    @Override
+    public void close() {
+        if (currentLine.size() > 0 || truncated) {
+            emit();
+        }
+    }
+
+    private void append(byte[] bytes, int offset, int length) {
+        final int room = maxLineBytes - currentLine.size();
+        if (length > room) {
+            truncated = true;
+        }
+        currentLine.write(bytes, offset, Math.max(0, Math.min(length, room)));
+    }
+
+    private void emit() {
+        String line = new String(currentLine.toByteArray(), StandardCharsets.UTF_8);
+        if (line.endsWith("\r")) {
+            line = line.substring(0, line.length() - 1);
+        }
+        if (truncated) {
+            line += TRUNCATION_MARKER;
+        }
+        lines.accept(line);
+        currentLine.reset();
+        truncated = false;
+    }
+}
@@ -0,0 +1,131 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An exclusive lock on a file, held against the other threads of this jvm (e.g. the modules of a parallel reactor
+ * build) and against other processes (e.g. concurrent builds sharing a store in the user home).
+ * <p>
+ * Both are needed: a file lock is held on behalf of the whole jvm, so a thread is first serialized with the others of
+ * this jvm by an in-jvm lock (striped by path, all the threads asking for the same file get the same lock).
+ * Lock files are never deleted, deleting them would let two processes hold locks on different files with the same
+ * path.
+ */
+public final class LockFile implements Closeable {
+
+    private static final ReentrantLock[] STRIPES = new ReentrantLock[64];
+
+    static {
+        for (int i = 0; i < STRIPES.length; i++) {
+            STRIPES[i] = new ReentrantLock();
+        }
+    }
+
+    private final ReentrantLock stripe;
+    private final FileChannel channel;
+    private final FileLock fileLock;
+
+    private LockFile(ReentrantLock stripe, FileChannel channel, FileLock fileLock) {
+        this.stripe = stripe;
+        this.channel = channel;
+        this.fileLock = fileLock;
+    }
+
+    /**
+     * Acquires the lock, waiting for the other threads and processes holding it.
+     *
+     * @param file the lock file, created if missing (with its parent directories)
+     * @return the held lock, to be closed to release it
+     * @throws IOException if the lock file cannot be created or locked
+     */
+    public static LockFile acquire(Path file) throws IOException {
+        final ReentrantLock stripe = stripe(file);
+        stripe.lock();
+        return lock(stripe, file, true).get();
+    }
+
+    /**
+     * Acquires the lock, if not held by another thread or process.
+     *
+     * @param file the lock file, created if missing (with its parent directories)
+     * @return the held lock, to be closed to release it, empty if held by someone else
+     * @throws IOException if the lock file cannot be created or locked
+     */
+    public static Optional<LockFile> tryAcquire(Path file) throws IOException {
+        final ReentrantLock stripe = stripe(file);
+        if (!stripe.tryLock()) {
+            return Optional.empty();
+        }
+        return lock(stripe, file, false);
+    }
+
+    private static Optional<LockFile> lock(ReentrantLock stripe, Path file, boolean wait) throws IOException {
+        FileChannel channel = null;
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            final FileLock fileLock = wait ? channel.lock() : channel.tryLock();
+            if (fileLock == null) {
+                channel.close();
+                stripe.unlock();
+                return Optional.empty();
+            }
+            return Optional.of(new LockFile(stripe, channel, fileLock));
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                channel.close();
+            }
+            stripe.unlock();
+            throw e;
+        }
+    }
+
+    private static ReentrantLock stripe(Path file) {
+        return STRIPES[Math.floorMod(file.toAbsolutePath().normalize().hashCode(), STRIPES.length)];
+    }
+
+    /**
+     * Releases the lock.
+     *
+     * @throws IOException if the lock file cannot be released
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            fileLock.release();
+            channel.close();
+        } finally {
+            stripe.unlock();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Collects timings and counters of a plugin execution: phase timers (monotonic), counters (files, bytes, cache
+ * hits...) and the wall time of each shellcheck process run by the execution, with their total.
+ * <p>
+ * Java 8 has no per-process cpu accounting, the only cpu time available is the jvm-wide total of the children reaped
+ * while the execution ran, read from /proc/self/stat (thus only on linux): in parallel builds, or when other goals run
+ * processes meanwhile, it includes their processes too, hence it is reported as such, apart from the per-process
+ * figures. All methods are thread safe.
+ */
+public class Metrics {
+
+    // USER_HZ, the unit of times in /proc/[pid]/stat, is 100 on all linux architectures
+    private static final long CLOCK_TICKS_PER_SECOND = 100;
+
+    private final long startNanos = System.nanoTime();
+    private final OptionalLong startChildrenCpuMillis = childrenCpuMillis();
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+    private final Map<String, Long> counters = new LinkedHashMap<>();
+    private final List<Shard> shards = new ArrayList<>();
+
+    /**
+     * A running phase timer, stopped on close.
+     */
+    public final class Phase implements AutoCloseable {
+
+        private final String name;
+        private final long phaseStartNanos = System.nanoTime();
+
+        private Phase(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void close() {
+            final long elapsed = System.nanoTime() - phaseStartNanos;
+            synchronized (Metrics.this) {
+                phaseNanos.merge(name, elapsed, Long::sum);
+            }
+        }
+    }
+
+    private static final class Shard {
+
+        private final int files;
+        private final int exitCode;
+        private final long wallNanos;
+
+        private Shard(int files, int exitCode, long wallNanos) {
+            this.files = files;
+            this.exitCode = exitCode;
+            this.wallNanos = wallNanos;
+        }
+    }
+
+    /**
+     * Starts timing a phase, to be used in a try-with-resources. Phases with the same name are summed up.
+     *
+     * @param name the name of the phase
+     * @return the running timer
+     */
+    public Phase phase(String name) {
+        return new Phase(name);
+    }
+
+    /**
+     * @param name  the name of the counter
+     * @param delta the amount to add to the counter
+     */
+    public synchronized void count(String name, long delta) {
+        counters.merge(name, delta, Long::sum);
+    }
+
+    /**
+     * Records the completion of a shellcheck process (usable as a {@link ParallelShellcheck.ShardListener}).
+     *
+     * @param scripts   the scripts checked by the process
+     * @param result    the result of the process
+     * @param wallNanos the wall time of the process, in nanoseconds
+     */
+    public synchronized void shardCompleted(List<Path> scripts, Shellcheck.Result result, long wallNanos) {
+        shards.add(new Shard(scripts.size(), result.exitCode, wallNanos));
+    }
+
+    /**
+     * @return a one-line summary of the metrics, for the build log
+     */
+    public synchronized String summary() {
+        final StringBuilder summary = new StringBuilder("shellcheck metrics: [")
+                .append(millis(System.nanoTime() - startNanos)).append("] ms");
+        phaseNanos.forEach((name, nanos) -> summary.append(", ").append(name).append(" [").append(millis(nanos)).append("] ms"));
+        counters.forEach((name, value) -> summary.append(", ").append(name).append(" [").append(value).append("]"));
+        summary.append(", processes [").append(shards.size()).append("]")
+                .append(", processes wall [").append(millis(processesWallNanos())).append("] ms");
+        final OptionalLong cpuMillis = jvmWideChildrenCpuMillis();
+        if (cpuMillis.isPresent()) {
+            summary.append(", jvm-wide children cpu [").append(cpuMillis.getAsLong()).append("] ms");
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Writes the metrics as json.
+     *
+     * @param destination the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void write(Path destination) throws IOException {
+        final StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"totalMillis\": ").append(millis(System.nanoTime() - startNanos)).append(",\n");
+        json.append("  \"processesWallMillis\": ").append(millis(processesWallNanos())).append(",\n");
+        final OptionalLong cpuMillis = jvmWideChildrenCpuMillis();
+        json.append("  \"jvmWideChildrenCpuMillis\": ").append(cpuMillis.isPresent() ? String.valueOf(cpuMillis.getAsLong()) : "null").append(",\n");
+
+        json.append("  \"phasesMillis\": {");
+        appendMembers(json, phaseNanos, Metrics::millis);
+        json.append("},\n");
+
+        json.append("  \"counters\": {");
+        appendMembers(json, counters, value -> value);
+        json.append("},\n");
+
+        json.append("  \"processes\": [");
+        for (int i = 0; i < shards.size(); i++) {
+            final Shard shard = shards.get(i);
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("    {\"files\": ").append(shard.files)
+                    .append(", \"exitCode\": ").append(shard.exitCode)
+                    .append(", \"wallMillis\": ").append(millis(shard.wallNanos)).append("}");
+        }
+        json.append(shards.isEmpty() ? "]\n" : "\n  ]\n");
+        json.append("}\n");
+
+        Files.createDirectories(destination.toAbsolutePath().getParent());
+        Files.write(destination, json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void appendMembers(StringBuilder json, Map<String, Long> members, LongUnaryOperator value) {
+        boolean first = true;
+        for (Map.Entry<String, Long> member : members.entrySet()) {
+            json.append(first ? "" : ", ").append('"').append(member.getKey()).append("\": ")
+                    .append(value.applyAsLong(member.getValue()));
+            first = false;
+        }
+    }
+
+    private long processesWallNanos() {
+        return shards.stream().mapToLong(shard -> shard.wallNanos).sum();
+    }
+
+    /**
+     * @return the cpu time of all the children of the jvm reaped since this execution started, whoever ran them
+     */
+    private OptionalLong jvmWideChildrenCpuMillis() {
+        final OptionalLong now = childrenCpuMillis();
+        if (!now.isPresent() || !startChildrenCpuMillis.isPresent()) {
+            return OptionalLong.empty();
+        }
+        return OptionalLong.of(now.getAsLong() - startChildrenCpuMillis.getAsLong());
+    }
+
+    /**
+     * @return the user and system cpu time of the (terminated and waited for) children of this process, linux only.
+     */
+    private static OptionalLong childrenCpuMillis() {
+        try {
+            final String stat = new String(Files.readAllBytes(Paths.get("/proc/self/stat")), StandardCharsets.US_ASCII);
+            // the fields after the command, which is in parenthesis and may contain spaces, start from "state" (3rd)
+            final String[] fields = stat.substring(stat.lastIndexOf(')') + 2).trim().split(" ");
+            final long cutime = Long.parseLong(fields[16 - 3]);
+            final long cstime = Long.parseLong(fields[17 - 3]);
+            return OptionalLong.of(TimeUnit.SECONDS.toMillis(cutime + cstime) / CLOCK_TICKS_PER_SECOND);
+        } catch (IOException | RuntimeException e) {
+            return OptionalLong.empty();
+        }
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
@@ -0,0 +1,169 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * Forwards shellcheck outputs to the maven log, line by line, while they are being written to disk.
+ * <p>
+ * At most a given number of lines is forwarded, the remaining ones are only counted, so that huge reports do not
+ * flood the console (the files on disk always have the full output). Stderr lines have a budget of their own, so that
+ * the errors explaining a failure (e.g. bad options, unreadable files) are not hidden by a huge report.
+ */
+public class OutputForwarder {
+
+    /**
+     * Longer lines are truncated in the log, shellcheck json outputs are a single line.
+     */
+    private static final int MAX_LINE_BYTES = 64 * 1024;
+
+    private final Log log;
+    private final int maxLines;
+    private final boolean forwardStdout;
+    private int forwardedLines;
+    private int forwardedErrorLines;
+    private int omittedLines;
+
+    /**
+     * @param log           the log where to forward lines, stdout as warnings and stderr as errors.
+     * @param maxLines      the maximum number of lines to be forwarded, for stdout and stderr each, a negative value
+     *                      means no limit.
+     * @param forwardStdout false if only stderr must be forwarded (e.g. when stdout is machine readable and will be
+     *                      reported in some other way).
+     */
+    public OutputForwarder(Log log, int maxLines, boolean forwardStdout) {
+        this.log = log;
+        this.maxLines = maxLines;
+        this.forwardStdout = forwardStdout;
+    }
+
+    /**
+     * Forwards a line as a warning, within the same limit of shellcheck output lines.
+     *
+     * @param line the line to forward
+     */
+    public synchronized void warn(String line) {
+        if (shouldForward()) {
+            log.warn(line);
+        }
+    }
+
+    /**
+     * @param destination where the stdout of shellcheck must be written
+     * @return a stream writing to destination and forwarding each stdout line to the log
+     */
+    public OutputStream forwardingStdout(OutputStream destination) {
+        return new Forwarding(destination, new LineSplitter(MAX_LINE_BYTES, this::stdoutLine));
+    }
+
+    /**
+     * @param destination where the stderr of shellcheck must be written
+     * @return a stream writing to destination and forwarding each stderr line to the log
+     */
+    public OutputStream forwardingStderr(OutputStream destination) {
+        return new Forwarding(destination, new LineSplitter(MAX_LINE_BYTES, this::stderrLine));
+    }
+
+    /**
+     * Reports the lines that were not forwarded, if any.
+     *
+     * @param stdout the file with the whole stdout
+     * @param stderr the file with the whole stderr
+     */
+    public synchronized void finish(Path stdout, Path stderr) {
+        if (omittedLines > 0 && log != null) {
+            log.warn("[" + omittedLines + "] more lines of shellcheck output not shown, full output in [" + stdout
+                    + "] and [" + stderr + "]");
+        }
+    }
+
+    private synchronized void stdoutLine(String line) {
+        if (forwardStdout && shouldForward()) {
+            log.warn(line);
+        }
+    }
+
+    private synchronized void stderrLine(String line) {
+        if (log == null) {
+            return;
+        }
+        if (maxLines >= 0 && forwardedErrorLines >= maxLines) {
+            omittedLines++;
+            return;
+        }
+        forwardedErrorLines++;
+        log.error(line);
+    }
+
+    private boolean shouldForward() {
+        if (log == null) {
+            return false;
+        }
+        if (maxLines >= 0 && forwardedLines >= maxLines) {
+            omittedLines++;
+            return false;
+        }
+        forwardedLines++;
+        return true;
+    }
+
+    /**
+     * Writes to the destination and to the line splitter.
+     */
+    private static final class Forwarding extends FilterOutputStream {
+
+        private final LineSplitter lineSplitter;
+
+        private Forwarding(OutputStream destination, LineSplitter lineSplitter) {
+            super(destination);
+            this.lineSplitter = lineSplitter;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            lineSplitter.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            lineSplitter.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                lineSplitter.close();
+            } finally {
+                super.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Merges the stdout of several shellcheck processes into the output a single process checking all their scripts would
+ * have written.
+ * <p>
+ * The outputs of line based formats (tty, gcc, diff, quiet) are concatenated. The outputs of the json, json1 and
+ * checkstyle formats are documents, they are merged into one: the head of the first one (up to the opening of its
+ * array or root element), the bodies of all of them (comma separated for json) and the tail of the last one.
+ * Empty outputs (e.g. of processes that timed out) are skipped, outputs that are not documents are copied as they
+ * are. Outputs are merged one at a time, so that only one of them is held in memory.
+ */
+public class OutputMerger {
+
+    private enum Format {
+        LINES, JSON, CHECKSTYLE
+    }
+
+    private static final String CHECKSTYLE_ROOT = "<checkstyle";
+    private static final String CHECKSTYLE_ROOT_END = "</checkstyle>";
+
+    private final OutputStream out;
+    private final Format format;
+    private boolean headWritten;
+    private boolean bodyWritten;
+    private String tail = "";
+
+    /**
+     * @param args the shellcheck args, for the output format
+     * @param out  where the merged output is written
+     */
+    public OutputMerger(List<String> args, OutputStream out) {
+        this.out = out;
+        final String format = Shellcheck.format(args).orElse("tty");
+        if ("json".equals(format) || "json1".equals(format)) {
+            this.format = Format.JSON;
+        } else if ("checkstyle".equals(format)) {
+            this.format = Format.CHECKSTYLE;
+        } else {
+            this.format = Format.LINES;
+        }
+    }
+
+    /**
+     * @param output a file with the stdout of a shellcheck process
+     * @throws IOException if the file cannot be read or the merged output cannot be written
+     */
+    public void append(Path output) throws IOException {
+        if (format == Format.LINES) {
+            Files.copy(output, out);
+        } else {
+            append(Files.readAllBytes(output));
+        }
+    }
+
+    /**
+     * @param output the stdout of a shellcheck process
+     * @throws IOException if the merged output cannot be written
+     */
+    public void append(byte[] output) throws IOException {
+        if (format == Format.LINES) {
+            out.write(output);
+            return;
+        }
+        // latin-1 maps every byte to a char and back, the bytes of the bodies are preserved whatever the encoding
+        final String document = new String(output, StandardCharsets.ISO_8859_1);
+        final int bodyStart;
+        final int bodyEnd;
+        if (format == Format.JSON) {
+            // the array of comments is the first one (json1 wraps it in an object), nothing in the head has brackets
+            bodyStart = document.indexOf('[') + 1;
+            bodyEnd = document.lastIndexOf(']');
+        } else {
+            final int root = document.indexOf(CHECKSTYLE_ROOT);
+            bodyStart = root < 0 ? 0 : document.indexOf('>', root) + 1;
+            bodyEnd = document.lastIndexOf(CHECKSTYLE_ROOT_END);
+        }
+        if (bodyStart <= 0 || bodyEnd < bodyStart) {
+            if (!document.trim().isEmpty()) {
+                out.write(output);
+            }
+            return;
+        }
+
+        if (!headWritten) {
+            write(document.substring(0, bodyStart));
+            headWritten = true;
+        }
+        final String body = document.substring(bodyStart, bodyEnd).trim();
+        if (!body.isEmpty()) {
+            if (format == Format.JSON) {
+                write(bodyWritten ? "," : "");
+            } else {
+                write("\n");
+            }
+            write(body);
+            bodyWritten = true;
+        }
+        tail = document.substring(bodyEnd);
+    }
+
+    /**
+     * Completes the merged document, if any, with the tail of the last output.
+     *
+     * @throws IOException if the merged output cannot be written
+     */
+    public void finish() throws IOException {
+        if (headWritten) {
+            write(format == Format.CHECKSTYLE && bodyWritten ? "\n" + tail : tail);
+            headWritten = false;
+        }
+    }
+
+    private void write(String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+}
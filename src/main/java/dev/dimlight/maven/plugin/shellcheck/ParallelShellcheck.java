@@ -0,0 +1,355 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.ToLongFunction;
+
+/**
+ * Runs shellcheck on a list of scripts splitting it in shards, each one checked by its own shellcheck process.
+ * Shards are contiguous runs of scripts of about the same expected cost, several for each process allowed to run at
+ * the same time: they are queued most expensive first and pulled by the workers as they get idle, so that a script
+ * much more expensive than the others ends up alone in its shard, started early, while the cheap ones fill the other
+ * workers. Being contiguous, the outputs of the shards keep the order of the scripts whatever the output format.
+ * Shards are further split in batches that fit the command line length limit of the platform.
+ * The outputs are then merged (in shard order) as if a single shellcheck process had been run, see
+ * {@link OutputMerger}.
+ * <p>
+ * If a timeout is given, a shard whose process does not complete in time is bisected, recursively, until the files
+ * on which shellcheck takes too long are isolated: they are left unanalysed (and reported in the result) while the
+ * other files of the shard are checked anyway.
+ */
+public class ParallelShellcheck {
+
+    /**
+     * How many shards are queued for each process allowed to run at the same time: the more they are, the better the
+     * workers balance, at the price of a shellcheck process start each.
+     */
+    static final int SHARDS_PER_PROCESS = 4;
+
+    private ParallelShellcheck() {
+    }
+
+    /**
+     * Consumes the result of a shard.
+     */
+    @FunctionalInterface
+    interface ShardConsumer {
+
+        /**
+         * @param shardIndex the index of the shard
+         * @param result     the result of the shellcheck process that checked the shard
+         * @throws IOException if the consumer fails doing io
+         */
+        void accept(int shardIndex, Shellcheck.Result result) throws IOException;
+    }
+
+    /**
+     * Notified when a shellcheck process completes, from the thread that ran it.
+     */
+    @FunctionalInterface
+    public interface ShardListener {
+
+        /**
+         * @param scripts   the scripts checked by the process
+         * @param result    the result of the process
+         * @param wallNanos the wall time of the process, in nanoseconds
+         */
+        void shardCompleted(List<Path> scripts, Shellcheck.Result result, long wallNanos);
+    }
+
+    /**
+     * Runs shellcheck on the given scripts using up to the concurrent processes allowed by the scheduler.
+     * Outputs are forwarded while shellcheck runs, shard by shard (in order) as soon as they complete.
+     *
+     * @param shellcheckBinary the binary for shellcheck
+     * @param args             the command line args to be passed to the shellcheck binary
+     * @param outdir           where the output files will be stored
+     * @param scriptsToCheck   the scripts to check
+     * @param scheduler        bounds the number of shellcheck processes running concurrently
+     * @param batcher          splits shards whose command line would be too long
+     * @param costs            the expected cost of each script, to balance the shards
+     * @param timeout          the maximum time a shellcheck process may run, if any (outputs are then forwarded
+     *                         per shard, never while a process runs)
+     * @param listener         notified of the completion of each process
+     * @param forwarder        where the output lines are forwarded
+     * @return the merged result of all the shards
+     * @throws IOException          if something goes bad doing io things (writing files etc...)
+     * @throws InterruptedException if the thread gets interrupted while waiting for shellcheck to finish
+     */
+    public static Shellcheck.Result run(Path shellcheckBinary,
+                                        List<String> args,
+                                        Path outdir,
+                                        List<Path> scriptsToCheck,
+                                        ProcessScheduler scheduler,
+                                        CommandLineBatcher batcher,
+                                        CostHistory costs,
+                                        Optional<Duration> timeout,
+                                        ShardListener listener,
+                                        OutputForwarder forwarder) throws IOException, InterruptedException {
+
+        Files.createDirectories(outdir);
+        final Path stdout = outdir.resolve("shellcheck.stdout");
+        final Path stderr = outdir.resolve("shellcheck.stderr");
+
+        final List<List<Path>> shards = new ArrayList<>();
+        for (List<Path> shard : balance(scriptsToCheck, maxShards(scheduler.getParallelism()), costs::estimate)) {
+            shards.addAll(batcher.batches(shellcheckBinary, args, shard));
+        }
+
+        // nothing to gain, avoid the shards overhead (not possible with a timeout, bisection works on shards)
+        if (shards.size() <= 1 && !timeout.isPresent()) {
+            final long startNanos = System.nanoTime();
+            final Shellcheck.Result result = scheduler.run(() ->
+                    Shellcheck.run(shellcheckBinary, args, stdout, stderr, scriptsToCheck, forwarder));
+            listener.shardCompleted(scriptsToCheck, result, System.nanoTime() - startNanos);
+            return result;
+        }
+
+        // shellcheck uses 1 when it finds problems and higher codes for worse failures (unreadable files, bad syntax,
+        // bad options) so the maximum is the most significant exit code
+        final int[] exitCode = {0};
+        final List<Path> timedOut = new ArrayList<>();
+        try (final OutputStream out = forwarder.forwardingStdout(Files.newOutputStream(stdout));
+             final OutputStream err = forwarder.forwardingStderr(Files.newOutputStream(stderr))) {
+            final OutputMerger merger = new OutputMerger(args, out);
+            runShards(shellcheckBinary, args, outdir.resolve("shards"), shards, scheduler, costs, timeout, listener, (shardIndex, result) -> {
+                merger.append(result.stdout);
+                Files.copy(result.stderr, err);
+                exitCode[0] = Math.max(exitCode[0], result.exitCode);
+                timedOut.addAll(result.timedOut);
+            });
+            merger.finish();
+        }
+
+        return new Shellcheck.Result(exitCode[0], stdout, stderr, timedOut);
+    }
+
+    /**
+     * Runs a shellcheck process for each of the given shards, with up to the processes allowed by the scheduler running
+     * concurrently: the shards are queued most expensive first, each worker taking the next one when it gets idle.
+     * The results are handed to the consumer in shard order, each one as soon as it and all the previous ones are
+     * available.
+     *
+     * @param shellcheckBinary the binary for shellcheck
+     * @param args             the command line args to be passed to the shellcheck binary
+     * @param shardsDir        where the output files of each shard will be stored
+     * @param shards           the groups of scripts to be checked by the same shellcheck process
+     * @param scheduler        bounds the number of shellcheck processes running concurrently
+     * @param costs            the expected cost of each script, to start the most expensive shards first
+     * @param timeout          the maximum time a shellcheck process may run, if any
+     * @param listener         notified of the completion of each shard (its bisections as a whole)
+     * @param consumer         the consumer of the results of the shards
+     * @throws IOException          if something goes bad doing io things (writing files etc...)
+     * @throws InterruptedException if the thread gets interrupted while waiting for shellcheck to finish
+     */
+    static void runShards(Path shellcheckBinary,
+                          List<String> args,
+                          Path shardsDir,
+                          List<List<Path>> shards,
+                          ProcessScheduler scheduler,
+                          CostHistory costs,
+                          Optional<Duration> timeout,
+                          ShardListener listener,
+                          ShardConsumer consumer) throws IOException, InterruptedException {
+        if (shards.isEmpty()) {
+            return;
+        }
+        Files.createDirectories(shardsDir);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(scheduler.getParallelism(), shards.size()));
+        try {
+            final long[] shardCosts = new long[shards.size()];
+            final List<Integer> mostExpensiveFirst = new ArrayList<>(shards.size());
+            for (int i = 0; i < shards.size(); i++) {
+                shardCosts[i] = shards.get(i).stream().mapToLong(costs::estimate).sum();
+                mostExpensiveFirst.add(i);
+            }
+            mostExpensiveFirst.sort(Comparator.comparingLong((Integer shard) -> shardCosts[shard]).reversed());
+
+            final List<Future<Shellcheck.Result>> futures = new ArrayList<>(Collections.nCopies(shards.size(), null));
+            for (int i : mostExpensiveFirst) {
+                final List<Path> shard = shards.get(i);
+                final Path stdout = shardsDir.resolve("shard-" + i + ".stdout");
+                final Path stderr = shardsDir.resolve("shard-" + i + ".stderr");
+                futures.set(i, executor.submit(() -> {
+                    // bisections run one process at a time, a single permit covers them
+                    return scheduler.run(() -> {
+                        final long startNanos = System.nanoTime();
+                        final Shellcheck.Result result = runBisecting(shellcheckBinary, args, stdout, stderr, shard, timeout);
+                        listener.shardCompleted(shard, result, System.nanoTime() - startNanos);
+                        return result;
+                    });
+                }));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                consumer.accept(i, getUnwrapped(futures.get(i)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs shellcheck on the scripts, if it times out runs it again on the two halves, recursively, until the scripts
+     * that alone take too long are found: their outputs are discarded and they are reported as timed out.
+     *
+     * @param shellcheckBinary the binary for shellcheck
+     * @param args             the command line args to be passed to the shellcheck binary
+     * @param stdout           the file where stdout will be written
+     * @param stderr           the file where stderr will be written
+     * @param scripts          the scripts to check
+     * @param timeout          the maximum time a shellcheck process may run, if any
+     * @return the merged result of the (possibly many) processes run
+     * @throws IOException          if something goes bad doing io things (writing files etc...)
+     * @throws InterruptedException if the thread gets interrupted while waiting for shellcheck to finish
+     */
+    static Shellcheck.Result runBisecting(Path shellcheckBinary,
+                                          List<String> args,
+                                          Path stdout,
+                                          Path stderr,
+                                          List<Path> scripts,
+                                          Optional<Duration> timeout) throws IOException, InterruptedException {
+        try {
+            return Shellcheck.run(shellcheckBinary, args, stdout, stderr, scripts, timeout);
+        } catch (Shellcheck.TimedOutException e) {
+            if (scripts.size() <= 1) {
+                Files.write(stdout, new byte[0]);
+                Files.write(stderr, new byte[0]);
+                return new Shellcheck.Result(0, stdout, stderr, scripts);
+            }
+        }
+
+        final int half = scripts.size() / 2;
+        final Path firstStdout = Paths.get(stdout + ".0");
+        final Path firstStderr = Paths.get(stderr + ".0");
+        final Path secondStdout = Paths.get(stdout + ".1");
+        final Path secondStderr = Paths.get(stderr + ".1");
+        try {
+            final Shellcheck.Result first = runBisecting(shellcheckBinary, args, firstStdout, firstStderr,
+                    scripts.subList(0, half), timeout);
+            final Shellcheck.Result second = runBisecting(shellcheckBinary, args, secondStdout, secondStderr,
+                    scripts.subList(half, scripts.size()), timeout);
+
+            try (final OutputStream out = Files.newOutputStream(stdout)) {
+                final OutputMerger merger = new OutputMerger(args, out);
+                merger.append(first.stdout);
+                merger.append(second.stdout);
+                merger.finish();
+            }
+            try (final OutputStream err = Files.newOutputStream(stderr)) {
+                Files.copy(first.stderr, err);
+                Files.copy(second.stderr, err);
+            }
+            final List<Path> timedOut = new ArrayList<>(first.timedOut);
+            timedOut.addAll(second.timedOut);
+            return new Shellcheck.Result(Math.max(first.exitCode, second.exitCode), stdout, stderr, timedOut);
+        } finally {
+            Files.deleteIfExists(firstStdout);
+            Files.deleteIfExists(firstStderr);
+            Files.deleteIfExists(secondStdout);
+            Files.deleteIfExists(secondStderr);
+        }
+    }
+
+    /**
+     * The number of shards the scripts are split in, for the given number of concurrent processes.
+     *
+     * @param parallelism the number of shellcheck processes allowed to run at the same time
+     * @return {@link #SHARDS_PER_PROCESS} shards per process, a single one if processes run one at a time
+     */
+    static int maxShards(int parallelism) {
+        return parallelism <= 1 ? 1 : parallelism * SHARDS_PER_PROCESS;
+    }
+
+    /**
+     * Splits the scripts in at most maxShards contiguous shards of (almost) the same cost: each shard ends where the
+     * running cost is closest to an even share of the cost still to split, keeping at least a script for each of the
+     * following shards. A script costing more than a share ends up alone in its shard, and the shares of the following
+     * shards shrink accordingly.
+     *
+     * @param scripts   the scripts to split
+     * @param maxShards the maximum number of shards
+     * @param cost      the expected cost of a script
+     * @return the shards, in the order of the scripts, never empty ones
+     */
+    static List<List<Path>> balance(List<Path> scripts, int maxShards, ToLongFunction<Path> cost) {
+        final int shardCount = Math.max(1, Math.min(maxShards, scripts.size()));
+        // runningCosts[i] is the cost of the first i scripts
+        final long[] runningCosts = new long[scripts.size() + 1];
+        for (int i = 0; i < scripts.size(); i++) {
+            runningCosts[i + 1] = runningCosts[i] + cost.applyAsLong(scripts.get(i));
+        }
+
+        final List<List<Path>> shards = new ArrayList<>(shardCount);
+        int from = 0;
+        for (int shard = 0; shard < shardCount; shard++) {
+            int to = from + 1;
+            final int lastTo = scripts.size() - (shardCount - shard - 1);
+            if (shard == shardCount - 1) {
+                to = lastTo;
+            }
+            final double target = runningCosts[from]
+                    + (double) (runningCosts[scripts.size()] - runningCosts[from]) / (shardCount - shard);
+            while (to < lastTo && runningCosts[to + 1] - target <= target - runningCosts[to]) {
+                to++;
+            }
+            shards.add(scripts.subList(from, to));
+            from = to;
+        }
+        return shards;
+    }
+
+    private static Shellcheck.Result getUnwrapped(Future<Shellcheck.Result> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause.getMessage(), cause);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.SessionData;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounds the number of shellcheck processes running at the same time across all the executions sharing it.
+ * <p>
+ * The modules of a parallel reactor build share the scheduler stored in the maven session, so that the processes of
+ * the whole build, not of each module, are bounded: with 300 modules and "-T 1C" the machine runs as many processes as
+ * configured, not as many per module. Permits are handed out in request order, so that no module starves.
+ */
+public class ProcessScheduler {
+
+    private static final String SESSION_KEY = ProcessScheduler.class.getName();
+
+    private final int parallelism;
+    private final Semaphore permits;
+
+    /**
+     * A task running a shellcheck process.
+     *
+     * @param <T> the type of the result of the task
+     */
+    @FunctionalInterface
+    public interface ProcessTask<T> {
+
+        /**
+         * @return the result of the task
+         * @throws IOException          if the process cannot be run
+         * @throws InterruptedException if interrupted while waiting for the process
+         */
+        T run() throws IOException, InterruptedException;
+    }
+
+    /**
+     * @param parallelism the maximum number of processes running at the same time
+     */
+    public ProcessScheduler(int parallelism) {
+        this.parallelism = parallelism;
+        this.permits = new Semaphore(parallelism, true);
+    }
+
+    /**
+     * Returns the scheduler shared by the executions of the given session, creating it if this is the first one.
+     *
+     * @param session     the repository session of the current build
+     * @param parallelism the maximum number of processes running at the same time, used only if the scheduler is
+     *                    created (the first execution of the build sets the budget of the whole build)
+     * @return the shared scheduler
+     */
+    public static ProcessScheduler forSession(RepositorySystemSession session, int parallelism) {
+        final SessionData data = session.getData();
+        final ProcessScheduler created = new ProcessScheduler(parallelism);
+        while (true) {
+            final Object existing = data.get(SESSION_KEY);
+            if (existing instanceof ProcessScheduler) {
+                return (ProcessScheduler) existing;
+            }
+            if (existing != null) {
+                // stored by another version of the plugin (another class loader), it cannot be shared
+                return created;
+            }
+            if (data.set(SESSION_KEY, null, created)) {
+                return created;
+            }
+        }
+    }
+
+    /**
+     * @return the maximum number of processes running at the same time
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Runs a task once a process can be started, i.e. when fewer than parallelism tasks are running.
+     *
+     * @param task the task running a single process at a time
+     * @param <T>  the type of the result of the task
+     * @return the result of the task
+     * @throws IOException          if the task fails
+     * @throws InterruptedException if interrupted while waiting for a permit or for the task
+     */
+    public <T> T run(ProcessTask<T> task) throws IOException, InterruptedException {
+        permits.acquire();
+        try {
+            return task.run();
+        } finally {
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.settings.Proxy;
+
+import java.io.BufferedInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Authenticator;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.PasswordAuthentication;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads a shellcheck release archive (.tar.xz, .tar.gz or .zip) and extracts just the shellcheck binary.
+ * <p>
+ * The archive is never stored: it is decompressed while being downloaded and only the binary entry is handed to the
+ * caller, the rest of the archive is just read through to compute its sha-256 (and verify it, if expected).
+ * Any url supported by the jvm can be used (e.g. file:// urls), http(s) downloads honor the maven proxy settings.
+ * <p>
+ * Proxy credentials are never installed jvm-wide: they are sent as a header of http connections and, for https
+ * downloads (tunneled through the proxy with a CONNECT request, that does not carry the headers of the connection),
+ * answered by an authenticator of the connection only, to the proxy only (java 9 or later). The jvm disables basic
+ * authentication of tunnels by default: it must be enabled with "-Djdk.http.auth.tunneling.disabledSchemes=" (e.g. in
+ * MAVEN_OPTS or .mvn/jvm.config).
+ */
+public class ReleaseArchiveDownloader {
+
+    private static final int TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(60);
+
+    private final Optional<Proxy> proxy;
+    private final Log log;
+
+    /**
+     * @param proxy the active proxy in maven settings, if any
+     * @param log   a maven logger
+     */
+    public ReleaseArchiveDownloader(Optional<Proxy> proxy, Log log) {
+        this.proxy = proxy;
+        this.log = log;
+    }
+
+    /**
+     * Downloads the release archive and extracts the binary to destination, atomically and already executable.
+     *
+     * @param archiveUrl     the url of the release archive
+     * @param expectedSha256 the expected (hex) sha-256 of the release archive, if known
+     * @param arch           the architecture of the binary
+     * @param destination    the path of the extracted binary
+     * @throws IOException if the download fails, the archive has no binary or does not match the expected sha-256
+     */
+    public void download(URL archiveUrl, Optional<String> expectedSha256, Architecture arch, Path destination) throws IOException {
+        final Path directory = destination.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        final Path tmp = Files.createTempFile(directory, "shellcheck", ".tmp");
+        try {
+            try (final InputStream in = openBinary(archiveUrl, expectedSha256, arch);
+                 final OutputStream out = Files.newOutputStream(tmp)) {
+                final byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            }
+            arch.makeExecutable(tmp);
+            try {
+                Files.move(tmp, destination, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, destination, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Opens the release archive and returns a stream of the shellcheck binary content.
+     * Closing the stream reads the rest of the archive and verifies its sha-256: an {@link IOException} is thrown by
+     * close if it does not match, in which case what was read must be discarded.
+     *
+     * @param archiveUrl     the url of the release archive
+     * @param expectedSha256 the expected (hex) sha-256 of the release archive, if known
+     * @param arch           the architecture of the binary
+     * @return the content of the binary
+     * @throws IOException if the download fails or the archive has no binary
+     */
+    public InputStream openBinary(URL archiveUrl, Optional<String> expectedSha256, Architecture arch) throws IOException {
+        final MessageDigest digest = Digests.sha256();
+        final DigestInputStream raw = new DigestInputStream(open(archiveUrl), digest);
+        try {
+            final ArchiveInputStream archive = archiveStream(archiveUrl, new BufferedInputStream(raw));
+            ArchiveEntry entry;
+            while ((entry = archive.getNextEntry()) != null) {
+                if (!entry.isDirectory() && isShellcheckBinary(entry.getName(), arch)) {
+                    log.debug("Found shellcheck binary [" + entry.getName() + "] in [" + archiveUrl + "]");
+                    return new BinaryEntryInputStream(archive, raw, archiveUrl, expectedSha256);
+                }
+            }
+            throw new FileNotFoundException("No shellcheck binary found in the release archive [" + archiveUrl + "]");
+        } catch (IOException | RuntimeException e) {
+            raw.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param entryName the name of an archive entry
+     * @param arch      the architecture of the binary
+     * @return true if the entry is likely the binary: "shellcheck" (or e.g. "shellcheck-v0.7.2.exe" on windows)
+     */
+    static boolean isShellcheckBinary(String entryName, Architecture arch) {
+        final String fileName = entryName.substring(entryName.lastIndexOf('/') + 1);
+        final String suffix = arch.idiomaticExecutableSuffix();
+        return fileName.equals("shellcheck" + suffix)
+                || (!suffix.isEmpty() && fileName.startsWith("shellcheck") && fileName.endsWith(suffix));
+    }
+
+    private static ArchiveInputStream archiveStream(URL archiveUrl, InputStream in) throws IOException {
+        final String path = archiveUrl.getPath().toLowerCase(Locale.ROOT);
+        if (path.endsWith(".tar.xz") || path.endsWith(".txz")) {
+            return new TarArchiveInputStream(new XZCompressorInputStream(in));
+        }
+        if (path.endsWith(".tar.gz") || path.endsWith(".tgz")) {
+            return new TarArchiveInputStream(new GzipCompressorInputStream(in));
+        }
+        if (path.endsWith(".zip")) {
+            return new ZipArchiveInputStream(in);
+        }
+        throw new IOException("Unsupported release archive format [" + archiveUrl + "], expected .tar.xz, .tar.gz or .zip");
+    }
+
+    private InputStream open(URL url) throws IOException {
+        final boolean http = url.getProtocol().equals("http") || url.getProtocol().equals("https");
+        final Optional<Proxy> activeProxy = proxy.filter(p -> http && !isNonProxyHost(p, url.getHost()));
+
+        final URLConnection connection;
+        if (activeProxy.isPresent()) {
+            final Proxy p = activeProxy.get();
+            log.debug("Using proxy [" + p.getHost() + ":" + p.getPort() + "] for [" + url + "]");
+            connection = url.openConnection(new java.net.Proxy(java.net.Proxy.Type.HTTP,
+                    new InetSocketAddress(p.getHost(), p.getPort())));
+            if (p.getUsername() != null) {
+                final String credentials = p.getUsername() + ":" + Optional.ofNullable(p.getPassword()).orElse("");
+                // set on this connection only, a default Authenticator would be jvm-wide (shared by all the modules)
+                connection.setRequestProperty("Proxy-Authorization",
+                        "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+                setAuthenticator(connection, new ProxyAuthenticator(p));
+            }
+        } else {
+            connection = url.openConnection();
+        }
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+
+        if (connection instanceof HttpURLConnection) {
+            final boolean authenticatedTunnel = url.getProtocol().equals("https")
+                    && activeProxy.filter(p -> p.getUsername() != null).isPresent();
+            final int status;
+            try {
+                status = ((HttpURLConnection) connection).getResponseCode();
+            } catch (IOException e) {
+                // older jvms fail the tunnel instead of returning the status
+                if (authenticatedTunnel && e.getMessage() != null && e.getMessage().contains("407")) {
+                    throw tunnelAuthenticationFailed(url, e);
+                }
+                throw e;
+            }
+            if (status == HttpURLConnection.HTTP_PROXY_AUTH && authenticatedTunnel) {
+                throw tunnelAuthenticationFailed(url, null);
+            }
+            if (status >= 400) {
+                throw new IOException("Cannot download [" + url + "]: http status [" + status + "]");
+            }
+        }
+        return connection.getInputStream();
+    }
+
+    private static IOException tunnelAuthenticationFailed(URL url, IOException cause) {
+        return new IOException("Cannot download [" + url + "]: the proxy refused the credentials, note that basic"
+                + " authentication of https tunnels is disabled by default in the jvm, it must be enabled with"
+                + " -Djdk.http.auth.tunneling.disabledSchemes= (e.g. in MAVEN_OPTS)", cause);
+    }
+
+    /**
+     * Sets the authenticator of the connection only, available since java 9: on java 8 https downloads cannot
+     * authenticate to the proxy without a jvm-wide authenticator.
+     */
+    private void setAuthenticator(URLConnection connection, Authenticator authenticator) {
+        if (!(connection instanceof HttpURLConnection)) {
+            return;
+        }
+        try {
+            // looked up on the public class, the implementation classes are not accessible
+            HttpURLConnection.class.getMethod("setAuthenticator", Authenticator.class).invoke(connection, authenticator);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("Cannot set the proxy authenticator of the connection (java 9 or later needed): " + e);
+        }
+    }
+
+    /**
+     * Answers the credentials of the maven proxy to that proxy only, never to the servers.
+     */
+    static final class ProxyAuthenticator extends Authenticator {
+
+        private final Proxy proxy;
+
+        ProxyAuthenticator(Proxy proxy) {
+            this.proxy = proxy;
+        }
+
+        @Override
+        protected PasswordAuthentication getPasswordAuthentication() {
+            return credentialsFor(getRequestorType(), getRequestingHost(), getRequestingPort()).orElse(null);
+        }
+
+        Optional<PasswordAuthentication> credentialsFor(RequestorType requestorType, String host, int port) {
+            if (requestorType != RequestorType.PROXY || host == null || !host.equalsIgnoreCase(proxy.getHost())
+                    || port != proxy.getPort()) {
+                return Optional.empty();
+            }
+            return Optional.of(new PasswordAuthentication(proxy.getUsername(),
+                    Optional.ofNullable(proxy.getPassword()).orElse("").toCharArray()));
+        }
+    }
+
+    /**
+     * @return true if host matches the proxy nonProxyHosts, a "|" separated list of hosts with "*" wildcards.
+     */
+    static boolean isNonProxyHost(Proxy proxy, String host) {
+        if (proxy.getNonProxyHosts() == null) {
+            return false;
+        }
+        for (String nonProxyHost : proxy.getNonProxyHosts().split("[|,]")) {
+            final String regex = nonProxyHost.trim().toLowerCase(Locale.ROOT).replace(".", "\\.").replace("*", ".*");
+            if (!regex.isEmpty() && host.toLowerCase(Locale.ROOT).matches(regex)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The content of the binary entry of an archive, closing it verifies the digest of the whole archive.
+     */
+    private final class BinaryEntryInputStream extends FilterInputStream {
+
+        private final DigestInputStream raw;
+        private final URL archiveUrl;
+        private final Optional<String> expectedSha256;
+
+        private BinaryEntryInputStream(ArchiveInputStream archive, DigestInputStream raw, URL archiveUrl,
+                                       Optional<String> expectedSha256) {
+            super(archive);
+            this.raw = raw;
+            this.archiveUrl = archiveUrl;
+            this.expectedSha256 = expectedSha256;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                // whatever the archive layers did not read yet must be digested too
+                final byte[] buffer = new byte[8192];
+                while (raw.read(buffer) != -1) {
+                    // just digesting
+                }
+                final String actualSha256 = Digests.hex(raw.getMessageDigest().digest());
+                if (!expectedSha256.isPresent()) {
+                    log.info("shellcheck release archive [" + archiveUrl + "] has sha-256 [" + actualSha256 + "]");
+                } else if (!expectedSha256.get().trim().equalsIgnoreCase(actualSha256)) {
+                    throw new IOException("The release archive [" + archiveUrl + "] has sha-256 [" + actualSha256
+                            + "] instead of the expected [" + expectedSha256.get().trim() + "]");
+                }
+            } finally {
+                raw.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A persistent, file-based, cache of shellcheck results.
+ * <p>
+ * Every entry lives in its own file, named after its key, so that lookups are cheap and unrelated entries never
+ * need to be read.
+ * Entries are written to a temporary file first and then atomically moved in place, a reader never sees a partially
+ * written entry. This makes the cache safe to be shared among concurrent builds.
+ * <p>
+ * The cache can be bounded in size, in which case the least recently used entries are evicted once the bound is
+ * exceeded. The last modified time of an entry file is used as its last access time.
+ */
+public class ResultCache {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final String EVICTION_LOCK_FILE_NAME = ".eviction.lock";
+
+    /**
+     * Once the bound is exceeded, eviction brings the size of the cache down to this fraction of the bound, so that it
+     * is not needed again at each write.
+     */
+    private static final double EVICTION_TARGET_RATIO = 0.8;
+
+    /**
+     * Temporary files younger than this may belong to a concurrent build that is still writing them.
+     */
+    private static final long STALE_TMP_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final Path directory;
+    private final long maxSizeBytes;
+    private boolean written;
+
+    /**
+     * A cached shellcheck result.
+     */
+    public static class Entry {
+
+        /**
+         * The os exit code of the shellcheck invocation.
+         */
+        public final int exitCode;
+
+        /**
+         * The captured stdout.
+         */
+        public final byte[] stdout;
+
+        /**
+         * The captured stderr.
+         */
+        public final byte[] stderr;
+
+        /**
+         * @param exitCode the exit code of the shellcheck invocation.
+         * @param stdout   the captured stdout.
+         * @param stderr   the captured stderr.
+         */
+        public Entry(int exitCode, byte[] stdout, byte[] stderr) {
+            this.exitCode = exitCode;
+            this.stdout = stdout;
+            this.stderr = stderr;
+        }
+    }
+
+    /**
+     * @param directory the directory where entries are stored, created if missing.
+     */
+    public ResultCache(Path directory) {
+        this(directory, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param directory    the directory where entries are stored, created if missing.
+     * @param maxSizeBytes the size above which least recently used entries get evicted.
+     */
+    public ResultCache(Path directory, long maxSizeBytes) {
+        this.directory = directory;
+        this.maxSizeBytes = maxSizeBytes;
+    }
+
+    /**
+     * @return the directory where the entries are stored.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Looks up an entry.
+     *
+     * @param key the key of the entry.
+     * @return the entry, if present and readable.
+     * @throws IOException if the entry exists but cannot be read.
+     */
+    public Optional<Entry> get(String key) throws IOException {
+        final Path entryPath = entryPath(key);
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entryPath)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return Optional.empty();
+            }
+            final int exitCode = in.readInt();
+            final byte[] stdout = new byte[in.readInt()];
+            in.readFully(stdout);
+            final byte[] stderr = new byte[in.readInt()];
+            in.readFully(stderr);
+            if (isBounded()) {
+                touch(entryPath);
+            }
+            return Optional.of(new Entry(exitCode, stdout, stderr));
+        } catch (NoSuchFileException | EOFException e) {
+            // missing or truncated by something else than us
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @param key the key of the entry.
+     * @return true if there is an entry for key (which might be evicted before it is read though).
+     */
+    public boolean contains(String key) {
+        return Files.isRegularFile(entryPath(key));
+    }
+
+    /**
+     * Stores an entry, replacing any previous entry with the same key.
+     *
+     * @param key   the key of the entry.
+     * @param entry the entry.
+     * @throws IOException if the entry cannot be written.
+     */
+    public void put(String key, Entry entry) throws IOException {
+        final Path entryPath = entryPath(key);
+        final Path parent = entryPath.getParent();
+        Files.createDirectories(parent);
+
+        final Path tmp = Files.createTempFile(parent, key, ".tmp");
+        try {
+            try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(entry.exitCode);
+                out.writeInt(entry.stdout.length);
+                out.write(entry.stdout);
+                out.writeInt(entry.stderr.length);
+                out.write(entry.stderr);
+            }
+            moveInPlace(tmp, entryPath);
+            written = true;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Evicts the least recently used entries if something was written and the cache exceeds its size bound.
+     * If another eviction is running (e.g. by another module of a parallel build, or another build sharing the cache)
+     * it is left to it.
+     *
+     * @throws IOException if the cache directory cannot be walked.
+     */
+    public void evictIfNeeded() throws IOException {
+        if (!isBounded() || !written || !Files.isDirectory(directory)) {
+            return;
+        }
+
+        // the modules of a parallel build (or concurrent builds) would all walk the cache, one eviction is enough
+        final Path lockFile = directory.resolve(EVICTION_LOCK_FILE_NAME);
+        final Optional<LockFile> lock = LockFile.tryAcquire(lockFile);
+        if (!lock.isPresent()) {
+            return;
+        }
+        try {
+            evict(lockFile);
+        } finally {
+            lock.get().close();
+        }
+        written = false;
+    }
+
+    private void evict(Path lockFile) throws IOException {
+        final List<CachedFile> files = new ArrayList<>();
+        final long now = System.currentTimeMillis();
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                final long lastAccess = attributes.lastModifiedTime().toMillis();
+                final boolean recentTmp = file.getFileName().toString().endsWith(".tmp")
+                        && now - lastAccess < STALE_TMP_MILLIS;
+                if (attributes.isRegularFile() && !recentTmp && !file.equals(lockFile)) {
+                    files.add(new CachedFile(file, attributes.size(), lastAccess));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // evicted concurrently
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        long size = files.stream().mapToLong(file -> file.size).sum();
+        if (size <= maxSizeBytes) {
+            return;
+        }
+
+        final long targetSize = (long) (maxSizeBytes * EVICTION_TARGET_RATIO);
+        files.sort(Comparator.comparingLong(file -> file.lastAccess));
+        for (CachedFile file : files) {
+            if (size <= targetSize) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(file.path);
+            } catch (IOException e) {
+                // e.g. in use on windows, let some other eviction take care of it
+                continue;
+            }
+            size -= file.size;
+        }
+    }
+
+    private boolean isBounded() {
+        return maxSizeBytes != Long.MAX_VALUE;
+    }
+
+    private static void touch(Path entryPath) {
+        try {
+            Files.setLastModifiedTime(entryPath, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // a concurrent eviction, or a read-only cache: the entry was read anyway
+        }
+    }
+
+    private static final class CachedFile {
+        private final Path path;
+        private final long size;
+        private final long lastAccess;
+
+        private CachedFile(Path path, long size, long lastAccess) {
+            this.path = path;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private static void moveInPlace(Path tmp, Path entryPath) throws IOException {
+        try {
+            Files.move(tmp, entryPath, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, entryPath, StandardCopyOption.REPLACE_EXISTING);
+        } catch (FileAlreadyExistsException e) {
+            // some platforms cannot atomically replace, since keys are content-derived the entry already there is
+            // as good as ours
+        }
+    }
+
+    private Path entryPath(String key) {
+        // spread the entries in subdirectories to avoid huge flat directories
+        return directory.resolve(key.substring(0, 2)).resolve(key);
+    }
+}
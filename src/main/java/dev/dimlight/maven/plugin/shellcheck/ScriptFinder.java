@@ -0,0 +1,358 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.shared.utils.io.DirectoryScanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Searches the shell files to check in the configured source dirs.
+ * <p>
+ * The source dirs are walked in parallel, a fork/join task per directory, with the same semantics of the maven
+ * FileSetManager: include/exclude patterns (plus the default excludes, unless disabled), case sensitive, symbolic
+ * links to files always included and symbolic links to directories walked only if followSymlinks is set (symbolic link
+ * cycles are walked once). Directories that cannot hold included files, or that are entirely excluded (e.g. .git), are
+ * not walked at all.
+ * <p>
+ * Optionally, files without extension that are not excluded are included if they are sniffed to be shell scripts
+ * (e.g. the scripts in a bin directory), whatever the includes are.
+ */
+public class ScriptFinder {
+
+    private static final String[] INCLUDE_ALL = {"**"};
+
+    private ScriptFinder() {
+    }
+
+    /**
+     * By default we search in src/main/sh for all the files with the shell file extension.
+     *
+     * @param baseDir            the base directory of the project
+     * @param shellFileExtension the extension of shell files (e.g. ".sh")
+     * @return the default source dir of the project
+     */
+    public static SourceDir defaultSourceDir(File baseDir, String shellFileExtension) {
+        final File srcMainSh = Paths.get(baseDir.getAbsolutePath(), "src", "main", "sh").toFile();
+        final SourceDir sourceDir = new SourceDir();
+        sourceDir.setDirectory(srcMainSh.getAbsolutePath());
+        sourceDir.addInclude("**/*" + shellFileExtension);
+        return sourceDir;
+    }
+
+    /**
+     * Walks the source locations searching for shell files.
+     *
+     * @param sourceDirs the source dirs to search
+     * @param log        a maven logger
+     * @return the list of files to be checked by shellcheck, sorted by source dir (in the given order) and then by
+     * path.
+     */
+    public static List<Path> find(List<SourceDir> sourceDirs, Log log) {
+        return find(sourceDirs, Optional.empty(), log);
+    }
+
+    /**
+     * Walks the source locations searching for shell files, included by the patterns of the source dirs or, if a
+     * sniffer is given, sniffed to be shell scripts.
+     *
+     * @param sourceDirs the source dirs to search
+     * @param sniffer    the sniffer of files without extension, if they must be sniffed
+     * @param log        a maven logger
+     * @return the list of files to be checked by shellcheck, sorted by source dir (in the given order) and then by
+     * path.
+     */
+    public static List<Path> find(List<SourceDir> sourceDirs, Optional<ShebangSniffer> sniffer, Log log) {
+        // directory listing is io bound, more threads than processors pay off on large trees
+        final ForkJoinPool pool = new ForkJoinPool(Math.max(4, Runtime.getRuntime().availableProcessors()));
+        try {
+            // all the source dirs are walked concurrently
+            final List<ForkJoinTask<List<String>>> walks = new ArrayList<>();
+            for (SourceDir sourceDir : sourceDirs) {
+                walks.add(pool.submit(new SourceDirWalk(sourceDir, sniffer, log).root()));
+            }
+
+            final List<Path> filesToCheck = new ArrayList<>();
+            for (int i = 0; i < sourceDirs.size(); i++) {
+                final List<String> includedFiles = walks.get(i).join();
+                Collections.sort(includedFiles);
+                for (String includedFile : includedFiles) {
+                    final Path includedPath = Paths.get(sourceDirs.get(i).getDirectory(), includedFile);
+                    log.debug("found included file: [" + includedPath + "]");
+                    filesToCheck.add(includedPath);
+                }
+            }
+            return filesToCheck;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @param sourceDir a source dir
+     * @param sniffing  true if files without extension are sniffed to be shell scripts
+     * @return the filter of the paths under the source dir, with its compiled patterns
+     */
+    public static Filter filter(SourceDir sourceDir, boolean sniffing) {
+        return new Filter(sourceDir, sniffing);
+    }
+
+    /**
+     * Tells, by their path, which files of a source dir may be shell files to check and which directories may hold
+     * them, with the include/exclude patterns of the source dir (e.g. to watch the same files that would be found).
+     */
+    public static final class Filter {
+
+        private final Path realDirectory;
+        private final List<AntPattern> includes;
+        private final List<AntPattern> excludes;
+        private final boolean sniffing;
+
+        private Filter(SourceDir sourceDir, boolean sniffing) {
+            this.realDirectory = realPath(Paths.get(sourceDir.getDirectory()));
+            final List<String> configuredIncludes = sourceDir.getIncludes();
+            this.includes = AntPattern.compileAll(configuredIncludes == null || configuredIncludes.isEmpty()
+                    ? Arrays.asList(INCLUDE_ALL) : configuredIncludes);
+            final List<String> configuredExcludes = new ArrayList<>();
+            if (sourceDir.getExcludes() != null) {
+                configuredExcludes.addAll(sourceDir.getExcludes());
+            }
+            if (sourceDir.isUseDefaultExcludes()) {
+                configuredExcludes.addAll(Arrays.asList(DirectoryScanner.DEFAULTEXCLUDES));
+            }
+            this.excludes = AntPattern.compileAll(configuredExcludes);
+            this.sniffing = sniffing;
+        }
+
+        /**
+         * @param file a file, possibly deleted, with its real path (or its absolute path, if deleted)
+         * @return true if the file is under the source dir and is included by its patterns or, if sniffing, is a
+         * file without extension that is not excluded (its content is not sniffed)
+         */
+        public boolean mayBeIncluded(Path file) {
+            final Optional<String> relativePath = relativePath(file);
+            if (!relativePath.isPresent() || relativePath.get().isEmpty()) {
+                return false;
+            }
+            return matchesIncludes(relativePath.get())
+                    || (sniffing && !isExcluded(relativePath.get()) && hasNoExtension(file));
+        }
+
+        /**
+         * @param directory a directory, with its real path
+         * @return true if the directory is the source dir or one under it that may hold included files
+         */
+        public boolean mustWalk(Path directory) {
+            final Optional<String> relativePath = relativePath(directory);
+            return relativePath.isPresent() && (relativePath.get().isEmpty() || mustWalk(relativePath.get()));
+        }
+
+        boolean matchesIncludes(String relativePath) {
+            return !matchesAny(excludes, relativePath) && matchesAny(includes, relativePath);
+        }
+
+        boolean mustWalk(String relativeDirectory) {
+            for (AntPattern exclude : excludes) {
+                if (exclude.matchesEverythingUnder(relativeDirectory)) {
+                    return false;
+                }
+            }
+            if (sniffing) {
+                return true;
+            }
+            for (AntPattern include : includes) {
+                if (include.couldMatchUnder(relativeDirectory)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean isExcluded(String relativePath) {
+            return matchesAny(excludes, relativePath);
+        }
+
+        private Optional<String> relativePath(Path path) {
+            final Path normalized = path.toAbsolutePath().normalize();
+            if (!normalized.startsWith(realDirectory)) {
+                return Optional.empty();
+            }
+            // the patterns use "/" whatever the platform
+            final List<String> names = new ArrayList<>();
+            realDirectory.relativize(normalized).forEach(name -> names.add(name.toString()));
+            return Optional.of(String.join("/", names));
+        }
+
+        private static Path realPath(Path path) {
+            try {
+                return path.toRealPath();
+            } catch (IOException e) {
+                return path.toAbsolutePath().normalize();
+            }
+        }
+
+        private static boolean matchesAny(List<AntPattern> patterns, String relativePath) {
+            for (AntPattern pattern : patterns) {
+                if (pattern.matches(relativePath)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static boolean hasNoExtension(Path file) {
+        // a leading dot makes a hidden file, not an extension
+        return file.getFileName().toString().lastIndexOf('.') <= 0;
+    }
+
+    /**
+     * The walk of a single source dir, with its filter.
+     */
+    private static final class SourceDirWalk {
+
+        private final Path directory;
+        private final Filter filter;
+        private final boolean followSymlinks;
+        private final Optional<ShebangSniffer> sniffer;
+        private final Log log;
+
+        SourceDirWalk(SourceDir sourceDir, Optional<ShebangSniffer> sniffer, Log log) {
+            this.directory = Paths.get(sourceDir.getDirectory());
+            this.filter = new Filter(sourceDir, sniffer.isPresent());
+            this.followSymlinks = sourceDir.isFollowSymlinks();
+            this.sniffer = sniffer;
+            this.log = log;
+        }
+
+        DirectoryWalk root() {
+            return new DirectoryWalk(this, directory, "", Collections.emptySet());
+        }
+
+        boolean isIncluded(Path file, String relativePath, BasicFileAttributes attributes) {
+            if (filter.isExcluded(relativePath)) {
+                return false;
+            }
+            if (filter.matchesIncludes(relativePath)) {
+                return true;
+            }
+            return sniffer.isPresent() && hasNoExtension(file) && sniffer.get().isShellScript(file, attributes);
+        }
+
+        boolean mustWalk(String relativeDirectory) {
+            return filter.mustWalk(relativeDirectory);
+        }
+    }
+
+    /**
+     * Lists a directory, forking a task for each subdirectory to be walked.
+     * Returns the included files, relative to the source dir.
+     */
+    private static final class DirectoryWalk extends RecursiveTask<List<String>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient SourceDirWalk walk;
+        private final transient Path directory;
+        private final String relativePath;
+        /**
+         * The real paths of the directories from the source dir down to this one, to break symbolic link cycles.
+         */
+        private final transient Set<Path> ancestors;
+
+        DirectoryWalk(SourceDirWalk walk, Path directory, String relativePath, Set<Path> ancestors) {
+            this.walk = walk;
+            this.directory = directory;
+            this.relativePath = relativePath;
+            this.ancestors = ancestors;
+        }
+
+        @Override
+        protected List<String> compute() {
+            final List<String> includedFiles = new ArrayList<>();
+            if (!Files.isDirectory(directory)) {
+                return includedFiles;
+            }
+
+            if (!walk.followSymlinks && Files.isSymbolicLink(directory)) {
+                // the DirectoryScanner drops everything inside a symbolic link not to be followed
+                return includedFiles;
+            }
+
+            final Set<Path> pathToHere = new HashSet<>(ancestors);
+            final List<DirectoryWalk> subdirectoryWalks = new ArrayList<>();
+            try {
+                if (!pathToHere.add(directory.toRealPath())) {
+                    walk.log.debug("Skipping directory [" + directory + "] already walked, symbolic link cycle");
+                    return includedFiles;
+                }
+
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                    for (Path entry : entries) {
+                        final String name = entry.getFileName().toString();
+                        final String entryRelativePath = relativePath.isEmpty() ? name : relativePath + "/" + name;
+                        final BasicFileAttributes attributes;
+                        try {
+                            // symbolic links are followed, broken ones are neither files nor directories
+                            attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                        } catch (IOException e) {
+                            continue;
+                        }
+                        if (attributes.isDirectory()) {
+                            if (walk.mustWalk(entryRelativePath)) {
+                                subdirectoryWalks.add(new DirectoryWalk(walk, entry, entryRelativePath, pathToHere));
+                            }
+                        } else if (attributes.isRegularFile() && walk.isIncluded(entry, entryRelativePath, attributes)) {
+                            includedFiles.add(entryRelativePath);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // as with the FileSetManager, unreadable directories are just skipped
+                walk.log.debug("Cannot list directory [" + directory + "]: " + e.getMessage());
+            }
+
+            for (DirectoryWalk subdirectoryWalk : invokeAll(subdirectoryWalks)) {
+                includedFiles.addAll(subdirectoryWalk.join());
+            }
+            return includedFiles;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tells whether a file without extension is a shell script by looking at its first bytes: a shebang invoking a
+ * shell supported by shellcheck (directly or through env), or a "# shellcheck shell=..." directive.
+ * Files with a NUL byte in their first bytes are considered binaries.
+ * <p>
+ * Verdicts are cached by path, last modified time and size (in a file, if given, so that they survive builds): an
+ * untouched file is never opened again. Only the verdicts of the files sniffed by the last walk are kept.
+ * All methods are thread safe.
+ */
+public class ShebangSniffer {
+
+    /**
+     * How many bytes are read from each file, enough for a shebang and the directives right below it.
+     */
+    static final int SNIFF_LENGTH = 512;
+
+    private static final Set<String> SHELLS = new HashSet<>(Arrays.asList("sh", "bash", "dash", "ksh"));
+
+    private static final Pattern SHELL_DIRECTIVE = Pattern.compile("^\\s*#\\s*shellcheck\\s.*\\bshell=(\\S+)");
+
+    private final Path cacheFile;
+    private final Map<String, Verdict> previousVerdicts;
+    private final Map<String, Verdict> verdicts = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * A cached verdict, valid as long as the file has the same last modified time and size.
+     */
+    private static final class Verdict {
+
+        private final long lastModifiedMillis;
+        private final long size;
+        private final boolean shellScript;
+
+        Verdict(long lastModifiedMillis, long size, boolean shellScript) {
+            this.lastModifiedMillis = lastModifiedMillis;
+            this.size = size;
+            this.shellScript = shellScript;
+        }
+
+        boolean isValidFor(BasicFileAttributes attributes) {
+            return lastModifiedMillis == attributes.lastModifiedTime().toMillis() && size == attributes.size();
+        }
+    }
+
+    /**
+     * @param cacheFile the file where verdicts are cached across builds, read if it exists
+     * @throws IOException if the cache file exists but cannot be read
+     */
+    public ShebangSniffer(Path cacheFile) throws IOException {
+        this.cacheFile = cacheFile;
+        this.previousVerdicts = read(cacheFile);
+    }
+
+    /**
+     * @param file       the file to sniff
+     * @param attributes the attributes of the file
+     * @return true if the file is a shell script
+     */
+    public boolean isShellScript(Path file, BasicFileAttributes attributes) {
+        final String key = file.toAbsolutePath().toString();
+        final Verdict previous = previousVerdicts.get(key);
+        if (previous != null && previous.isValidFor(attributes)) {
+            hits.incrementAndGet();
+            verdicts.put(key, previous);
+            return previous.shellScript;
+        }
+
+        misses.incrementAndGet();
+        final byte[] head = new byte[SNIFF_LENGTH];
+        int length = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while (length < head.length && (read = in.read(head, length, head.length - length)) != -1) {
+                length += read;
+            }
+        } catch (IOException e) {
+            // as unreadable files are for the DirectoryScanner, it is just not a script (and not cached)
+            return false;
+        }
+        final boolean shellScript = isShellScript(head, length);
+        verdicts.put(key, new Verdict(attributes.lastModifiedTime().toMillis(), attributes.size(), shellScript));
+        return shellScript;
+    }
+
+    /**
+     * @param head   the first bytes of a file
+     * @param length how many bytes of head were read
+     * @return true if the bytes are the start of a shell script
+     */
+    static boolean isShellScript(byte[] head, int length) {
+        for (int i = 0; i < length; i++) {
+            if (head[i] == 0) {
+                return false;
+            }
+        }
+
+        // iso-8859-1 never fails decoding, the interesting parts are ascii anyway
+        final String[] lines = new String(head, 0, length, StandardCharsets.ISO_8859_1).split("\r?\n");
+        if (lines[0].startsWith("#!") && SHELLS.contains(shebangInterpreter(lines[0].substring(2)))) {
+            return true;
+        }
+        for (String line : lines) {
+            final Matcher directive = SHELL_DIRECTIVE.matcher(line);
+            if (directive.find() && SHELLS.contains(directive.group(1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the name of the interpreter invoked by the shebang, seen through env (e.g. "bash" for
+     * "/usr/bin/env -S bash -e")
+     */
+    private static String shebangInterpreter(String shebang) {
+        final String[] tokens = shebang.trim().split("\\s+");
+        String interpreter = baseName(tokens[0]);
+        if ("env".equals(interpreter)) {
+            interpreter = "";
+            for (int i = 1; i < tokens.length; i++) {
+                // env options and variable assignments come before the command
+                if (!tokens[i].startsWith("-") && !tokens[i].contains("=")) {
+                    interpreter = baseName(tokens[i]);
+                    break;
+                }
+            }
+        }
+        return interpreter;
+    }
+
+    private static String baseName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * @return how many verdicts were taken from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return how many files were opened to be sniffed
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Writes the verdicts of the files sniffed so far in the cache file, if any of them is new.
+     *
+     * @throws IOException if the cache file cannot be written
+     */
+    public void save() throws IOException {
+        if (misses.get() == 0 && verdicts.size() == previousVerdicts.size()) {
+            return;
+        }
+        Files.createDirectories(cacheFile.getParent());
+        final Path tmp = Files.createTempFile(cacheFile.getParent(), cacheFile.getFileName().toString(), ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Verdict> entry : verdicts.entrySet()) {
+                    final Verdict verdict = entry.getValue();
+                    writer.write(verdict.lastModifiedMillis + " " + verdict.size + " " + verdict.shellScript + " "
+                            + entry.getKey());
+                    writer.newLine();
+                }
+            }
+            try {
+                Files.move(tmp, cacheFile, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static Map<String, Verdict> read(Path cacheFile) throws IOException {
+        final Map<String, Verdict> verdicts = new ConcurrentHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] fields = line.split(" ", 4);
+                if (fields.length != 4) {
+                    continue;
+                }
+                try {
+                    verdicts.put(fields[3], new Verdict(Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                            Boolean.parseBoolean(fields[2])));
+                } catch (NumberFormatException e) {
+                    // a corrupted line is just a verdict to compute again
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // first run
+        }
+        return verdicts;
+    }
+}
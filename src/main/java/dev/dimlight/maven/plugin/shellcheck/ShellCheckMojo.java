@@ -22,37 +22,24 @@ package dev.dimlight.maven.plugin.shellcheck;
  * #L%
  */
 
-import org.apache.maven.execution.MavenSession;
-import org.apache.maven.plugin.AbstractMojo;
-import org.apache.maven.plugin.BuildPluginManager;
 import org.apache.maven.plugin.MojoExecutionException;
-import org.apache.maven.plugin.logging.Log;
-import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.apache.maven.project.MavenProject;
-import org.apache.maven.shared.model.fileset.util.FileSetManager;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.URL;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.function.Predicate;
 
 /**
  * Runs the shellcheck binary on the files specified with sourceDirs.
  */
-@Mojo(name = "check", defaultPhase = LifecyclePhase.VERIFY)
-public class ShellCheckMojo extends AbstractMojo {
+@Mojo(name = "check", defaultPhase = LifecyclePhase.VERIFY, threadSafe = true)
+public class ShellCheckMojo extends AbstractShellCheckMojo {
 
     /**
      * A list of directory or FileSets where to look for sh files to check.
@@ -61,92 +48,69 @@ public class ShellCheckMojo extends AbstractMojo {
     private List<SourceDir> sourceDirs;
 
     /**
-     * The expected extension to filter shell files (e.g. ".sh").
+     * The expected extension to filter shell files (e.g. ".sh"), used by the default source dir.
      */
-    @Parameter(required = true, defaultValue = ".sh", readonly = true)
+    @Parameter(required = true, defaultValue = ".sh")
     private String shellFileExtension;
 
     /**
-     * The way the plugin should attempt binary resolution
+     * If true, the findings in the baseline file are not reported (nor fail the build), only new ones are.
+     * Implies parseFindings. The baseline file is written by the "baseline" goal.
      */
-    @Parameter(required = true, readonly = true, defaultValue = "download")
-    private BinaryResolutionMethod binaryResolutionMethod;
-
-    /**
-     * The path of the external binary, used only if binaryResolutionMethod is set to "external"
-     *
-     * @see BinaryResolutionMethod
-     */
-    @Parameter(required = false, readonly = true)
-    private File externalBinaryPath;
-
-    /**
-     * The URL at which the release archive containing shellcheck will be downloaded,
-     * used only if binaryResolutionMethod is set to "download"
-     *
-     * @see BinaryResolutionMethod
-     */
-    @Parameter(required = false, readonly = true)
-    private Map<String, URL> releaseArchiveUrls;
+    @Parameter(required = true, defaultValue = "false")
+    private boolean useBaseline;
 
     /**
-     * The command line options to use when invoking the shellcheck binary.
-     * A map is used to avoid having to parse a command line from scratch (which is not as easy as splitting on
-     * whitespace since whitespace might be quoted).
-     * The inconvenience is rather small, since configuration is written and rarely changed.
+     * The baseline file, written by the "baseline" goal and read by the "check" goal if useBaseline is true.
      */
-    @Parameter(required = false, readonly = true, defaultValue = "")
-    private List<String> args;
-
-    @Parameter(required = true, defaultValue = "false")
-    private boolean failBuildIfWarnings;
-
-    @Parameter(required = true, defaultValue = "${project.build.directory}")
-    private File outputDirectory;
+    @Parameter(required = true, defaultValue = "${project.basedir}/shellcheck-baseline.txt")
+    private File baselineFile;
 
     @Parameter(required = true, defaultValue = "${project.basedir}")
     private File baseDir;
 
-    //
-    // non externally configurable stuff
-    //
-
-    @Parameter(defaultValue = "${project}", readonly = true)
-    private MavenProject mavenProject;
-
-    @Parameter(defaultValue = "${session}", readonly = true)
-    private MavenSession mavenSession;
-
-    @Component
-    private BuildPluginManager pluginManager;
-
     @Override
     public void execute() throws MojoExecutionException {
 
-        final Log log = getLog();
-        final PluginPaths pluginPaths = new PluginPaths(outputDirectory.toPath());
-
         try {
 
-            final List<Path> scriptsToCheck = searchFilesToBeChecked();
-
-            final BinaryResolver binaryResolver = new BinaryResolver(mavenProject, mavenSession, pluginManager,
-                    outputDirectory.toPath(),
-                    Optional.ofNullable(externalBinaryPath).map(File::toPath),
-                    Optional.ofNullable(releaseArchiveUrls).orElse(Collections.emptyMap()),
-                    log);
-
-            final Path binary = binaryResolver.resolve(binaryResolutionMethod);
-
-            final Shellcheck.Result result = Shellcheck.run(binary,
-                    args == null ? Collections.emptyList() : args,
-                    pluginPaths.getPluginOutputDirectory(), scriptsToCheck);
+            final List<Path> foundScripts = discoverScripts();
+            final List<Path> scriptsToCheck;
+            final Optional<ChangedLines> changedLines;
+            try (Metrics.Phase phase = getMetrics().phase("changeDetection")) {
+                scriptsToCheck = selectChangedScripts(foundScripts, baseDir.toPath());
+                changedLines = changedLines(baseDir.toPath());
+                countScripts(scriptsToCheck);
+            }
 
-            // print stdout and stderr to maven log.
-            Files.readAllLines(result.stdout).forEach(log::warn);
-            Files.readAllLines(result.stderr).forEach(log::error);
+            final Optional<Baseline> baseline = readBaseline();
+
+            // stdout and stderr are printed to maven log while shellcheck runs (unless stdout is json to be parsed)
+            final OutputForwarder forwarder = newOutputForwarder(!isParseFindings());
+            final Shellcheck.Result result = runShellcheckIfChanged(scriptsToCheck, isParseFindings(), forwarder);
+            int reportedFindings = 0;
+            try (Metrics.Phase phase = getMetrics().phase("reporting")) {
+                if (isParseFindings()) {
+                    reportedFindings = reportFindings(result, forwarder,
+                            onChangedLines(changedLines).and(notIn(baseline)), finding -> {
+                            });
+                }
+                forwarder.finish(result.stdout, result.stderr);
+            }
+            if (baseline.isPresent() && baseline.get().getRemaining() > 0) {
+                getLog().info("[" + baseline.get().getRemaining() + "] findings of the baseline are gone, run the"
+                        + " baseline goal to update [" + baselineFile + "]");
+            }
 
-            if (result.isNotOk() && failBuildIfWarnings) {
+            // exit code 1 means findings, when only some are reported only those count
+            final boolean filtered = changedLines.isPresent() || baseline.isPresent();
+            final boolean problems = filtered
+                    ? reportedFindings > 0 || result.exitCode > 1
+                    : result.isNotOk();
+            if (problems && isFailBuildIfWarnings()) {
+                if (filtered && reportedFindings > 0) {
+                    throw new MojoExecutionException("There are shellcheck problems: [" + reportedFindings + "] new findings");
+                }
                 throw new MojoExecutionException("There are shellcheck problems: shellcheck exit code [" + result.exitCode + "]");
             }
 
@@ -155,44 +119,78 @@ public class ShellCheckMojo extends AbstractMojo {
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new MojoExecutionException(e.getMessage(), e);
+        } finally {
+            writeMetrics();
         }
     }
 
     /**
-     * By default we search in src/main/sh for all *.sh files.
+     * Finds the scripts in the source dirs (the default one if none is configured).
+     *
+     * @return the scripts found
+     * @throws IOException if the cached sniffer verdicts cannot be read or written
      */
-    private SourceDir defaultSourceDir() {
-        final File srcMainSh = Paths.get(baseDir.getAbsolutePath(), "src", "main", "sh").toFile();
-        final SourceDir sourceDir = new SourceDir();
-        sourceDir.setDirectory(srcMainSh.getAbsolutePath());
-        sourceDir.addInclude("**/*.sh");
-        return sourceDir;
+    protected List<Path> discoverScripts() throws IOException {
+        try (Metrics.Phase phase = getMetrics().phase("discovery")) {
+            final Optional<ShebangSniffer> sniffer = newShebangSniffer();
+            final List<Path> scripts = ScriptFinder.find(getSourceDirs(), sniffer, getLog());
+            saveShebangSniffer(sniffer);
+            return scripts;
+        }
     }
 
     /**
-     * Walks the source locations searching for shell files.
-     *
-     * @return the list of files to be checked by shellcheck.
+     * @return the configured source dirs, or the default one
      */
-    // a false positive due to due to redundant null checks in try-with-resources synthetized finally
-    private List<Path> searchFilesToBeChecked() throws MojoExecutionException {
+    protected List<SourceDir> getSourceDirs() {
+        return Optional.ofNullable(sourceDirs)
+                .orElse(Collections.singletonList(ScriptFinder.defaultSourceDir(baseDir, shellFileExtension)));
+    }
 
-        final Log log = getLog();
-        final FileSetManager fileSetManager = new FileSetManager(log, true);
+    @Override
+    protected boolean isParseFindings() {
+        return super.isParseFindings() || useBaseline;
+    }
+
+    @Override
+    protected List<String> getCheckOnlyParametersSet() {
+        final List<String> set = super.getCheckOnlyParametersSet();
+        if (useBaseline) {
+            set.add("useBaseline");
+        }
+        return set;
+    }
 
-        final List<Path> filesToCheck = new ArrayList<>();
+    /**
+     * @return the baseline file
+     */
+    protected Path getBaselineFile() {
+        return baselineFile.toPath();
+    }
 
-        final List<SourceDir> sourceDirs = Optional.ofNullable(this.sourceDirs)
-                .orElse(Collections.singletonList(defaultSourceDir()));
+    /**
+     * @return the base directory of the project, file paths in the baseline are relative to it
+     */
+    protected Path getBaseDir() {
+        return baseDir.toPath();
+    }
 
-        for (SourceDir sourceDir : sourceDirs) {
-            final List<Path> includedFiles = Arrays.stream(fileSetManager.getIncludedFiles(sourceDir))
-                    .map(includedFile -> Paths.get(sourceDir.getDirectory(), includedFile))
-                    .peek(includedPath -> log.debug("found included file: [" + includedPath + "]"))
-                    .collect(Collectors.toList());
-            filesToCheck.addAll(includedFiles);
+    private Optional<Baseline> readBaseline() throws MojoExecutionException, IOException {
+        if (!useBaseline) {
+            return Optional.empty();
+        }
+        if (!baselineFile.isFile()) {
+            throw new MojoExecutionException("The baseline file [" + baselineFile + "] does not exist, run the"
+                    + " baseline goal to create it");
         }
+        return Optional.of(Baseline.read(baselineFile.toPath()));
+    }
 
-        return filesToCheck;
+    private Predicate<Finding> notIn(Optional<Baseline> baseline) {
+        if (!baseline.isPresent()) {
+            return finding -> true;
+        }
+        final Baseline.Fingerprinter fingerprinter = new Baseline.Fingerprinter(baseDir.toPath());
+        return finding -> !baseline.get().suppress(fingerprinter.fingerprint(finding));
     }
 }
@@ -22,11 +22,22 @@ package dev.dimlight.maven.plugin.shellcheck;
  * #L%
  */
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -62,15 +73,31 @@ public class Shellcheck {
          */
         public final Path stderr;
 
+        /**
+         * The scripts that were not analysed since shellcheck did not complete on them within the timeout.
+         */
+        public final List<Path> timedOut;
+
         /**
          * @param exitCode the exit code of the shellcheck invocation.
          * @param stdout   the path where stdout has been redirected.
          * @param stderr   the path where stderr has been redirected.
          */
         public Result(int exitCode, Path stdout, Path stderr) {
+            this(exitCode, stdout, stderr, Collections.emptyList());
+        }
+
+        /**
+         * @param exitCode the exit code of the shellcheck invocation(s).
+         * @param stdout   the path where stdout has been redirected.
+         * @param stderr   the path where stderr has been redirected.
+         * @param timedOut the scripts not analysed because of a timeout.
+         */
+        public Result(int exitCode, Path stdout, Path stderr, List<Path> timedOut) {
             this.exitCode = exitCode;
             this.stdout = stdout;
             this.stderr = stderr;
+            this.timedOut = Collections.unmodifiableList(new ArrayList<>(timedOut));
         }
 
         /**
@@ -79,6 +106,85 @@ public class Shellcheck {
         public boolean isNotOk() {
             return exitCode != 0;
         }
+
+        /**
+         * Streams the findings in stdout, only meaningful if shellcheck was run with "--format=json1".
+         *
+         * @param findings the consumer of the findings
+         * @throws IOException if stdout cannot be read or is not in json1 format
+         */
+        public void forEachFinding(Consumer<Finding> findings) throws IOException {
+            Json1Parser.parse(stdout, findings);
+        }
+
+        /**
+         * Reads the findings in stdout, only meaningful if shellcheck was run with "--format=json1".
+         * Prefer {@link #forEachFinding(Consumer)} for potentially huge outputs.
+         *
+         * @return the findings
+         * @throws IOException if stdout cannot be read or is not in json1 format
+         */
+        public List<Finding> findings() throws IOException {
+            final List<Finding> findings = new ArrayList<>();
+            forEachFinding(findings::add);
+            return findings;
+        }
+    }
+
+    /**
+     * Thrown when a shellcheck process does not complete within the timeout (and gets killed).
+     */
+    public static class TimedOutException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * @param scripts the scripts being checked by the killed process
+         * @param timeout the timeout
+         */
+        public TimedOutException(List<Path> scripts, Duration timeout) {
+            super("shellcheck did not complete within [" + timeout.getSeconds() + "s] on [" + scripts.size() + "] files");
+        }
+    }
+
+    /**
+     * Replaces any output format option (-f/--format) in the args with the given format.
+     *
+     * @param args   the command line args for shellcheck
+     * @param format the wanted output format, e.g. "json1"
+     * @return the args with the given output format
+     */
+    public static List<String> withFormat(List<String> args, String format) {
+        final List<String> withFormat = new ArrayList<>();
+        for (int i = 0; i < args.size(); i++) {
+            final String arg = args.get(i);
+            if (arg.equals("-f") || arg.equals("--format")) {
+                i++; // skip the value too
+            } else if (!arg.startsWith("--format=") && !(arg.startsWith("-f") && !arg.startsWith("--"))) {
+                withFormat.add(arg);
+            }
+        }
+        withFormat.add("--format=" + format);
+        return withFormat;
+    }
+
+    /**
+     * @param args shellcheck args
+     * @return the output format set by the args (the last one, if many), if any
+     */
+    public static Optional<String> format(List<String> args) {
+        Optional<String> format = Optional.empty();
+        for (int i = 0; i < args.size(); i++) {
+            final String arg = args.get(i);
+            if ((arg.equals("-f") || arg.equals("--format")) && i + 1 < args.size()) {
+                format = Optional.of(args.get(++i));
+            } else if (arg.startsWith("--format=")) {
+                format = Optional.of(arg.substring("--format=".length()));
+            } else if (arg.startsWith("-f") && !arg.startsWith("--") && arg.length() > 2) {
+                format = Optional.of(arg.substring(2));
+            }
+        }
+        return format;
     }
 
     /**
@@ -99,25 +205,203 @@ public class Shellcheck {
 
         final String pluginOutDirAbsPath = outdir.toFile().getAbsolutePath();
 
-        // build the cmd line args "shellcheck file1.sh file2.sh ..."
+        final Path stdout = Paths.get(pluginOutDirAbsPath, "shellcheck.stdout");
+        final Path stderr = Paths.get(pluginOutDirAbsPath, "shellcheck.stderr");
+
+        return run(shellcheckBinary, args, stdout, stderr, scriptsToCheck);
+    }
+
+    /**
+     * Runs the provided shellcheck binary capturing its output on the given files.
+     *
+     * @param shellcheckBinary the binary for shellcheck
+     * @param args             the command line args to be passed to the shellcheck binary
+     * @param stdout           the file where stdout will be redirected
+     * @param stderr           the file where stderr will be redirected
+     * @param scriptsToCheck   the list of arguments to shellcheck
+     * @return a result object containing exit code and captured outputs (on file)
+     * @throws IOException          if something goes bad doing io things (writing files etc...)
+     * @throws InterruptedException if the thread gets interrupted while waiting for shellcheck to finish
+     */
+    static Result run(Path shellcheckBinary,
+                      List<String> args,
+                      Path stdout,
+                      Path stderr,
+                      List<Path> scriptsToCheck) throws IOException, InterruptedException {
+        return run(shellcheckBinary, args, stdout, stderr, scriptsToCheck, Optional.empty());
+    }
+
+    /**
+     * Runs the provided shellcheck binary capturing its output on the given files, killing it if it does not complete
+     * within the timeout.
+     *
+     * @param shellcheckBinary the binary for shellcheck
+     * @param args             the command line args to be passed to the shellcheck binary
+     * @param stdout           the file where stdout will be redirected
+     * @param stderr           the file where stderr will be redirected
+     * @param scriptsToCheck   the list of arguments to shellcheck
+     * @param timeout          the maximum time shellcheck may run, if any
+     * @return a result object containing exit code and captured outputs (on file)
+     * @throws TimedOutException    if shellcheck did not complete within the timeout
+     * @throws IOException          if something goes bad doing io things (writing files etc...)
+     * @throws InterruptedException if the thread gets interrupted while waiting for shellcheck to finish
+     */
+    static Result run(Path shellcheckBinary,
+                      List<String> args,
+                      Path stdout,
+                      Path stderr,
+                      List<Path> scriptsToCheck,
+                      Optional<Duration> timeout) throws IOException, InterruptedException {
+
+        // finally launch shellcheck
+        final Process process = new ProcessBuilder()
+                .redirectOutput(stdout.toFile())
+                .redirectError(stderr.toFile())
+                .command(commandLine(shellcheckBinary, args, scriptsToCheck))
+                .start();
+
+        try {
+            if (timeout.isPresent()) {
+                if (!process.waitFor(timeout.get().toMillis(), TimeUnit.MILLISECONDS)) {
+                    // released its output files once reaped
+                    process.destroyForcibly().waitFor();
+                    throw new TimedOutException(scriptsToCheck, timeout.get());
+                }
+                return new Result(process.exitValue(), stdout, stderr);
+            }
+            return new Result(process.waitFor(), stdout, stderr);
+        } finally {
+            // only has effect if we got here by an exception (timeout included)
+            process.destroyForcibly();
+        }
+    }
+
+    /**
+     * Runs the provided shellcheck binary consuming its outputs while it runs: they are written to the given files
+     * and forwarded, line by line, to the given forwarder.
+     *
+     * @param shellcheckBinary the binary for shellcheck
+     * @param args             the command line args to be passed to the shellcheck binary
+     * @param stdout           the file where stdout will be written
+     * @param stderr           the file where stderr will be written
+     * @param scriptsToCheck   the list of arguments to shellcheck
+     * @param forwarder        where the output lines are forwarded
+     * @return a result object containing exit code and captured outputs (on file)
+     * @throws IOException          if something goes bad doing io things (writing files etc...)
+     * @throws InterruptedException if the thread gets interrupted while waiting for shellcheck to finish
+     */
+    static Result run(Path shellcheckBinary,
+                      List<String> args,
+                      Path stdout,
+                      Path stderr,
+                      List<Path> scriptsToCheck,
+                      OutputForwarder forwarder) throws IOException, InterruptedException {
+
+        final Process process = new ProcessBuilder()
+                .command(commandLine(shellcheckBinary, args, scriptsToCheck))
+                .start();
+
+        try {
+            process.getOutputStream().close();
+
+            final Pump stdoutPump = new Pump(process.getInputStream(),
+                    forwarder.forwardingStdout(Files.newOutputStream(stdout)));
+            final Pump stderrPump = new Pump(process.getErrorStream(),
+                    forwarder.forwardingStderr(Files.newOutputStream(stderr)));
+            stdoutPump.start();
+            stderrPump.start();
+
+            final int exitCode = process.waitFor();
+            stdoutPump.join();
+            stderrPump.join();
+            stdoutPump.rethrowFailure();
+            stderrPump.rethrowFailure();
+            return new Result(exitCode, stdout, stderr);
+        } finally {
+            // only has effect if we got here by an exception
+            process.destroyForcibly();
+        }
+    }
+
+    /**
+     * Builds the cmd line "shellcheck args file1.sh file2.sh ...".
+     */
+    private static List<String> commandLine(Path shellcheckBinary, List<String> args, List<Path> scriptsToCheck) {
         final List<String> commandAndArgs = new ArrayList<>();
         commandAndArgs.add(shellcheckBinary.toFile().getAbsolutePath()); // the shellcheck binary
         commandAndArgs.addAll(args); // the args
         commandAndArgs.addAll(scriptsToCheck.stream()
                 .map(path -> path.toFile().getAbsolutePath())
                 .collect(Collectors.toList()));
+        return commandAndArgs;
+    }
 
-        final Path stdout = Paths.get(pluginOutDirAbsPath, "shellcheck.stdout");
-        final Path stderr = Paths.get(pluginOutDirAbsPath, "shellcheck.stderr");
+    /**
+     * Copies a process output stream to a destination, in its own thread, so that the process never blocks on a full
+     * pipe.
+     */
+    private static final class Pump extends Thread {
 
-        // finally launch shellcheck
+        private final InputStream source;
+        private final OutputStream destination;
+        private volatile IOException failure;
+
+        private Pump(InputStream source, OutputStream destination) {
+            this.source = source;
+            this.destination = destination;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            final byte[] buffer = new byte[8192];
+            try (final InputStream in = source; final OutputStream out = destination) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        private void rethrowFailure() throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Asks the given shellcheck binary for its version.
+     *
+     * @param shellcheckBinary the binary for shellcheck
+     * @return the version reported by shellcheck (e.g. "0.7.2")
+     * @throws IOException          if the binary cannot be run or does not report a version
+     * @throws InterruptedException if the thread gets interrupted while waiting for shellcheck to finish
+     */
+    public static String version(Path shellcheckBinary) throws IOException, InterruptedException {
         final Process process = new ProcessBuilder()
-                .redirectOutput(stdout.toFile())
-                .redirectError(stderr.toFile())
-                .command(commandAndArgs)
+                .redirectErrorStream(true)
+                .command(shellcheckBinary.toFile().getAbsolutePath(), "--version")
                 .start();
 
+        String version = null;
+        try (final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // "version: 0.7.2"
+                if (line.startsWith("version:")) {
+                    version = line.substring("version:".length()).trim();
+                }
+            }
+        }
+
         final int exitCode = process.waitFor();
-        return new Result(exitCode, stdout, stderr);
+        if (exitCode != 0 || version == null) {
+            throw new IOException("Cannot detect the version of the shellcheck binary [" + shellcheckBinary + "]");
+        }
+        return version;
     }
 }
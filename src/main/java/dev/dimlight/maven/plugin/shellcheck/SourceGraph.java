@@ -0,0 +1,317 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The graph of the files sourced by scripts, built by a lightweight scan of their "source" and "." commands and of
+ * their "# shellcheck source=..." and "# shellcheck source-path=..." directives.
+ * <p>
+ * Sourced files are resolved the way shellcheck does with external sources enabled (-x): against the source paths
+ * ("-P" arg or directive, "SCRIPTDIR" being the directory of the script) and the working directory; the directory of
+ * the script is tried as well. All the existing candidates are dependencies: a dependency too many only costs a cache
+ * miss, a missing one a stale result.
+ * Dynamic paths (e.g. "$DIR/lib.sh") are only known through a "# shellcheck source=..." directive.
+ * <p>
+ * Sourced files are scanned as well, even if not among the scripts, so that dependencies are transitive. All paths
+ * are absolute and normalized.
+ */
+public class SourceGraph {
+
+    private static final String SCRIPT_DIR = "SCRIPTDIR";
+
+    private static final Pattern DIRECTIVE = Pattern.compile("^\\s*#\\s*shellcheck\\s+(.*)$");
+
+    /**
+     * A source command at the start of a command (of a line, or after a separator or a keyword) and its first arg.
+     */
+    private static final Pattern SOURCE_COMMAND = Pattern.compile(
+            "(?:^|[;&|({]|\\bthen|\\bdo|\\belse)\\s*(?:source|\\.)\\s+(\"[^\"]*\"|'[^']*'|[^\\s;&|)]+)");
+
+    private final Map<Path, Set<Path>> dependencies;
+    private final Map<Path, Set<Path>> dependents;
+
+    private SourceGraph(Map<Path, Set<Path>> dependencies) {
+        this.dependencies = dependencies;
+        this.dependents = new HashMap<>();
+        dependencies.forEach((file, sourced) -> sourced.forEach(dependency ->
+                dependents.computeIfAbsent(dependency, key -> new LinkedHashSet<>()).add(file)));
+    }
+
+    /**
+     * @param args the shellcheck args
+     * @return true if shellcheck reads sourced files with these args, i.e. if its results depend on them
+     */
+    public static boolean followsSources(List<String> args) {
+        for (String arg : args) {
+            if ("-x".equals(arg) || "--external-sources".equals(arg)
+                    || (arg.startsWith("-") && !arg.startsWith("--") && arg.length() > 2 && arg.substring(1).contains("x")
+                    && arg.substring(1).chars().allMatch(Character::isLetter))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Scans the scripts and, transitively, the files they source.
+     *
+     * @param scripts the scripts to scan
+     * @param args    the shellcheck args, for the source paths given with "-P"
+     * @return the graph of the sourced files
+     * @throws IOException if an existing file cannot be read
+     */
+    public static SourceGraph scan(Collection<Path> scripts, List<String> args) throws IOException {
+        return scan(new HashMap<>(), scripts, args);
+    }
+
+    /**
+     * Scans again the given files (e.g. changed ones) and, transitively, the files they source that were not scanned
+     * yet, keeping what was scanned of the other files.
+     *
+     * @param files the files to scan again, deleted ones lose their dependencies
+     * @param args  the shellcheck args, for the source paths given with "-P"
+     * @return the updated graph of the sourced files, this one is unchanged
+     * @throws IOException if an existing file cannot be read
+     */
+    public SourceGraph rescan(Collection<Path> files, List<String> args) throws IOException {
+        final Map<Path, Set<Path>> kept = new HashMap<>(dependencies);
+        files.forEach(file -> kept.remove(normalize(file)));
+        return scan(kept, files, args);
+    }
+
+    private static SourceGraph scan(Map<Path, Set<Path>> dependencies, Collection<Path> scripts, List<String> args)
+            throws IOException {
+        final List<String> sourcePaths = sourcePaths(args, File.pathSeparator);
+        final Path workingDirectory = Paths.get("").toAbsolutePath();
+        final Deque<Path> toScan = new ArrayDeque<>();
+        for (Path script : scripts) {
+            toScan.add(normalize(script));
+        }
+
+        while (!toScan.isEmpty()) {
+            final Path file = toScan.poll();
+            if (dependencies.containsKey(file)) {
+                continue;
+            }
+            // source-path directives apply to the file they are in only
+            final List<String> fileSourcePaths = new ArrayList<>(sourcePaths);
+            final Set<Path> sourced = new LinkedHashSet<>();
+            for (String sourcedPath : sourcedPaths(file, fileSourcePaths)) {
+                sourced.addAll(resolve(file, sourcedPath, fileSourcePaths, workingDirectory));
+            }
+            dependencies.put(file, sourced);
+            toScan.addAll(sourced);
+        }
+        return new SourceGraph(dependencies);
+    }
+
+    /**
+     * @param file a script
+     * @return the files directly sourced by the script
+     */
+    public Set<Path> dependencies(Path file) {
+        return Collections.unmodifiableSet(dependencies.getOrDefault(normalize(file), Collections.emptySet()));
+    }
+
+    /**
+     * @param file a script
+     * @return the files sourced by the script, directly or through other sourced files, sorted
+     */
+    public Set<Path> transitiveDependencies(Path file) {
+        return closure(Collections.singleton(normalize(file)), dependencies);
+    }
+
+    /**
+     * @param files some files (e.g. changed ones)
+     * @return the scripts sourcing any of the files, directly or through other sourced files, sorted
+     */
+    public Set<Path> transitiveDependents(Collection<Path> files) {
+        final List<Path> normalized = new ArrayList<>();
+        files.forEach(file -> normalized.add(normalize(file)));
+        return closure(normalized, dependents);
+    }
+
+    private static Set<Path> closure(Collection<Path> start, Map<Path, Set<Path>> edges) {
+        final Set<Path> starting = new HashSet<>(start);
+        final Set<Path> reached = new TreeSet<>();
+        final Deque<Path> toVisit = new ArrayDeque<>(start);
+        while (!toVisit.isEmpty()) {
+            for (Path next : edges.getOrDefault(toVisit.poll(), Collections.emptySet())) {
+                if (!starting.contains(next) && reached.add(next)) {
+                    toVisit.add(next);
+                }
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Reads the paths sourced by a file, as written (directives override the path of the next source command),
+     * adding the source paths of its directives to the given ones.
+     */
+    private static List<String> sourcedPaths(Path file, List<String> sourcePaths) throws IOException {
+        final List<String> sourced = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.ISO_8859_1)) {
+            String directiveSource = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final Matcher directive = DIRECTIVE.matcher(line);
+                if (directive.matches()) {
+                    for (String token : directive.group(1).trim().split("\\s+")) {
+                        if (token.startsWith("source=")) {
+                            directiveSource = token.substring("source=".length());
+                        } else if (token.startsWith("source-path=")) {
+                            sourcePaths.add(token.substring("source-path=".length()));
+                        }
+                    }
+                    continue;
+                }
+                final Matcher command = SOURCE_COMMAND.matcher(line);
+                while (command.find()) {
+                    final String path = directiveSource != null ? directiveSource : unquote(command.group(1));
+                    directiveSource = null;
+                    if (!path.contains("$") && !path.contains("`") && !"/dev/null".equals(path)) {
+                        sourced.add(path);
+                    }
+                }
+                if (!line.trim().isEmpty() && !line.trim().startsWith("#")) {
+                    // a directive applies to the command right below it only
+                    directiveSource = null;
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // a sourced file that does not exist (yet) has no dependencies
+        }
+        return sourced;
+    }
+
+    /**
+     * @return the existing files a sourced path may refer to
+     */
+    private static List<Path> resolve(Path file, String sourcedPath, List<String> sourcePaths, Path workingDirectory) {
+        final Path scriptDirectory = file.getParent();
+        final Set<Path> candidates = new LinkedHashSet<>();
+        try {
+            final Path path = Paths.get(sourcedPath);
+            if (path.isAbsolute()) {
+                candidates.add(path);
+            } else {
+                for (String sourcePath : sourcePaths) {
+                    candidates.add(sourcePathDirectory(sourcePath, scriptDirectory, workingDirectory).resolve(path));
+                }
+                candidates.add(scriptDirectory.resolve(path));
+                candidates.add(workingDirectory.resolve(path));
+            }
+        } catch (InvalidPathException e) {
+            return Collections.emptyList();
+        }
+
+        final List<Path> existing = new ArrayList<>();
+        for (Path candidate : candidates) {
+            if (Files.isRegularFile(candidate)) {
+                existing.add(candidate.normalize());
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * @return the directory a source path refers to: "SCRIPTDIR", alone or as the first component (e.g.
+     * "SCRIPTDIR/../lib"), stands for the directory of the script, other relative paths are relative to the working
+     * directory
+     */
+    private static Path sourcePathDirectory(String sourcePath, Path scriptDirectory, Path workingDirectory) {
+        if (SCRIPT_DIR.equals(sourcePath)) {
+            return scriptDirectory;
+        }
+        if (sourcePath.startsWith(SCRIPT_DIR + "/") || sourcePath.startsWith(SCRIPT_DIR + File.separator)) {
+            return scriptDirectory.resolve(sourcePath.substring(SCRIPT_DIR.length() + 1));
+        }
+        return workingDirectory.resolve(sourcePath);
+    }
+
+    /**
+     * @param args      the shellcheck args
+     * @param separator the separator of the paths in a value, as shellcheck splits them on the platform (":", or ";"
+     *                  on windows, where ":" follows drive letters)
+     * @return the source paths given with "-P dir", "-Pdir" or "--source-path=dir"
+     */
+    static List<String> sourcePaths(List<String> args, String separator) {
+        final List<String> sourcePaths = new ArrayList<>();
+        for (int i = 0; i < args.size(); i++) {
+            final String arg = args.get(i);
+            String value = null;
+            if (("-P".equals(arg) || "--source-path".equals(arg)) && i + 1 < args.size()) {
+                value = args.get(++i);
+            } else if (arg.startsWith("--source-path=")) {
+                value = arg.substring("--source-path=".length());
+            } else if (arg.startsWith("-P")) {
+                value = arg.substring(2);
+            }
+            if (value != null) {
+                for (String sourcePath : value.split(Pattern.quote(separator))) {
+                    if (!sourcePath.isEmpty()) {
+                        sourcePaths.add(sourcePath);
+                    }
+                }
+            }
+        }
+        return sourcePaths;
+    }
+
+    private static String unquote(String word) {
+        if (word.length() >= 2 && (word.startsWith("\"") && word.endsWith("\"")
+                || word.startsWith("'") && word.endsWith("'"))) {
+            return word.substring(1, word.length() - 1);
+        }
+        return word;
+    }
+
+    private static Path normalize(Path file) {
+        return file.toAbsolutePath().normalize();
+    }
+}
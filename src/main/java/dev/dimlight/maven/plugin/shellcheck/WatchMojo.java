@@ -0,0 +1,310 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Checks the files specified with sourceDirs (as the "check" goal does), then keeps watching the source dirs and
+ * checks again the files saved (and, if shellcheck follows sourced files, the ones sourcing them) until stopped,
+ * e.g. with ctrl-c. Only the directories that may hold included files are watched (plus the ones of the files
+ * sourced by the scripts, if shellcheck follows them), and changes to files that are neither included nor sourced by
+ * the scripts are ignored.
+ * <p>
+ * The parameters of the "check" goal apply, except the ones that only make sense for a single check
+ * (failBuildIfWarnings, checkChangedFilesOnly, reportChangedLinesOnly, skipIfUnchanged and useBaseline): they are
+ * ignored, with a warning.
+ * <p>
+ * The binary is resolved once and the results are kept in memory: a file saved with the same content (and with the
+ * same content of the files it sources) is not checked again. Findings are always parsed, as with parseFindings, and
+ * never fail the goal.
+ */
+@Mojo(name = "watch", threadSafe = true)
+public class WatchMojo extends ShellCheckMojo {
+
+    /**
+     * How long (in milliseconds) saves must have stopped before checking, so that a burst of them (e.g. a checkout
+     * or a search and replace in many files) is checked at once.
+     */
+    @Parameter(required = true, defaultValue = "100")
+    private long watchDebounceMillis;
+
+    private final Map<Path, Path> scriptsByRealPath = new LinkedHashMap<>();
+    private final Map<Path, String> checkedKeys = new HashMap<>();
+    private final Map<Path, List<Finding>> findings = new HashMap<>();
+    private Optional<SourceGraph> sourceGraph = Optional.empty();
+    private List<ScriptFinder.Filter> filters;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+
+        final List<String> ignoredParameters = getCheckOnlyParametersSet();
+        if (!ignoredParameters.isEmpty()) {
+            getLog().warn("shellcheck watch: " + ignoredParameters + " only apply to a single check, ignored");
+        }
+
+        try {
+
+            discover();
+            scanSources();
+
+            final Path binary;
+            try (Metrics.Phase phase = getMetrics().phase("binaryResolution")) {
+                binary = resolveBinary();
+            }
+            try (Metrics.Phase phase = getMetrics().phase("execution")) {
+                check(binary, scriptsByRealPath.keySet());
+            }
+            writeMetrics();
+
+            final List<Path> roots = getSourceDirs().stream()
+                    .map(sourceDir -> Paths.get(sourceDir.getDirectory()))
+                    .collect(Collectors.toList());
+            try (DirectoryWatcher watcher = newDirectoryWatcher(roots)) {
+                watchDependencies(watcher);
+                getLog().info("shellcheck watch: watching [" + watcher.getDirectoryCount() + "] directories in "
+                        + roots + ", stop with ctrl-c");
+                while (!Thread.currentThread().isInterrupted()) {
+                    final DirectoryWatcher.Changes changes = watcher.awaitChanges(Duration.ofMillis(watchDebounceMillis));
+                    try {
+                        check(binary, affected(changes));
+                        watchDependencies(watcher);
+                    } catch (IOException | MojoExecutionException e) {
+                        // e.g. a file deleted while being checked, the next save will tell
+                        getLog().warn("shellcheck watch: " + e.getMessage());
+                    }
+                }
+            }
+
+        } catch (IOException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return a watcher of the directories under the roots that may hold included files
+     */
+    DirectoryWatcher newDirectoryWatcher(List<Path> roots) throws IOException {
+        return new DirectoryWatcher(roots,
+                directory -> filters().stream().anyMatch(filter -> filter.mustWalk(directory)));
+    }
+
+    /**
+     * Watches the directories of the files sourced by the scripts too, that may be out of the source dirs or not
+     * included by them (e.g. libraries with another extension), so that changing them checks their dependents again.
+     */
+    void watchDependencies(DirectoryWatcher watcher) throws IOException {
+        if (!sourceGraph.isPresent()) {
+            return;
+        }
+        final Set<Path> directories = new TreeSet<>();
+        for (Path script : scriptsByRealPath.keySet()) {
+            for (Path dependency : sourceGraph.get().transitiveDependencies(script)) {
+                directories.add(dependency.getParent());
+            }
+        }
+        for (Path directory : directories) {
+            watcher.watchDirectory(directory);
+        }
+    }
+
+    /**
+     * Scans the files sourced by the scripts, if shellcheck follows them.
+     */
+    void scanSources() throws IOException {
+        if (SourceGraph.followsSources(getArgs())) {
+            sourceGraph = Optional.of(SourceGraph.scan(scriptsByRealPath.keySet(), getArgs()));
+        }
+    }
+
+    private List<ScriptFinder.Filter> filters() {
+        if (filters == null) {
+            filters = getSourceDirs().stream()
+                    .map(sourceDir -> ScriptFinder.filter(sourceDir, isDetectShebangs()))
+                    .collect(Collectors.toList());
+        }
+        return filters;
+    }
+
+    /**
+     * Finds the scripts again, forgetting the results of the ones gone.
+     *
+     * @return the scripts found that were not known
+     */
+    Set<Path> discover() throws IOException {
+        final Map<Path, Path> found = new LinkedHashMap<>();
+        for (Path script : discoverScripts()) {
+            found.put(realPath(script), script);
+        }
+        final Set<Path> added = new LinkedHashSet<>(found.keySet());
+        added.removeAll(scriptsByRealPath.keySet());
+        scriptsByRealPath.keySet().retainAll(found.keySet());
+        checkedKeys.keySet().retainAll(found.keySet());
+        findings.keySet().retainAll(found.keySet());
+        scriptsByRealPath.putAll(found);
+        return added;
+    }
+
+    /**
+     * @return the scripts that may have a different result after the changes: changed ones, new ones and the ones
+     * sourcing a changed file
+     */
+    Set<Path> affected(DirectoryWatcher.Changes changes) throws IOException {
+        final Set<Path> changed = new LinkedHashSet<>();
+        // saving a known script is the common case, only new or deleted scripts (or directories holding them) may add
+        // or remove scripts, other files matter only if sourced
+        boolean rediscover = changes.overflow;
+        for (Path path : changes.paths) {
+            final Path realPath = realPath(path);
+            if (scriptsByRealPath.containsKey(realPath)) {
+                changed.add(realPath);
+                rediscover |= !Files.exists(realPath);
+            } else if (mayBeScript(realPath) || holdsScripts(realPath)) {
+                changed.add(realPath);
+                rediscover = true;
+            } else if (sourceGraph.isPresent()
+                    && !sourceGraph.get().transitiveDependents(Collections.singleton(realPath)).isEmpty()) {
+                changed.add(realPath);
+            }
+        }
+
+        final Set<Path> affected = new LinkedHashSet<>(changed);
+        if (rediscover) {
+            affected.addAll(discover());
+        }
+        if (changes.overflow) {
+            affected.addAll(scriptsByRealPath.keySet());
+        }
+        if (sourceGraph.isPresent()) {
+            // dependents before the changes (e.g. of a deleted file) and after them (e.g. of a newly sourced one)
+            affected.addAll(sourceGraph.get().transitiveDependents(changed));
+            sourceGraph = Optional.of(sourceGraph.get().rescan(affected, getArgs()));
+            affected.addAll(sourceGraph.get().transitiveDependents(changed));
+        }
+        affected.retainAll(scriptsByRealPath.keySet());
+        return affected;
+    }
+
+    private boolean mayBeScript(Path realPath) {
+        return filters().stream().anyMatch(filter -> filter.mayBeIncluded(realPath));
+    }
+
+    private boolean holdsScripts(Path realPath) {
+        return scriptsByRealPath.keySet().stream()
+                .anyMatch(script -> !script.equals(realPath) && script.startsWith(realPath));
+    }
+
+    /**
+     * Checks the given scripts, unless their content did not change since they were last checked, and prints their
+     * findings followed by a summary of all the findings.
+     */
+    private void check(Path binary, Collection<Path> realPaths)
+            throws IOException, InterruptedException, MojoExecutionException {
+        final long startNanos = System.nanoTime();
+        final Map<Path, String> keys = new LinkedHashMap<>();
+        final Map<Path, String> dependencyDigests = new HashMap<>();
+        for (Path realPath : realPaths) {
+            final String key = key(realPath, dependencyDigests);
+            if (!key.equals(checkedKeys.get(realPath))) {
+                keys.put(realPath, key);
+            }
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+
+        final List<Path> scripts = keys.keySet().stream().map(scriptsByRealPath::get).collect(Collectors.toList());
+        final OutputForwarder forwarder = newOutputForwarder(false);
+        final Shellcheck.Result result = runShellcheck(binary, scripts, true, forwarder);
+        keys.keySet().forEach(realPath -> findings.put(realPath, new ArrayList<>()));
+        reportFindings(result, forwarder, finding -> findings
+                .computeIfAbsent(realPath(Paths.get(finding.file)), realPath -> new ArrayList<>())
+                .add(finding));
+        forwarder.finish(result.stdout, result.stderr);
+        // anything worse than findings (e.g. a file being written) may be transient
+        if (result.exitCode <= 1) {
+            checkedKeys.putAll(keys);
+        }
+
+        final long total = findings.values().stream().mapToInt(List::size).sum();
+        final long files = findings.values().stream().filter(fileFindings -> !fileFindings.isEmpty()).count();
+        getLog().info("shellcheck watch: [" + scripts.size() + "] files checked in ["
+                + (System.nanoTime() - startNanos) / 1_000_000 + "] ms, [" + total + "] findings in [" + files
+                + "] of [" + scriptsByRealPath.size() + "] files");
+    }
+
+    /**
+     * @return a digest of the content of the script and of the files it sources (if shellcheck follows them)
+     */
+    private String key(Path script, Map<Path, String> dependencyDigests) throws IOException {
+        final MessageDigest digest = Digests.sha256();
+        Digests.update(digest, script);
+        if (sourceGraph.isPresent()) {
+            for (Path dependency : sourceGraph.get().transitiveDependencies(script)) {
+                String dependencyDigest = dependencyDigests.get(dependency);
+                if (dependencyDigest == null) {
+                    dependencyDigest = Files.exists(dependency) ? Digests.sha256(dependency) : "";
+                    dependencyDigests.put(dependency, dependencyDigest);
+                }
+                digest.update((byte) 0);
+                digest.update(dependency.toString().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(dependencyDigest.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return Digests.hex(digest.digest());
+    }
+
+    private static Path realPath(Path path) {
+        try {
+            return path.toRealPath();
+        } catch (IOException e) {
+            return path.toAbsolutePath().normalize();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class BaselineTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void fingerprintsIgnoreLineShiftsAndWhitespace() throws IOException {
+        final Path root = temporaryFolder.getRoot().toPath();
+        final Path before = write(root.resolve("a/script.sh"), "#!/bin/sh\necho $x\n");
+        final String fingerprint = new Baseline.Fingerprinter(root).fingerprint(finding(before, 2, 2086));
+
+        write(before, "#!/bin/sh\n# a new comment\n\n   echo   $x\n");
+        Assert.assertEquals(fingerprint, new Baseline.Fingerprinter(root).fingerprint(finding(before, 4, 2086)));
+        Assert.assertNotEquals("another code", fingerprint,
+                new Baseline.Fingerprinter(root).fingerprint(finding(before, 4, 2034)));
+
+        write(before, "#!/bin/sh\necho $y\n");
+        Assert.assertNotEquals("changed code", fingerprint,
+                new Baseline.Fingerprinter(root).fingerprint(finding(before, 2, 2086)));
+
+        final Path moved = write(root.resolve("b/script.sh"), "#!/bin/sh\necho $x\n");
+        Assert.assertNotEquals("another file", fingerprint,
+                new Baseline.Fingerprinter(root).fingerprint(finding(moved, 2, 2086)));
+    }
+
+    @Test
+    public void suppressesAsManyFindingsAsInTheBaseline() throws IOException {
+        final Path root = temporaryFolder.getRoot().toPath();
+        final Path script = write(root.resolve("script.sh"), "echo $x\necho $x\necho $y\n");
+        final Baseline.Fingerprinter fingerprinter = new Baseline.Fingerprinter(root);
+        final Path baselineFile = root.resolve("baseline/shellcheck-baseline.txt");
+        Baseline.write(baselineFile, Arrays.asList(finding(script, 1, 2086), finding(script, 2, 2086)), fingerprinter);
+
+        final Baseline baseline = Baseline.read(baselineFile);
+        Assert.assertEquals(2, baseline.getRemaining());
+        Assert.assertFalse(baseline.suppress(fingerprinter.fingerprint(finding(script, 3, 2086))));
+        Assert.assertTrue(baseline.suppress(fingerprinter.fingerprint(finding(script, 1, 2086))));
+        Assert.assertTrue(baseline.suppress(fingerprinter.fingerprint(finding(script, 2, 2086))));
+        Assert.assertFalse("a third identical finding is new",
+                baseline.suppress(fingerprinter.fingerprint(finding(script, 2, 2086))));
+        Assert.assertEquals(0, baseline.getRemaining());
+        Assert.assertTrue(new String(Files.readAllBytes(baselineFile), StandardCharsets.UTF_8)
+                .contains(" SC2086 script.sh"));
+    }
+
+    private static Finding finding(Path file, int line, int code) {
+        return new Finding(file.toString(), line, line, 6, 8, Finding.Level.info, code, "message", null);
+    }
+
+    private static Path write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
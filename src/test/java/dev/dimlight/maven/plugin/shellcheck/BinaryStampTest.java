@@ -0,0 +1,82 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+
+public class BinaryStampTest {
+
+    private static final String SOURCE = "/shellcheck-bin/Linux_x86_64/shellcheck-v0.7.2/shellcheck";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void binaryIsUpToDateUntilModified() throws IOException {
+        final Path binary = binary("shellcheck", "binary");
+        final BinaryStamp stamp = new BinaryStamp(temporaryFolder.getRoot().toPath().resolve("stamp/shellcheck.stamp"));
+        Assert.assertEquals(Optional.empty(), stamp.upToDateBinary(SOURCE, "0.3.1"));
+
+        stamp.write(binary, SOURCE, "0.3.1");
+        Assert.assertEquals(Optional.of(binary.toAbsolutePath()), stamp.upToDateBinary(SOURCE, "0.3.1"));
+        Assert.assertEquals(Optional.empty(), stamp.upToDateBinary("https://example.org/shellcheck.tar.xz", "0.3.1"));
+        Assert.assertEquals(Optional.empty(), stamp.upToDateBinary(SOURCE, "0.3.2"));
+
+        Files.setLastModifiedTime(binary, FileTime.fromMillis(10_000));
+        Assert.assertEquals(Optional.empty(), stamp.upToDateBinary(SOURCE, "0.3.1"));
+
+        stamp.write(binary, SOURCE, "0.3.1");
+        stamp.invalidate();
+        Assert.assertEquals(Optional.empty(), stamp.upToDateBinary(SOURCE, "0.3.1"));
+    }
+
+    @Test
+    public void corruptedBinaryIsNotUpToDate() throws IOException {
+        final Path binary = binary("shellcheck", "binary");
+        final BinaryStamp stamp = new BinaryStamp(temporaryFolder.getRoot().toPath().resolve("shellcheck.stamp"));
+        stamp.write(binary, SOURCE, "0.3.1");
+
+        // same size and modification time, only the digest can tell
+        final FileTime lastModified = Files.getLastModifiedTime(binary);
+        Files.write(binary, "BINARY".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(binary, lastModified);
+
+        Assert.assertEquals(Optional.empty(), stamp.upToDateBinary(SOURCE, "0.3.1"));
+    }
+
+    private Path binary(String name, String content) throws IOException {
+        final Path binary = temporaryFolder.newFile(name).toPath();
+        Files.write(binary, content.getBytes(StandardCharsets.UTF_8));
+        return binary;
+    }
+}
@@ -0,0 +1,95 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BinaryStoreTest {
+
+    private static final byte[] BINARY = "#!/bin/sh\necho shellcheck\n".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final AtomicInteger opened = new AtomicInteger();
+
+    @Test
+    public void storesOnceAndLooksUpAfterwards() throws IOException {
+        final Path root = temporaryFolder.getRoot().toPath();
+        final Path binary = new BinaryStore(root).install("0.7.2", Architecture.detect(), this::open);
+
+        Assert.assertEquals(root.resolve("0.7.2").resolve(Architecture.detect().name()), binary.getParent());
+        Assert.assertArrayEquals(BINARY, Files.readAllBytes(binary));
+        Assert.assertTrue(Files.isExecutable(binary));
+
+        // another build (same store)
+        Assert.assertEquals(binary, new BinaryStore(root).install("0.7.2", Architecture.detect(), this::open));
+        Assert.assertEquals(1, opened.get());
+
+        // another version
+        new BinaryStore(root).install("0.8.0", Architecture.detect(), this::open);
+        Assert.assertEquals(2, opened.get());
+    }
+
+    @Test
+    public void storesAgainTruncatedBinaries() throws IOException {
+        final Path root = temporaryFolder.getRoot().toPath();
+        final Path binary = new BinaryStore(root).install("0.7.2", Architecture.detect(), this::open);
+        Files.write(binary, new byte[]{1});
+
+        new BinaryStore(root).install("0.7.2", Architecture.detect(), this::open);
+        Assert.assertEquals(2, opened.get());
+        Assert.assertArrayEquals(BINARY, Files.readAllBytes(binary));
+    }
+
+    @Test
+    public void storesAgainBinariesNotMatchingTheirDigest() throws IOException {
+        // as left by a build of another jvm, then corrupted keeping the same size
+        final Path directory = temporaryFolder.getRoot().toPath().resolve("0.7.2").resolve(Architecture.detect().name());
+        Files.createDirectories(directory);
+        final Path binary = directory.resolve("shellcheck" + Architecture.detect().idiomaticExecutableSuffix());
+        Files.write(binary, new byte[BINARY.length]);
+        Files.write(directory.resolve("shellcheck.sha256"), (Digests.hex(new byte[32]) + " " + BINARY.length)
+                .getBytes(StandardCharsets.UTF_8));
+
+        Assert.assertEquals(binary, new BinaryStore(temporaryFolder.getRoot().toPath())
+                .install("0.7.2", Architecture.detect(), this::open));
+        Assert.assertEquals(1, opened.get());
+        Assert.assertArrayEquals(BINARY, Files.readAllBytes(binary));
+    }
+
+    private ByteArrayInputStream open() {
+        opened.incrementAndGet();
+        return new ByteArrayInputStream(BINARY);
+    }
+}
@@ -0,0 +1,260 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+public class CachedShellcheckTest {
+
+    private static final List<String> ARGS = Collections.singletonList("--format=json1");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path binary;
+
+    @Before
+    public void fakeShellcheck() throws IOException {
+        final Architecture arch = Architecture.detect();
+        Assume.assumeTrue(arch.isUnixLike() && arch != Architecture.unsupported);
+        // a fake shellcheck writing json1 comments for scripts named "warn", failing on scripts named "bad" and
+        // counting its processes
+        binary = temporaryFolder.newFile("shellcheck").toPath();
+        Files.write(binary, ("#!/bin/sh\n"
+                + "echo process >> \"$0.processes\"\n"
+                + "code=0\n"
+                + "sep=\n"
+                + "printf '{\"comments\":['\n"
+                + "for f in \"$@\"; do\n"
+                + "  case \"$f\" in\n"
+                + "    -*) ;;\n"
+                + "    *bad*) echo \"$f: cannot parse\" >&2; code=2 ;;\n"
+                + "    *warn*) printf '%s{\"file\":\"%s\",\"line\":1,\"endLine\":1,\"column\":1,\"endColumn\":2,"
+                + "\"level\":\"warning\",\"code\":2034,\"message\":\"unused é\",\"fix\":null}' \"$sep\" \"$f\";"
+                + " sep=,; [ \"$code\" -lt 1 ] && code=1 ;;\n"
+                + "  esac\n"
+                + "done\n"
+                + "printf ']}'\n"
+                + "exit $code\n").getBytes(StandardCharsets.UTF_8));
+        arch.makeExecutable(binary);
+    }
+
+    @Test
+    public void placeholdersReplaceScriptPathsKeepingAnyOtherByte() {
+        final Path script = temporaryFolder.getRoot().toPath().resolve("dir/a\"b.sh");
+        final Path other = temporaryFolder.getRoot().toPath().resolve("other.sh");
+        final String path = script.toFile().getAbsolutePath();
+
+        final byte[] output = output(path, path.replace("\"", "\\\""));
+        final byte[] cached = CachedShellcheck.toPlaceholders(output, script);
+
+        Assert.assertFalse(new String(cached, StandardCharsets.ISO_8859_1)
+                .contains(new String(path.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1)));
+        Assert.assertArrayEquals(output, CachedShellcheck.fromPlaceholders(cached, script));
+        final String otherPath = other.toFile().getAbsolutePath();
+        Assert.assertArrayEquals(output(otherPath, otherPath), CachedShellcheck.fromPlaceholders(cached, other));
+    }
+
+    @Test
+    public void checksMissesInShardsAndReplaysIdenticalOutputs() throws IOException, InterruptedException {
+        // more scripts than the shards of two processes
+        final List<Path> scripts = scripts("a.sh", "warn-b.sh", "c.sh", "d.sh", "warn-e.sh", "f.sh", "g.sh", "h.sh",
+                "i.sh", "j.sh", "k.sh", "l.sh", "m.sh", "n.sh", "o.sh", "p.sh");
+        final ResultCache cache = new ResultCache(temporaryFolder.newFolder("cache").toPath());
+
+        final CachedShellcheck cold = new CachedShellcheck(cache, "0.7.2", Optional.empty());
+        final Shellcheck.Result first = run(cold, scripts);
+        Assert.assertEquals(16, cold.getMisses());
+        Assert.assertEquals("shards, not a process per script", ParallelShellcheck.maxShards(2), processes());
+        Assert.assertEquals(1, first.exitCode);
+        final List<String> files = new ArrayList<>();
+        Json1Parser.parse(first.stdout, finding -> files.add(finding.file));
+        Assert.assertEquals(Collections.singletonList(scripts.get(1).toFile().getAbsolutePath()), files.subList(0, 1));
+        Assert.assertEquals(2, files.size());
+
+        final CachedShellcheck warm = new CachedShellcheck(cache, "0.7.2", Optional.empty());
+        final byte[] firstStdout = Files.readAllBytes(first.stdout);
+        final Shellcheck.Result second = run(warm, scripts);
+        Assert.assertEquals(16, warm.getHits());
+        Assert.assertEquals(ParallelShellcheck.maxShards(2), processes());
+        Assert.assertEquals(1, second.exitCode);
+        Assert.assertArrayEquals(firstStdout, Files.readAllBytes(second.stdout));
+    }
+
+    @Test
+    public void cachesOnlyCleanAndProblemsFoundResults() throws IOException, InterruptedException {
+        // more scripts than the shards of two processes, the first shard is ok.sh and bad.sh
+        final List<Path> scripts = scripts("ok.sh", "bad.sh", "warn.sh", "ok2.sh", "ok3.sh", "ok4.sh", "ok5.sh",
+                "ok6.sh", "ok7.sh", "ok8.sh", "ok9.sh", "ok10.sh");
+        final ResultCache cache = new ResultCache(temporaryFolder.newFolder("cache").toPath());
+
+        final Shellcheck.Result first = run(new CachedShellcheck(cache, "0.7.2", Optional.empty()), scripts);
+        Assert.assertEquals(2, first.exitCode);
+        // the failing shard is checked again a script at a time
+        Assert.assertEquals(ParallelShellcheck.maxShards(2) + 2, processes());
+
+        final CachedShellcheck again = new CachedShellcheck(cache, "0.7.2", Optional.empty());
+        final Shellcheck.Result second = run(again, scripts);
+        Assert.assertEquals(11, again.getHits());
+        Assert.assertEquals(1, again.getMisses());
+        Assert.assertEquals(ParallelShellcheck.maxShards(2) + 2 + 1, processes());
+        Assert.assertEquals(2, second.exitCode);
+        Assert.assertArrayEquals(Files.readAllBytes(first.stderr), Files.readAllBytes(second.stderr));
+    }
+
+    @Test
+    public void checksAgainScriptsEvictedConcurrently() throws IOException, InterruptedException {
+        final List<Path> scripts = scripts("a.sh", "warn-b.sh");
+        final Path cacheDirectory = temporaryFolder.newFolder("cache").toPath();
+        final Shellcheck.Result first = run(new CachedShellcheck(new ResultCache(cacheDirectory), "0.7.2",
+                Optional.empty()), scripts);
+        final byte[] firstStdout = Files.readAllBytes(first.stdout);
+        final int firstProcesses = processes();
+
+        // found when looking for misses, gone when merging
+        final ResultCache evicting = new ResultCache(cacheDirectory) {
+            @Override
+            public Optional<Entry> get(String key) {
+                return Optional.empty();
+            }
+        };
+        final CachedShellcheck cachedShellcheck = new CachedShellcheck(evicting, "0.7.2", Optional.empty());
+        final Shellcheck.Result second = run(cachedShellcheck, scripts);
+        Assert.assertEquals(2, cachedShellcheck.getHits());
+        Assert.assertEquals(firstProcesses + 2, processes());
+        Assert.assertEquals(1, second.exitCode);
+        Assert.assertArrayEquals(firstStdout, Files.readAllBytes(second.stdout));
+    }
+
+    @Test
+    public void sharesResultsOnlyAmongScriptsWithTheSameExtension() throws IOException, InterruptedException {
+        final Path root = temporaryFolder.getRoot().toPath();
+        final List<Path> scripts = new ArrayList<>();
+        for (String name : new String[]{"a/lib.sh", "b/lib.sh", "a/lib.bash", "a/lib"}) {
+            final Path script = root.resolve(name);
+            Files.createDirectories(script.getParent());
+            // no shebang, shellcheck infers the dialect from the extension
+            Files.write(script, "echo same\n".getBytes(StandardCharsets.UTF_8));
+            scripts.add(script);
+        }
+        final ResultCache cache = new ResultCache(temporaryFolder.newFolder("cache").toPath());
+        run(new CachedShellcheck(cache, "0.7.2", Optional.empty()), scripts.subList(0, 1));
+
+        final CachedShellcheck cachedShellcheck = new CachedShellcheck(cache, "0.7.2", Optional.empty());
+        run(cachedShellcheck, scripts);
+        // the same content in another directory is shared, not with another extension (or without)
+        Assert.assertEquals(2, cachedShellcheck.getHits());
+        Assert.assertEquals(2, cachedShellcheck.getMisses());
+    }
+
+    @Test
+    public void missesWhenTheShellcheckrcChanges() throws IOException, InterruptedException {
+        // two checkouts (e.g. branches) sharing a cache, with the same script
+        final Path root = temporaryFolder.getRoot().toPath();
+        final Path main = root.resolve("main");
+        final Path branch = root.resolve("branch");
+        for (Path checkout : new Path[]{main, branch}) {
+            Files.createDirectories(checkout.resolve("src"));
+            Files.write(checkout.resolve("src/a.sh"), "echo a\n".getBytes(StandardCharsets.UTF_8));
+            Files.write(checkout.resolve(".shellcheckrc"), "disable=SC2034\n".getBytes(StandardCharsets.UTF_8));
+        }
+        final ResultCache cache = new ResultCache(temporaryFolder.newFolder("cache").toPath());
+        run(new CachedShellcheck(cache, "0.7.2", Optional.empty()), Collections.singletonList(main.resolve("src/a.sh")));
+
+        final CachedShellcheck sameRc = new CachedShellcheck(cache, "0.7.2", Optional.empty());
+        run(sameRc, Collections.singletonList(branch.resolve("src/a.sh")));
+        Assert.assertEquals(1, sameRc.getHits());
+
+        // the nearest rc file going up from the script applies
+        Files.write(branch.resolve(".shellcheckrc"), "enable=all\n".getBytes(StandardCharsets.UTF_8));
+        final CachedShellcheck changedRc = new CachedShellcheck(cache, "0.7.2", Optional.empty());
+        run(changedRc, Collections.singletonList(branch.resolve("src/a.sh")));
+        Assert.assertEquals(1, changedRc.getMisses());
+
+        Files.write(main.resolve("src/.shellcheckrc"), "disable=SC2086\n".getBytes(StandardCharsets.UTF_8));
+        final CachedShellcheck nearerRc = new CachedShellcheck(cache, "0.7.2", Optional.empty());
+        // the branch one has been cached with its changed rc file
+        run(nearerRc, Arrays.asList(main.resolve("src/a.sh"), branch.resolve("src/a.sh")));
+        Assert.assertEquals(1, nearerRc.getHits());
+        Assert.assertEquals(1, nearerRc.getMisses());
+    }
+
+    private Shellcheck.Result run(CachedShellcheck cachedShellcheck, List<Path> scripts)
+            throws IOException, InterruptedException {
+        final Path root = temporaryFolder.getRoot().toPath();
+        return cachedShellcheck.run(binary, ARGS, root.resolve("out"), scripts, new ProcessScheduler(2),
+                new CommandLineBatcher(Architecture.detect(), Architecture.detect().commandLineLengthLimit()),
+                new CostHistory(root.resolve("costs.txt")), Optional.empty(), (shard, result, wallNanos) -> {
+                }, new OutputForwarder(new SystemStreamLog(), 0, true));
+    }
+
+    private List<Path> scripts(String... names) throws IOException {
+        final List<Path> scripts = new ArrayList<>();
+        for (String name : names) {
+            final Path script = temporaryFolder.newFile(name).toPath();
+            // same size, for the shards to be predictable
+            Files.write(script, String.format("echo %-12s", name).getBytes(StandardCharsets.UTF_8));
+            scripts.add(script);
+        }
+        return scripts;
+    }
+
+    private int processes() throws IOException {
+        try {
+            return Files.readAllLines(binary.resolveSibling("shellcheck.processes")).size();
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return an output mentioning the given path as is and json escaped, with bytes that are not valid utf-8
+     */
+    private static byte[] output(String path, String jsonPath) {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        output.write(0xff);
+        final byte[] text = ("In " + path + " line 1:\n{\"file\":\"" + jsonPath + "\"} café\n")
+                .getBytes(StandardCharsets.UTF_8);
+        output.write(text, 0, text.length);
+        output.write(0xe9);
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,99 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.OptionalDouble;
+import java.util.OptionalLong;
+
+public class CgroupLimitsTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void readsCgroupV2LimitsAlongTheHierarchy() throws IOException {
+        final Path root = temporaryFolder.getRoot().toPath();
+        write(root.resolve("proc/self/mountinfo"),
+                "30 23 0:26 / /sys/fs/cgroup rw,nosuid,nodev,noexec,relatime shared:4 - cgroup2 cgroup2 rw,nsdelegate\n");
+        write(root.resolve("proc/self/cgroup"), "0::/kubepods/pod1/container1\n");
+        // the pod limits apply to the container, which has none of its own
+        write(root.resolve("sys/fs/cgroup/kubepods/pod1/cpu.max"), "150000 100000\n");
+        write(root.resolve("sys/fs/cgroup/kubepods/pod1/memory.max"), String.valueOf(2048 * MB));
+        write(root.resolve("sys/fs/cgroup/kubepods/pod1/container1/cpu.max"), "max 100000\n");
+        write(root.resolve("sys/fs/cgroup/kubepods/pod1/container1/memory.max"), "max\n");
+
+        final CgroupLimits limits = CgroupLimits.read(root);
+        Assert.assertEquals(1.5, limits.getCpus().getAsDouble(), 0.001);
+        Assert.assertEquals(2048 * MB, limits.getMemoryBytes().getAsLong());
+    }
+
+    @Test
+    public void readsCgroupV1Limits() throws IOException {
+        final Path root = temporaryFolder.getRoot().toPath();
+        write(root.resolve("proc/self/mountinfo"),
+                "33 32 0:29 /docker/abc /sys/fs/cgroup/cpu,cpuacct rw,relatime - cgroup cgroup rw,cpu,cpuacct\n"
+                        + "36 32 0:32 /docker/abc /sys/fs/cgroup/memory rw,relatime - cgroup cgroup rw,memory\n"
+                        + "42 32 0:38 / /sys/fs/cgroup/unified rw,relatime - cgroup2 cgroup2 rw\n");
+        write(root.resolve("proc/self/cgroup"), "4:memory:/docker/abc\n2:cpu,cpuacct:/docker/abc\n0::/\n");
+        write(root.resolve("sys/fs/cgroup/cpu,cpuacct/cpu.cfs_quota_us"), "400000\n");
+        write(root.resolve("sys/fs/cgroup/cpu,cpuacct/cpu.cfs_period_us"), "100000\n");
+        write(root.resolve("sys/fs/cgroup/memory/memory.limit_in_bytes"), "9223372036854771712\n");
+
+        final CgroupLimits limits = CgroupLimits.read(root);
+        Assert.assertEquals(4, limits.getCpus().getAsDouble(), 0.001);
+        Assert.assertFalse(limits.getMemoryBytes().isPresent());
+    }
+
+    @Test
+    public void noCgroupsMeansNoLimits() {
+        final CgroupLimits limits = CgroupLimits.read(temporaryFolder.getRoot().toPath());
+        Assert.assertFalse(limits.getCpus().isPresent());
+        Assert.assertFalse(limits.getMemoryBytes().isPresent());
+        Assert.assertEquals(16, limits.parallelism(16, 0, 256 * MB));
+    }
+
+    @Test
+    public void sizesParallelismOnCpuAndMemory() {
+        final CgroupLimits limits = new CgroupLimits(OptionalDouble.of(2.5), OptionalLong.of(2048 * MB));
+        Assert.assertEquals(3, limits.parallelism(64, 512 * MB, 256 * MB));
+        Assert.assertEquals(2, limits.parallelism(64, 1024 * MB, 512 * MB));
+        Assert.assertEquals(1, limits.parallelism(64, 4096 * MB, 256 * MB));
+        Assert.assertEquals(2, limits.parallelism(2, 0, 256 * MB));
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,107 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+
+public class ChangedLinesTest {
+
+    private static final Path ROOT = Paths.get("/repo").toAbsolutePath();
+
+    @Test
+    public void indexesTheNewSideOfHunks() {
+        final String diff = "diff --git a/a.sh b/a.sh\n"
+                + "index 1111111..2222222 100644\n"
+                + "--- a/a.sh\n"
+                + "+++ b/a.sh\n"
+                + "@@ -3 +3 @@ echo\n"
+                + "-old\n"
+                + "+new\n"
+                + "@@ -10,0 +11,3 @@\n"
+                + "+added\n"
+                + "+added\n"
+                + "+added\n"
+                + "@@ -20,2 +23,0 @@\n"
+                + "-deleted\n"
+                + "-deleted\n"
+                + "diff --git a/gone.sh b/gone.sh\n"
+                + "--- a/gone.sh\n"
+                + "+++ /dev/null\n"
+                + "@@ -1,2 +0,0 @@\n"
+                + "diff --git a/dir/with space.sh b/dir/with space.sh\n"
+                + "--- a/dir/with space.sh\n"
+                + "+++ b/dir/with space.sh\n"
+                + "@@ -0,0 +1 @@\n"
+                + "+first\n"
+                + "diff --git \"a/q\\\"uote.sh\" \"b/q\\\"uote.sh\"\n"
+                + "--- \"a/q\\\"uote.sh\"\n"
+                + "+++ \"b/q\\\"uote.sh\"\n"
+                + "@@ -5,2 +5,2 @@\n";
+        final Path untracked = ROOT.resolve("new.sh");
+
+        final ChangedLines changedLines = ChangedLines.parse(ROOT, diff.getBytes(StandardCharsets.UTF_8),
+                Collections.singletonList(untracked));
+
+        final Path a = ROOT.resolve("a.sh");
+        Assert.assertFalse(changedLines.intersects(a, 2, 2));
+        Assert.assertTrue(changedLines.intersects(a, 3, 3));
+        Assert.assertFalse(changedLines.intersects(a, 4, 10));
+        Assert.assertTrue(changedLines.intersects(a, 11, 11));
+        Assert.assertTrue(changedLines.intersects(a, 13, 13));
+        Assert.assertTrue("a multi-line finding ending on a changed line", changedLines.intersects(a, 8, 11));
+        Assert.assertFalse("deleted lines are not changed lines", changedLines.intersects(a, 14, 30));
+
+        Assert.assertFalse(changedLines.intersects(ROOT.resolve("gone.sh"), 1, 1));
+        Assert.assertTrue(changedLines.intersects(ROOT.resolve("dir/with space.sh"), 1, 1));
+        Assert.assertTrue(changedLines.intersects(ROOT.resolve("q\"uote.sh"), 6, 6));
+        Assert.assertTrue(changedLines.intersects(untracked, 12345, 12345));
+        Assert.assertFalse(changedLines.intersects(ROOT.resolve("other.sh"), 1, 1));
+        Assert.assertEquals(4, changedLines.getFileCount());
+    }
+
+    @Test
+    public void mergesOverlappingAndAdjacentHunks() {
+        final StringBuilder diff = new StringBuilder("+++ b/big.sh\n");
+        // every third line changed, in pairs of adjacent hunks
+        for (int line = 1; line < 300_000; line += 3) {
+            diff.append("@@ -").append(line).append(" +").append(line).append(" @@\n");
+            diff.append("@@ -").append(line + 1).append(" +").append(line + 1).append(" @@\n");
+        }
+
+        final ChangedLines changedLines = ChangedLines.parse(ROOT, diff.toString().getBytes(StandardCharsets.UTF_8),
+                Collections.emptyList());
+
+        final Path big = ROOT.resolve("big.sh");
+        for (int line = 1; line < 300_000; line += 3) {
+            Assert.assertTrue(changedLines.intersects(big, line, line));
+            Assert.assertTrue(changedLines.intersects(big, line + 1, line + 1));
+            Assert.assertFalse(changedLines.intersects(big, line + 2, line + 2));
+        }
+    }
+}
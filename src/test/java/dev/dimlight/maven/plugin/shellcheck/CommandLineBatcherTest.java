@@ -0,0 +1,86 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class CommandLineBatcherTest {
+
+    private static final Path BINARY = Paths.get("/opt/shellcheck");
+
+    @Test
+    public void keepsEveryBatchWithinTheLimit() {
+        final List<Path> scripts = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            scripts.add(Paths.get("/repo/module-" + i + "/src/main/sh/script-" + i + ".sh"));
+        }
+        final long maxLength = 4096;
+
+        final List<List<Path>> batches = new CommandLineBatcher(Architecture.Linux_x86_64, maxLength)
+                .batches(BINARY, Collections.singletonList("--norc"), scripts);
+
+        Assert.assertTrue(batches.size() > 1);
+        final List<Path> rejoined = new ArrayList<>();
+        for (List<Path> batch : batches) {
+            long length = BINARY.toString().length() + 1 + 8 + "--norc".length() + 1 + 8;
+            for (Path script : batch) {
+                length += script.toString().length() + 1 + 8;
+            }
+            Assert.assertTrue("batch of length [" + length + "]", length <= maxLength);
+            rejoined.addAll(batch);
+        }
+        Assert.assertEquals("batches are contiguous and in order", scripts, rejoined);
+    }
+
+    @Test
+    public void singleBatchWhenEverythingFits() {
+        final List<Path> scripts = Collections.nCopies(10, Paths.get("/repo/a.sh"));
+
+        final List<List<Path>> batches = new CommandLineBatcher(Architecture.Windows_x86, 32767)
+                .batches(BINARY, Collections.emptyList(), scripts);
+
+        Assert.assertEquals(Collections.singletonList(scripts), batches);
+    }
+
+    @Test
+    public void overlongScriptGetsItsOwnBatch() {
+        final Path longScript = Paths.get("/repo/" + String.join("", Collections.nCopies(200, "x")) + ".sh");
+        final List<Path> scripts = new ArrayList<>();
+        scripts.add(Paths.get("/repo/a.sh"));
+        scripts.add(longScript);
+        scripts.add(Paths.get("/repo/b.sh"));
+
+        final List<List<Path>> batches = new CommandLineBatcher(Architecture.Linux_x86_64, 100)
+                .batches(BINARY, Collections.emptyList(), scripts);
+
+        Assert.assertEquals(3, batches.size());
+        Assert.assertEquals(Collections.singletonList(longScript), batches.get(1));
+    }
+}
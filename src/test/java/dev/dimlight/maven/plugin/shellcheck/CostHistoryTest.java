@@ -0,0 +1,81 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class CostHistoryTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void estimatesFromTheObservedTimesAcrossBuilds() throws IOException {
+        final Path historyFile = temporaryFolder.getRoot().toPath().resolve("costs.txt");
+        final Path small = script("small.sh", 100);
+        final Path big = script("big.sh", 300);
+        final Path unseen = script("unseen.sh", 200);
+
+        final CostHistory history = new CostHistory(historyFile);
+        // without history the size is the estimate
+        Assert.assertEquals(3 * history.estimate(small), history.estimate(big));
+
+        // one process checked both, its time is split by size
+        history.shardCompleted(Arrays.asList(small, big), result(), 4_000);
+        Assert.assertEquals(1_000, history.estimate(small));
+        Assert.assertEquals(3_000, history.estimate(big));
+        // a process on the small one alone took longer than its share
+        history.shardCompleted(Collections.singletonList(small), result(), 3_000);
+        Assert.assertEquals(2_000, history.estimate(small));
+        history.save();
+
+        final CostHistory nextBuild = new CostHistory(historyFile);
+        Assert.assertEquals(2_000, nextBuild.estimate(small));
+        Assert.assertEquals(3_000, nextBuild.estimate(big));
+        // never observed: the average time per byte
+        Assert.assertEquals(2_500, nextBuild.estimate(unseen));
+        // grown files cost more
+        Files.write(big, new byte[600]);
+        Assert.assertEquals(6_000, nextBuild.estimate(big));
+    }
+
+    private Path script(String name, int size) throws IOException {
+        final Path script = temporaryFolder.newFile(name).toPath();
+        Files.write(script, new byte[size]);
+        return script;
+    }
+
+    private Shellcheck.Result result() {
+        final Path output = temporaryFolder.getRoot().toPath().resolve("output");
+        return new Shellcheck.Result(0, output, output, Collections.emptyList());
+    }
+}
@@ -0,0 +1,125 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+public class DirectoryWatcherTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test(timeout = 60_000)
+    public void collectsChangesInNewDirectories() throws IOException, InterruptedException {
+        final Path root = temporaryFolder.getRoot().toPath().toRealPath();
+        final Path script = write(root.resolve("a/script.sh"), "echo a");
+
+        try (DirectoryWatcher watcher = new DirectoryWatcher(Collections.singletonList(root), directory -> true)) {
+            Assert.assertEquals(2, watcher.getDirectoryCount());
+
+            write(script, "echo changed");
+            Assert.assertTrue(watcher.awaitChanges(Duration.ofMillis(200)).paths.contains(script));
+
+            final Path created = write(root.resolve("b/c/created.sh"), "echo created");
+            final Set<Path> changed = new HashSet<>();
+            // the platform may deliver the events of the new directory tree separately
+            while (!changed.contains(created)) {
+                changed.addAll(watcher.awaitChanges(Duration.ofMillis(200)).paths);
+            }
+            Assert.assertTrue(changed.contains(root.resolve("b")));
+
+            write(created, "echo again");
+            changed.clear();
+            while (!changed.contains(created)) {
+                changed.addAll(watcher.awaitChanges(Duration.ofMillis(200)).paths);
+            }
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void skipsTheDirectoriesNotToBeWatched() throws IOException, InterruptedException {
+        final Path root = temporaryFolder.getRoot().toPath().toRealPath();
+        write(root.resolve("vendor/deep/lib.sh"), "echo lib");
+        final Path script = write(root.resolve("a/script.sh"), "echo a");
+        final Predicate<Path> notVendor = directory -> !directory.getFileName().toString().equals("vendor");
+
+        try (DirectoryWatcher watcher = new DirectoryWatcher(Collections.singletonList(root), notVendor)) {
+            Assert.assertEquals(2, watcher.getDirectoryCount());
+
+            // the content of a created directory not to be watched is not reported
+            write(root.resolve("b/vendor/other.sh"), "echo other");
+            final Set<Path> changed = new HashSet<>();
+            while (!changed.contains(root.resolve("b"))) {
+                changed.addAll(watcher.awaitChanges(Duration.ofMillis(200)).paths);
+            }
+            Assert.assertFalse(changed.toString(), changed.contains(root.resolve("b/vendor/other.sh")));
+            Assert.assertEquals(3, watcher.getDirectoryCount());
+
+            write(root.resolve("vendor/deep/lib.sh"), "echo changed");
+            write(script, "echo changed");
+            changed.clear();
+            while (!changed.contains(script)) {
+                changed.addAll(watcher.awaitChanges(Duration.ofMillis(200)).paths);
+            }
+            Assert.assertFalse(changed.toString(), changed.contains(root.resolve("vendor/deep/lib.sh")));
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void watchesSingleDirectoriesToo() throws IOException, InterruptedException {
+        final Path root = temporaryFolder.newFolder("root").toPath().toRealPath();
+        final Path lib = write(temporaryFolder.getRoot().toPath().toRealPath().resolve("lib/lib.bash"), "echo lib");
+        write(lib.resolveSibling("deep/other.bash"), "echo other");
+
+        try (DirectoryWatcher watcher = new DirectoryWatcher(Collections.singletonList(root), directory -> true)) {
+            watcher.watchDirectory(lib.getParent());
+            watcher.watchDirectory(lib.getParent());
+            Assert.assertEquals(2, watcher.getDirectoryCount());
+
+            write(lib, "echo changed");
+            final Set<Path> changed = new HashSet<>();
+            while (!changed.contains(lib)) {
+                changed.addAll(watcher.awaitChanges(Duration.ofMillis(200)).paths);
+            }
+        }
+    }
+
+    private static Path write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,134 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ExecutionStampTest {
+
+    private static final List<String> CONFIGURATION = Arrays.asList("0.3.1", "embedded", "-x");
+
+    /**
+     * The start of the executions checking the stamp, well after the stamped one.
+     */
+    private static final long NOW = 120_000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void replaysUnchangedExecutions() throws IOException {
+        final Path root = temporaryFolder.getRoot().toPath();
+        final Path a = write(root.resolve("a.sh"), "echo a", 10_000);
+        final Path b = write(root.resolve("b.sh"), "echo b", 10_000);
+        final Path lib = write(root.resolve("lib.sh"), "echo lib", 10_000);
+        final List<Path> files = Arrays.asList(a, b);
+        stamp(files, lib, 60_000, 1, "a.sh:1: finding");
+
+        final ExecutionStamp stamp = new ExecutionStamp(root.resolve("stamp"));
+        Assert.assertTrue(stamp.isUpToDate(CONFIGURATION, files, NOW));
+        Assert.assertEquals(0, stamp.getHashedFiles());
+        final Shellcheck.Result result = stamp.replay(root.resolve("out/stdout"), root.resolve("out/stderr"),
+                new OutputForwarder(new SystemStreamLog(), 0, true));
+        Assert.assertEquals(1, result.exitCode);
+        Assert.assertEquals("a.sh:1: finding", new String(Files.readAllBytes(result.stdout), StandardCharsets.UTF_8));
+
+        Assert.assertFalse(new ExecutionStamp(root.resolve("stamp")).isUpToDate(Arrays.asList("0.3.1", "embedded"), files, NOW));
+        Assert.assertFalse(new ExecutionStamp(root.resolve("stamp")).isUpToDate(CONFIGURATION, Collections.singletonList(a), NOW));
+        Assert.assertFalse(new ExecutionStamp(root.resolve("stamp")).isUpToDate(CONFIGURATION, Arrays.asList(b, a), NOW));
+
+        write(lib, "echo lib2", 10_000);
+        Assert.assertFalse(new ExecutionStamp(root.resolve("stamp")).isUpToDate(CONFIGURATION, files, NOW));
+    }
+
+    @Test
+    public void hashesOnlyTouchedAndRacyFiles() throws IOException {
+        final Path root = temporaryFolder.getRoot().toPath();
+        final Path a = write(root.resolve("a.sh"), "echo a", 10_000);
+        final Path racy = write(root.resolve("racy.sh"), "echo r", 59_000);
+        final List<Path> files = Arrays.asList(a, racy);
+        stamp(files, root.resolve("missing.sh"), 60_000, 0, "");
+
+        // same size, same modification time: only a content hash can tell
+        write(racy, "echo R", 59_000);
+        final ExecutionStamp changed = new ExecutionStamp(root.resolve("stamp"));
+        Assert.assertFalse(changed.isUpToDate(CONFIGURATION, files, NOW));
+        Assert.assertEquals(1, changed.getHashedFiles());
+
+        // e.g. a fresh checkout: same content, new modification time
+        write(racy, "echo r", 59_000);
+        Files.setLastModifiedTime(a, FileTime.fromMillis(20_000));
+        final ExecutionStamp touched = new ExecutionStamp(root.resolve("stamp"));
+        Assert.assertTrue(touched.isUpToDate(CONFIGURATION, files, NOW));
+        Assert.assertEquals(2, touched.getHashedFiles());
+
+        // refreshed with the start of the execution that hashed them, neither file is hashed again
+        final ExecutionStamp refreshed = new ExecutionStamp(root.resolve("stamp"));
+        Assert.assertTrue(refreshed.isUpToDate(CONFIGURATION, files, NOW));
+        Assert.assertEquals(0, refreshed.getHashedFiles());
+
+        write(a, "echo aa", 20_000);
+        Assert.assertFalse(new ExecutionStamp(root.resolve("stamp")).isUpToDate(CONFIGURATION, files, NOW));
+    }
+
+    @Test
+    public void invalidatedStampIsNeverUpToDate() throws IOException {
+        final Path root = temporaryFolder.getRoot().toPath();
+        final List<Path> files = Collections.singletonList(write(root.resolve("a.sh"), "echo a", 10_000));
+        stamp(files, root.resolve("missing.sh"), 60_000, 0, "");
+
+        new ExecutionStamp(root.resolve("stamp")).invalidate();
+        Assert.assertFalse(new ExecutionStamp(root.resolve("stamp")).isUpToDate(CONFIGURATION, files, NOW));
+    }
+
+    private void stamp(List<Path> files, Path dependency, long startMillis, int exitCode, String stdout)
+            throws IOException {
+        final Path root = temporaryFolder.getRoot().toPath();
+        final ExecutionStamp stamp = new ExecutionStamp(root.resolve("stamp"));
+        final ExecutionStamp.Snapshot snapshot = stamp.snapshot(CONFIGURATION, files,
+                Collections.singletonList(dependency), startMillis);
+        final Shellcheck.Result result = new Shellcheck.Result(exitCode,
+                write(root.resolve("run.stdout"), stdout, startMillis),
+                write(root.resolve("run.stderr"), "", startMillis));
+        stamp.write(snapshot, result);
+    }
+
+    private static Path write(Path file, String content, long lastModifiedMillis) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(lastModifiedMillis));
+        return file;
+    }
+}
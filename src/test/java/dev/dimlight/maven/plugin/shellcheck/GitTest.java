@@ -0,0 +1,129 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Optional;
+
+public class GitTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path root;
+
+    @Before
+    public void initRepository() throws IOException, InterruptedException {
+        root = temporaryFolder.getRoot().toPath().toRealPath();
+        try {
+            git("init", "-q");
+        } catch (IOException e) {
+            Assume.assumeNoException("git is not available", e);
+        }
+        git("config", "user.email", "test@example.com");
+        git("config", "user.name", "test");
+        git("config", "commit.gpgsign", "false");
+    }
+
+    @Test
+    public void changedFilesIncludeUncommittedAndUntrackedOnes() throws IOException, InterruptedException {
+        write("a.sh", "echo a");
+        write("b.sh", "echo b");
+        write("dir/c.sh", "echo c");
+        write("deleted.sh", "echo d");
+        write(".gitignore", "ignored.sh\n");
+        commit("base");
+        git("tag", "base");
+
+        write("a.sh", "echo changed");
+        commit("change a");
+        write("dir/c.sh", "echo changed, not committed");
+        write("new.sh", "echo new");
+        write("ignored.sh", "echo ignored");
+        Files.delete(root.resolve("deleted.sh"));
+
+        final Git git = Git.open(root.resolve("dir")).orElseThrow(AssertionError::new);
+        Assert.assertEquals(root, git.getTopLevel());
+        final String base = git.mergeBase("base").orElseThrow(AssertionError::new);
+        Assert.assertEquals(new HashSet<>(Arrays.asList(root.resolve("a.sh"), root.resolve("dir/c.sh"),
+                root.resolve("new.sh"))), git.changedFiles(base));
+    }
+
+    @Test
+    public void changedLinesOfCommittedUncommittedAndUntrackedFiles() throws IOException, InterruptedException {
+        write("a.sh", "1\n2\n3\n4\n5\n");
+        write("b.sh", "1\n2\n");
+        commit("base");
+        git("tag", "base");
+
+        write("a.sh", "1\nchanged\n3\n4\n5\nadded\n");
+        commit("change a");
+        write("b.sh", "2\n");
+        write("new.sh", "1\n");
+
+        final Git git = Git.open(root).orElseThrow(AssertionError::new);
+        final ChangedLines changedLines = git.changedLines(git.mergeBase("base").orElseThrow(AssertionError::new));
+
+        Assert.assertFalse(changedLines.intersects(root.resolve("a.sh"), 1, 1));
+        Assert.assertTrue(changedLines.intersects(root.resolve("a.sh"), 2, 2));
+        Assert.assertFalse(changedLines.intersects(root.resolve("a.sh"), 3, 5));
+        Assert.assertTrue(changedLines.intersects(root.resolve("a.sh"), 6, 6));
+        Assert.assertFalse("only a deletion", changedLines.intersects(root.resolve("b.sh"), 1, 2));
+        Assert.assertTrue(changedLines.intersects(root.resolve("new.sh"), 1, 1));
+    }
+
+    @Test
+    public void unresolvableBaseRef() throws IOException, InterruptedException {
+        write("a.sh", "echo a");
+        commit("base");
+
+        Assert.assertEquals(Optional.empty(), Git.open(root).orElseThrow(AssertionError::new).mergeBase("origin/none"));
+    }
+
+    private void write(String file, String content) throws IOException {
+        final Path path = root.resolve(file);
+        Files.createDirectories(path.getParent());
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void commit(String message) throws IOException, InterruptedException {
+        git("add", "-A");
+        git("commit", "-q", "-m", message);
+    }
+
+    private void git(String... args) throws IOException, InterruptedException {
+        Git.run(root, args);
+    }
+}
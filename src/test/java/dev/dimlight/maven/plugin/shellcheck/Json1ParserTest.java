@@ -0,0 +1,91 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class Json1ParserTest {
+
+    private static final String COMMENT = "{\"file\":\"a b.sh\",\"line\":3,\"endLine\":3,\"column\":6,\"endColumn\":8,"
+            + "\"level\":\"info\",\"code\":2086,\"message\":\"Double quote to prevent globbing and word splitting.\","
+            + "\"fix\":{\"replacements\":[{\"line\":3,\"endLine\":3,\"precedence\":7,\"insertionPoint\":\"afterEnd\","
+            + "\"column\":6,\"replacement\":\"\\\"\",\"endColumn\":6}]}}";
+
+    @Test
+    public void parsesComments() throws IOException {
+        final List<Finding> findings = parse("{\"comments\":[" + COMMENT + ","
+                + "{\"file\":\"a b.sh\",\"line\":1,\"endLine\":1,\"column\":1,\"endColumn\":1,\"level\":\"error\","
+                + "\"code\":2148,\"message\":\"Tips depend on target shell \\u00e8 \\\\o/\\n\",\"fix\":null}]}");
+
+        Assert.assertEquals(2, findings.size());
+
+        final Finding first = findings.get(0);
+        Assert.assertEquals("a b.sh", first.file);
+        Assert.assertEquals(3, first.line);
+        Assert.assertEquals(3, first.endLine);
+        Assert.assertEquals(6, first.column);
+        Assert.assertEquals(8, first.endColumn);
+        Assert.assertEquals(Finding.Level.info, first.level);
+        Assert.assertEquals(2086, first.code);
+        Assert.assertEquals("Double quote to prevent globbing and word splitting.", first.message);
+        Assert.assertEquals(1, first.fix.replacements.size());
+        Assert.assertEquals("\"", first.fix.replacements.get(0).replacement);
+        Assert.assertEquals("afterEnd", first.fix.replacements.get(0).insertionPoint);
+        Assert.assertEquals(7, first.fix.replacements.get(0).precedence);
+
+        final Finding second = findings.get(1);
+        Assert.assertSame(first.file, second.file);
+        Assert.assertEquals(Finding.Level.error, second.level);
+        Assert.assertEquals("Tips depend on target shell è \\o/\n", second.message);
+        Assert.assertNull(second.fix);
+        Assert.assertEquals("a b.sh:1:1: error: Tips depend on target shell è \\o/\n [SC2148]", second.toGccFormat());
+    }
+
+    @Test
+    public void parsesConcatenatedDocumentsSkippingUnknownKeys() throws IOException {
+        final List<Finding> findings = parse("{\"comments\":[]}\n"
+                + "{\"extra\":{\"nested\":[1,2.5e3,true,null,\"x\"]},\"comments\":[" + COMMENT + "]}"
+                + "{\"comments\":[" + COMMENT + "]}");
+
+        Assert.assertEquals(Arrays.asList(2086, 2086), Arrays.asList(findings.get(0).code, findings.get(1).code));
+        Assert.assertSame(findings.get(0).message, findings.get(1).message);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedOutput() throws IOException {
+        parse("{\"comments\":[" + COMMENT.substring(0, 40));
+    }
+
+    private static List<Finding> parse(String json) throws IOException {
+        final List<Finding> findings = new ArrayList<>();
+        Json1Parser.parse(new StringReader(json), findings::add);
+        return findings;
+    }
+}
@@ -0,0 +1,65 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class LineSplitterTest {
+
+    @Test
+    public void splitsAcrossWrites() {
+        final List<String> lines = new ArrayList<>();
+        final LineSplitter splitter = new LineSplitter(100, lines::add);
+
+        write(splitter, "first li");
+        write(splitter, "ne\r\nsecond line\nthi");
+        write(splitter, "rd");
+        Assert.assertEquals(Arrays.asList("first line", "second line"), lines);
+
+        splitter.close();
+        Assert.assertEquals(Arrays.asList("first line", "second line", "third"), lines);
+    }
+
+    @Test
+    public void truncatesLongLines() {
+        final List<String> lines = new ArrayList<>();
+        final LineSplitter splitter = new LineSplitter(5, lines::add);
+
+        write(splitter, "0123");
+        write(splitter, "456789\nshort\n");
+        splitter.write('x');
+
+        Assert.assertEquals(Arrays.asList("01234 [...]", "short"), lines);
+    }
+
+    private static void write(LineSplitter splitter, String s) {
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        splitter.write(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,89 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LockFileTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test(timeout = 60_000)
+    public void excludesOtherThreads() throws Exception {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("dir/.lock");
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            try (LockFile lock = LockFile.acquire(file)) {
+                Assert.assertFalse(executor.submit(() -> tryAcquireAndRelease(file)).get());
+            }
+            Assert.assertTrue(executor.submit(() -> tryAcquireAndRelease(file)).get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void concurrentBuildsStoreABinaryOnce() throws Exception {
+        final BinaryStore store = new BinaryStore(temporaryFolder.getRoot().toPath());
+        final AtomicInteger opened = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Path>> installs = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                installs.add(executor.submit(() -> store.install("0.7.2", Architecture.detect(), () -> {
+                    opened.incrementAndGet();
+                    return new ByteArrayInputStream(new byte[]{1, 2, 3});
+                })));
+            }
+            for (Future<Path> install : installs) {
+                Assert.assertEquals(installs.get(0).get(), install.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(1, opened.get());
+    }
+
+    private static boolean tryAcquireAndRelease(Path file) throws IOException {
+        final Optional<LockFile> lock = LockFile.tryAcquire(file);
+        if (lock.isPresent()) {
+            lock.get().close();
+        }
+        return lock.isPresent();
+    }
+}
@@ -0,0 +1,96 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+public class MetricsTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void writesPhasesCountersAndEachProcess() throws IOException {
+        final Metrics metrics = new Metrics();
+        try (Metrics.Phase ignored = metrics.phase("discovery")) {
+            metrics.count("files", 3);
+        }
+        try (Metrics.Phase ignored = metrics.phase("execution")) {
+            metrics.count("cacheHits", 1);
+            metrics.count("files", 2);
+        }
+        metrics.shardCompleted(Arrays.asList(Paths.get("a.sh"), Paths.get("b.sh")), result(1), TimeUnit.MILLISECONDS.toNanos(40));
+        metrics.shardCompleted(Collections.singletonList(Paths.get("c.sh")), result(0), TimeUnit.MILLISECONDS.toNanos(2));
+
+        final Path destination = temporaryFolder.getRoot().toPath().resolve("out/metrics.json");
+        metrics.write(destination);
+        final String json = new String(Files.readAllBytes(destination), StandardCharsets.UTF_8);
+
+        assertMatches("\"totalMillis\": \\d+,", json);
+        assertMatches("\"phasesMillis\": \\{\"discovery\": \\d+, \"execution\": \\d+\\},", json);
+        Assert.assertTrue(json, json.contains("\"counters\": {\"files\": 5, \"cacheHits\": 1},"));
+        Assert.assertTrue(json, json.contains("\"processes\": [\n"
+                + "    {\"files\": 2, \"exitCode\": 1, \"wallMillis\": 40},\n"
+                + "    {\"files\": 1, \"exitCode\": 0, \"wallMillis\": 2}\n"
+                + "  ]"));
+        Assert.assertTrue(json, json.contains("\"processesWallMillis\": 42,"));
+        // the cpu time cannot be told apart per process, only the labelled jvm-wide total is there (null off linux)
+        assertMatches("\"jvmWideChildrenCpuMillis\": (\\d+|null),", json);
+        Assert.assertFalse(json, json.contains("\"shellcheckCpuMillis\""));
+    }
+
+    @Test
+    public void writesAnEmptyProcessListWhenNothingRan() throws IOException {
+        final Metrics metrics = new Metrics();
+        final Path destination = temporaryFolder.getRoot().toPath().resolve("metrics.json");
+        metrics.write(destination);
+        final String json = new String(Files.readAllBytes(destination), StandardCharsets.UTF_8);
+
+        Assert.assertTrue(json, json.contains("\"processesWallMillis\": 0,"));
+        Assert.assertTrue(json, json.contains("\"phasesMillis\": {},"));
+        Assert.assertTrue(json, json.contains("\"counters\": {},"));
+        Assert.assertTrue(json, json.contains("\"processes\": []\n}"));
+        Assert.assertTrue(metrics.summary(), metrics.summary().contains("processes [0], processes wall [0] ms"));
+    }
+
+    private static void assertMatches(String regex, String json) {
+        Assert.assertTrue(json, Pattern.compile(regex).matcher(json).find());
+    }
+
+    private static Shellcheck.Result result(int exitCode) {
+        return new Shellcheck.Result(exitCode, Paths.get("stdout"), Paths.get("stderr"));
+    }
+}
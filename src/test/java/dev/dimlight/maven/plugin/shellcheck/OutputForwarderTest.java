@@ -0,0 +1,68 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class OutputForwarderTest {
+
+    @Test
+    public void forwardsStderrWhateverTheSizeOfTheReport() throws IOException {
+        final List<String> warnings = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
+        final OutputForwarder forwarder = new OutputForwarder(new SystemStreamLog() {
+            @Override
+            public void warn(CharSequence content) {
+                warnings.add(content.toString());
+            }
+
+            @Override
+            public void error(CharSequence content) {
+                errors.add(content.toString());
+            }
+        }, 2, true);
+
+        try (OutputStream out = forwarder.forwardingStdout(new ByteArrayOutputStream());
+             OutputStream err = forwarder.forwardingStderr(new ByteArrayOutputStream())) {
+            out.write("one\ntwo\nthree\nfour\n".getBytes(StandardCharsets.UTF_8));
+            err.write("bad option\nunreadable file\nmore\n".getBytes(StandardCharsets.UTF_8));
+        }
+        forwarder.finish(Paths.get("stdout"), Paths.get("stderr"));
+
+        Assert.assertEquals(Arrays.asList("bad option", "unreadable file"), errors);
+        Assert.assertEquals(Arrays.asList("one", "two"), warnings.subList(0, 2));
+        Assert.assertEquals(3, warnings.size());
+        Assert.assertTrue(warnings.get(2), warnings.get(2).startsWith("[3] more lines"));
+    }
+}
@@ -0,0 +1,81 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class OutputMergerTest {
+
+    @Test
+    public void concatenatesLineBasedOutputs() throws IOException {
+        Assert.assertEquals("a.sh:1:1: one\nb.sh:1:1: two\n", merge(Arrays.asList("-f", "gcc"),
+                "a.sh:1:1: one\n", "b.sh:1:1: two\n"));
+        Assert.assertEquals("\nIn a.sh line 1:\n\nIn b.sh line 1:\n", merge(Collections.emptyList(),
+                "\nIn a.sh line 1:\n", "\nIn b.sh line 1:\n"));
+    }
+
+    @Test
+    public void mergesJsonDocuments() throws IOException {
+        Assert.assertEquals("{\"comments\":[{\"file\":\"a.sh\"},{\"file\":\"b.sh\"},{\"file\":\"c.sh\"}]}",
+                merge(Collections.singletonList("--format=json1"),
+                        "{\"comments\":[{\"file\":\"a.sh\"}]}", "{\"comments\":[]}", "",
+                        "{\"comments\":[{\"file\":\"b.sh\"},{\"file\":\"c.sh\"}]}"));
+        Assert.assertEquals("[{\"file\":\"a.sh\"},{\"file\":\"b.sh\"}]\n",
+                merge(Collections.singletonList("-fjson"), "[{\"file\":\"a.sh\"}]\n", "[]\n", "[{\"file\":\"b.sh\"}]\n"));
+        Assert.assertEquals("{\"comments\":[]}", merge(Collections.singletonList("--format=json1"),
+                "{\"comments\":[]}", "{\"comments\":[]}"));
+    }
+
+    @Test
+    public void mergesCheckstyleDocuments() throws IOException {
+        final String head = "<?xml version='1.0' encoding='UTF-8'?>\n<checkstyle version='4.5'>";
+        final String single = head + "\n<file name='a.sh' ></file>\n</checkstyle>\n";
+        Assert.assertEquals(single, merge(Arrays.asList("-f", "checkstyle"), single));
+        Assert.assertEquals(head + "\n<file name='a.sh' ></file>\n<file name='b.sh' ></file>\n</checkstyle>\n",
+                merge(Arrays.asList("-f", "checkstyle"), single, head + "\n</checkstyle>\n",
+                        head + "\n<file name='b.sh' ></file>\n</checkstyle>\n"));
+    }
+
+    @Test
+    public void writesNothingWithoutDocuments() throws IOException {
+        Assert.assertEquals("", merge(Arrays.asList("-f", "checkstyle"), "", ""));
+    }
+
+    private static String merge(List<String> args, String... outputs) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final OutputMerger merger = new OutputMerger(args, out);
+        for (String output : outputs) {
+            merger.append(output.getBytes(StandardCharsets.UTF_8));
+        }
+        merger.finish();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,260 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+public class ParallelShellcheckTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void bisectionIsolatesTheSlowScript() throws IOException, InterruptedException {
+        final Architecture arch = Architecture.detect();
+        Assume.assumeTrue(arch.isUnixLike() && arch != Architecture.unsupported);
+
+        // a fake shellcheck printing its args, but hanging on scripts named "slow"
+        final Path binary = temporaryFolder.newFile("shellcheck").toPath();
+        Files.write(binary, ("#!/bin/sh\n"
+                + "for f in \"$@\"; do case \"$f\" in *slow*) exec sleep 30;; esac; done\n"
+                + "for f in \"$@\"; do echo \"$f\"; done\n").getBytes(StandardCharsets.UTF_8));
+        arch.makeExecutable(binary);
+
+        final List<Path> scripts = new ArrayList<>();
+        for (String name : new String[]{"a.sh", "b.sh", "slow.sh", "c.sh", "d.sh"}) {
+            scripts.add(temporaryFolder.newFile(name).toPath());
+        }
+
+        final Shellcheck.Result result = ParallelShellcheck.runBisecting(binary, Collections.emptyList(),
+                temporaryFolder.getRoot().toPath().resolve("out"), temporaryFolder.getRoot().toPath().resolve("err"),
+                scripts, Optional.of(Duration.ofSeconds(1)));
+
+        Assert.assertEquals(Collections.singletonList(scripts.get(2)), result.timedOut);
+        final List<String> checked = new ArrayList<>();
+        for (Path script : scripts) {
+            if (!script.equals(scripts.get(2))) {
+                checked.add(script.toFile().getAbsolutePath());
+            }
+        }
+        Assert.assertEquals(checked, Files.readAllLines(result.stdout, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void balanceSplitsContiguousShardsOfSimilarCost() {
+        final Map<Path, Long> costs = new HashMap<>();
+        final List<Path> scripts = new ArrayList<>();
+        // two big installers among small scripts, equal-count sharding would make a shard of 110 and one of 40
+        for (long cost : new long[]{50, 40, 10, 10, 10, 10, 10, 10}) {
+            final Path script = Paths.get("script" + scripts.size() + ".sh");
+            costs.put(script, cost);
+            scripts.add(script);
+        }
+
+        final List<List<Path>> shards = ParallelShellcheck.balance(scripts, 2, costs::get);
+
+        Assert.assertEquals(Arrays.asList(scripts.subList(0, 2), scripts.subList(2, 8)), shards);
+    }
+
+    @Test
+    public void balanceIsolatesTheExpensiveScriptsSoThatWorkersEndTogether() {
+        final Map<Path, Long> costs = new HashMap<>();
+        final List<Path> scripts = new ArrayList<>();
+        // two big scripts first: two contiguous shards, one per worker, would cost 11 and 9 at best
+        for (long cost : new long[]{5, 5, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1}) {
+            final Path script = Paths.get("script" + scripts.size() + ".sh");
+            costs.put(script, cost);
+            scripts.add(script);
+        }
+
+        final List<List<Path>> shards = ParallelShellcheck.balance(scripts, ParallelShellcheck.maxShards(2), costs::get);
+
+        Assert.assertEquals(Collections.singletonList(scripts.get(0)), shards.get(0));
+        Assert.assertEquals(Collections.singletonList(scripts.get(1)), shards.get(1));
+        Assert.assertEquals(scripts, shards.stream().flatMap(List::stream).collect(Collectors.toList()));
+        // two workers taking the most expensive queued shard when idle
+        final List<Long> shardCosts = shards.stream()
+                .map(shard -> shard.stream().mapToLong(costs::get).sum())
+                .sorted(Comparator.reverseOrder())
+                .collect(Collectors.toList());
+        final long[] workers = new long[2];
+        for (long cost : shardCosts) {
+            final int idle = workers[0] <= workers[1] ? 0 : 1;
+            workers[idle] += cost;
+        }
+        Assert.assertEquals(10, Math.max(workers[0], workers[1]));
+        Assert.assertEquals(1, ParallelShellcheck.maxShards(1));
+    }
+
+    @Test
+    public void mergesOutputsInScriptOrderWhateverTheCosts() throws IOException, InterruptedException {
+        final Architecture arch = Architecture.detect();
+        Assume.assumeTrue(arch.isUnixLike() && arch != Architecture.unsupported);
+        final Path binary = temporaryFolder.newFile("shellcheck").toPath();
+        // a fake shellcheck printing its args
+        Files.write(binary, "#!/bin/sh\nfor f in \"$@\"; do echo \"$f\"; done\n".getBytes(StandardCharsets.UTF_8));
+        arch.makeExecutable(binary);
+
+        // the last scripts are the most expensive, so their shards are started first
+        final List<Path> scripts = new ArrayList<>();
+        final List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            final Path script = temporaryFolder.newFile("script" + i + ".sh").toPath();
+            Files.write(script, new byte[i * i * 100]);
+            scripts.add(script);
+            expected.add(script.toFile().getAbsolutePath());
+        }
+
+        final List<List<Path>> completed = Collections.synchronizedList(new ArrayList<>());
+        final Shellcheck.Result result = ParallelShellcheck.run(binary, Collections.emptyList(),
+                temporaryFolder.newFolder("out").toPath(), scripts, new ProcessScheduler(3),
+                new CommandLineBatcher(arch, arch.commandLineLengthLimit()),
+                new CostHistory(temporaryFolder.getRoot().toPath().resolve("costs.txt")), Optional.empty(),
+                (shard, shardResult, wallNanos) -> completed.add(shard), new OutputForwarder(new SystemStreamLog(), 0, true));
+
+        Assert.assertEquals(9, completed.size());
+        Assert.assertEquals(expected, Files.readAllLines(result.stdout, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void balanceNeverMakesEmptyShards() {
+        final List<Path> scripts = Arrays.asList(Paths.get("a.sh"), Paths.get("b.sh"), Paths.get("c.sh"));
+        final List<List<Path>> shards = ParallelShellcheck.balance(scripts, 8, script -> 0L);
+        Assert.assertEquals(3, shards.size());
+        shards.forEach(shard -> Assert.assertEquals(1, shard.size()));
+    }
+
+    @Test
+    public void balanceSplitsScriptsOfTheSameCostEvenly() {
+        final List<Path> scripts = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            scripts.add(Paths.get("script" + i + ".sh"));
+        }
+
+        final List<List<Path>> shards = ParallelShellcheck.balance(scripts, 3, script -> 1L);
+
+        Assert.assertEquals(Arrays.asList(scripts.subList(0, 3), scripts.subList(3, 7), scripts.subList(7, 10)), shards);
+        Assert.assertEquals(Collections.singletonList(scripts), ParallelShellcheck.balance(scripts, 1, script -> 1L));
+    }
+
+    @Test
+    public void mergesTheHighestExitCodeAndConcatenatesOutputs() throws IOException, InterruptedException {
+        final Architecture arch = Architecture.detect();
+        Assume.assumeTrue(arch.isUnixLike() && arch != Architecture.unsupported);
+        // a fake shellcheck echoing its args to stdout and stderr, exiting with the highest code in the file names
+        final Path binary = temporaryFolder.newFile("shellcheck").toPath();
+        Files.write(binary, ("#!/bin/sh\n"
+                + "code=0\n"
+                + "for f in \"$@\"; do echo \"$f\"; echo \"err $f\" >&2; c=${f##*-}; c=${c%.sh}; [ \"$c\" -gt \"$code\" ] && code=$c; done\n"
+                + "exit $code\n").getBytes(StandardCharsets.UTF_8));
+        arch.makeExecutable(binary);
+
+        final List<Path> scripts = new ArrayList<>();
+        final List<String> expectedStdout = new ArrayList<>();
+        final List<String> expectedStderr = new ArrayList<>();
+        for (String name : new String[]{"a-0.sh", "b-1.sh", "c-0.sh", "d-3.sh", "e-0.sh", "f-1.sh"}) {
+            final Path script = temporaryFolder.newFile(name).toPath();
+            scripts.add(script);
+            expectedStdout.add(script.toFile().getAbsolutePath());
+            expectedStderr.add("err " + script.toFile().getAbsolutePath());
+        }
+
+        final List<List<Path>> shards = Collections.synchronizedList(new ArrayList<>());
+        final Shellcheck.Result result = ParallelShellcheck.run(binary, Collections.emptyList(),
+                temporaryFolder.newFolder("out").toPath(), scripts, new ProcessScheduler(3),
+                new CommandLineBatcher(arch, arch.commandLineLengthLimit()),
+                new CostHistory(temporaryFolder.getRoot().toPath().resolve("costs.txt")), Optional.empty(),
+                (shard, shardResult, wallNanos) -> shards.add(shard), new OutputForwarder(new SystemStreamLog(), 0, true));
+
+        Assert.assertEquals(6, shards.size());
+        Assert.assertEquals(3, result.exitCode);
+        Assert.assertEquals(expectedStdout, Files.readAllLines(result.stdout, StandardCharsets.UTF_8));
+        Assert.assertEquals(expectedStderr, Files.readAllLines(result.stderr, StandardCharsets.UTF_8));
+        Assert.assertTrue(result.timedOut.isEmpty());
+    }
+
+    @Test
+    public void mergesCheckstyleOutputsInASingleDocument() throws Exception {
+        final Architecture arch = Architecture.detect();
+        Assume.assumeTrue(arch.isUnixLike() && arch != Architecture.unsupported);
+        // a fake shellcheck writing a checkstyle report with an error for each script
+        final Path binary = temporaryFolder.newFile("shellcheck").toPath();
+        Files.write(binary, ("#!/bin/sh\n"
+                + "echo \"<?xml version='1.0' encoding='UTF-8'?>\"\n"
+                + "echo \"<checkstyle version='4.5'>\"\n"
+                + "for f in \"$@\"; do case \"$f\" in *.sh) echo \"<file name='$f' >"
+                + "<error line='1' column='1' severity='warning' message='m' source='ShellCheck.SC2034' /></file>\";; esac; done\n"
+                + "echo \"</checkstyle>\"\n"
+                + "exit 1\n").getBytes(StandardCharsets.UTF_8));
+        arch.makeExecutable(binary);
+
+        final List<Path> scripts = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            scripts.add(temporaryFolder.newFile("script" + i + ".sh").toPath());
+        }
+
+        final List<List<Path>> shards = Collections.synchronizedList(new ArrayList<>());
+        final Shellcheck.Result result = ParallelShellcheck.run(binary, Arrays.asList("-f", "checkstyle"),
+                temporaryFolder.newFolder("out").toPath(), scripts, new ProcessScheduler(3),
+                new CommandLineBatcher(arch, arch.commandLineLengthLimit()),
+                new CostHistory(temporaryFolder.getRoot().toPath().resolve("costs.txt")), Optional.empty(),
+                (shard, shardResult, wallNanos) -> shards.add(shard), new OutputForwarder(new SystemStreamLog(), 0, true));
+
+        Assert.assertTrue(shards.size() > 1);
+        Assert.assertEquals(1, result.exitCode);
+        final Document report = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(result.stdout.toFile());
+        Assert.assertEquals("checkstyle", report.getDocumentElement().getTagName());
+        final NodeList files = report.getElementsByTagName("file");
+        Assert.assertEquals(scripts.size(), files.getLength());
+        for (int i = 0; i < scripts.size(); i++) {
+            Assert.assertEquals(scripts.get(i).toFile().getAbsolutePath(),
+                    ((Element) files.item(i)).getAttribute("name"));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ProcessSchedulerTest {
+
+    @Test
+    public void isSharedBySession() {
+        final DefaultRepositorySystemSession session = new DefaultRepositorySystemSession();
+        final ProcessScheduler scheduler = ProcessScheduler.forSession(session, 2);
+        Assert.assertSame(scheduler, ProcessScheduler.forSession(session, 8));
+        Assert.assertEquals(2, scheduler.getParallelism());
+        Assert.assertNotSame(scheduler, ProcessScheduler.forSession(new DefaultRepositorySystemSession(), 2));
+    }
+
+    @Test(timeout = 60_000)
+    public void boundsConcurrentTasks() throws Exception {
+        final ProcessScheduler scheduler = new ProcessScheduler(3);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        // as if many modules, each with its own pool, submitted at once
+        final ExecutorService executor = Executors.newFixedThreadPool(12);
+        try {
+            final List<Future<Integer>> tasks = new ArrayList<>();
+            for (int i = 0; i < 48; i++) {
+                tasks.add(executor.submit(() -> scheduler.run(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.sleep(5);
+                    return running.decrementAndGet();
+                })));
+            }
+            for (Future<Integer> task : tasks) {
+                task.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(3, maxRunning.get());
+    }
+}
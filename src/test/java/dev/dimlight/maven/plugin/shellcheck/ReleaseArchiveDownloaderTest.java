@@ -0,0 +1,273 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.settings.Proxy;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Authenticator;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.PasswordAuthentication;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+public class ReleaseArchiveDownloaderTest {
+
+    private static final byte[] BINARY = "#!/bin/sh\necho shellcheck\n".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final Log log = new SystemStreamLog();
+    private final ReleaseArchiveDownloader downloader = new ReleaseArchiveDownloader(Optional.empty(), log);
+
+    @Test
+    public void extractsOnlyTheBinaryFromTarXz() throws IOException {
+        final Path archive = tarXz("shellcheck-v0.7.2.linux.x86_64.tar.xz");
+        final Path binary = temporaryFolder.getRoot().toPath().resolve("bin").resolve("shellcheck");
+
+        downloader.download(archive.toUri().toURL(), Optional.of(Digests.sha256(archive)), Architecture.Linux_x86_64, binary);
+
+        Assert.assertArrayEquals(BINARY, Files.readAllBytes(binary));
+        Assert.assertTrue(Files.isExecutable(binary));
+        try (final Stream<Path> files = Files.list(binary.getParent())) {
+            Assert.assertEquals("only the binary is written", 1, files.count());
+        }
+    }
+
+    @Test
+    public void findsTheWindowsBinaryInZip() throws IOException {
+        final Path archive = temporaryFolder.getRoot().toPath().resolve("shellcheck-v0.7.2.zip");
+        try (final ArchiveOutputStream zip = new ZipArchiveOutputStream(Files.newOutputStream(archive))) {
+            addEntry(zip, new ZipArchiveEntry("README.txt"), "readme".getBytes(StandardCharsets.UTF_8));
+            addEntry(zip, new ZipArchiveEntry("shellcheck-v0.7.2.exe"), BINARY);
+        }
+
+        try (final InputStream in = downloader.openBinary(archive.toUri().toURL(), Optional.empty(), Architecture.Windows_x86)) {
+            Assert.assertArrayEquals(BINARY, readAll(in));
+        }
+    }
+
+    @Test
+    public void failsOnChecksumMismatch() throws IOException {
+        final Path archive = tarXz("shellcheck.tar.xz");
+        final Path binary = temporaryFolder.getRoot().toPath().resolve("bin").resolve("shellcheck");
+
+        try {
+            downloader.download(archive.toUri().toURL(), Optional.of(Digests.hex(new byte[32])), Architecture.Linux_x86_64, binary);
+            Assert.fail("a checksum mismatch must fail the download");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("sha-256"));
+        }
+        Assert.assertFalse(Files.exists(binary));
+    }
+
+    @Test
+    public void downloadsOverHttp() throws IOException {
+        final byte[] archive = Files.readAllBytes(tarXz("shellcheck.tar.xz"));
+        final HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            final boolean found = exchange.getRequestURI().getPath().equals("/shellcheck.tar.xz");
+            exchange.sendResponseHeaders(found ? 200 : 404, found ? archive.length : -1);
+            if (found) {
+                try (final OutputStream out = exchange.getResponseBody()) {
+                    out.write(archive);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+        try {
+            final String base = "http://127.0.0.1:" + server.getAddress().getPort();
+            try (final InputStream in = downloader.openBinary(new URL(base + "/shellcheck.tar.xz"), Optional.empty(), Architecture.Linux_x86_64)) {
+                Assert.assertArrayEquals(BINARY, readAll(in));
+            }
+            try {
+                downloader.openBinary(new URL(base + "/missing.tar.xz"), Optional.empty(), Architecture.Linux_x86_64).close();
+                Assert.fail("a missing archive must fail the download");
+            } catch (IOException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().contains("404"));
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void downloadsThroughTheProxyWithItsCredentials() throws IOException {
+        final byte[] archive = Files.readAllBytes(tarXz("shellcheck.tar.xz"));
+        final List<String> requests = new ArrayList<>();
+        // plain http proxies get the absolute url of the request
+        final HttpServer proxyServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        proxyServer.createContext("/", exchange -> {
+            requests.add(exchange.getRequestURI() + " " + exchange.getRequestHeaders().getFirst("Proxy-Authorization"));
+            exchange.sendResponseHeaders(200, archive.length);
+            try (final OutputStream out = exchange.getResponseBody()) {
+                out.write(archive);
+            }
+            exchange.close();
+        });
+        proxyServer.start();
+        try {
+            final Proxy proxy = new Proxy();
+            proxy.setHost("127.0.0.1");
+            proxy.setPort(proxyServer.getAddress().getPort());
+            proxy.setUsername("user");
+            proxy.setPassword("secret");
+            proxy.setNonProxyHosts("*.internal");
+            final ReleaseArchiveDownloader proxied = new ReleaseArchiveDownloader(Optional.of(proxy), log);
+
+            try (final InputStream in = proxied.openBinary(new URL("http://releases.invalid/shellcheck.tar.xz"),
+                    Optional.empty(), Architecture.Linux_x86_64)) {
+                Assert.assertArrayEquals(BINARY, readAll(in));
+            }
+            final String credentials = Base64.getEncoder().encodeToString("user:secret".getBytes(StandardCharsets.UTF_8));
+            Assert.assertEquals(1, requests.size());
+            Assert.assertEquals("http://releases.invalid/shellcheck.tar.xz Basic " + credentials, requests.get(0));
+
+            Assert.assertTrue(ReleaseArchiveDownloader.isNonProxyHost(proxy, "mirror.internal"));
+            Assert.assertFalse(ReleaseArchiveDownloader.isNonProxyHost(proxy, "releases.invalid"));
+        } finally {
+            proxyServer.stop(0);
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void explainsHowToEnableBasicAuthenticationOfHttpsTunnels() throws Exception {
+        // a proxy refusing every https tunnel without asking credentials the jvm would send
+        final List<String> requests = new ArrayList<>();
+        try (final ServerSocket proxyServer = new ServerSocket(0, 0, InetAddress.getLoopbackAddress())) {
+            final Thread proxyThread = new Thread(() -> {
+                try (final Socket socket = proxyServer.accept()) {
+                    final BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                            StandardCharsets.ISO_8859_1));
+                    requests.add(reader.readLine());
+                    socket.getOutputStream().write(("HTTP/1.1 407 Proxy Authentication Required\r\n"
+                            + "Proxy-Authenticate: Basic realm=\"proxy\"\r\nContent-Length: 0\r\n\r\n")
+                            .getBytes(StandardCharsets.ISO_8859_1));
+                } catch (IOException e) {
+                    // the test fails on the missing request
+                }
+            });
+            proxyThread.start();
+            final Proxy proxy = new Proxy();
+            proxy.setHost("127.0.0.1");
+            proxy.setPort(proxyServer.getLocalPort());
+            proxy.setUsername("user");
+            proxy.setPassword("secret");
+            final ReleaseArchiveDownloader proxied = new ReleaseArchiveDownloader(Optional.of(proxy), log);
+
+            try {
+                proxied.openBinary(new URL("https://releases.invalid/shellcheck.tar.xz"), Optional.empty(),
+                        Architecture.Linux_x86_64).close();
+                Assert.fail("the proxy refuses the tunnel");
+            } catch (IOException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().contains("-Djdk.http.auth.tunneling.disabledSchemes="));
+            }
+            proxyThread.join();
+            Assert.assertEquals(Collections.singletonList("CONNECT releases.invalid:443 HTTP/1.1"), requests);
+        }
+    }
+
+    @Test
+    public void answersTheCredentialsToTheProxyOnly() {
+        final Proxy proxy = new Proxy();
+        proxy.setHost("proxy.example");
+        proxy.setPort(3128);
+        proxy.setUsername("user");
+        proxy.setPassword("secret");
+        final ReleaseArchiveDownloader.ProxyAuthenticator authenticator = new ReleaseArchiveDownloader.ProxyAuthenticator(proxy);
+
+        final Optional<PasswordAuthentication> credentials = authenticator.credentialsFor(
+                Authenticator.RequestorType.PROXY, "PROXY.example", 3128);
+        Assert.assertEquals("user", credentials.map(PasswordAuthentication::getUserName).orElse(null));
+        Assert.assertEquals("secret", new String(credentials.get().getPassword()));
+        Assert.assertFalse(authenticator.credentialsFor(Authenticator.RequestorType.SERVER, "proxy.example", 3128)
+                .isPresent());
+        Assert.assertFalse(authenticator.credentialsFor(Authenticator.RequestorType.PROXY, "other.example", 3128)
+                .isPresent());
+        Assert.assertFalse(authenticator.credentialsFor(Authenticator.RequestorType.PROXY, "proxy.example", 8080)
+                .isPresent());
+    }
+
+    private Path tarXz(String name) throws IOException {
+        final Path archive = temporaryFolder.getRoot().toPath().resolve(name);
+        try (final ArchiveOutputStream tar = new TarArchiveOutputStream(new XZCompressorOutputStream(Files.newOutputStream(archive)))) {
+            tar.putArchiveEntry(new TarArchiveEntry("shellcheck-v0.7.2/"));
+            tar.closeArchiveEntry();
+            addEntry(tar, new TarArchiveEntry("shellcheck-v0.7.2/README.txt"), "readme".getBytes(StandardCharsets.UTF_8));
+            addEntry(tar, new TarArchiveEntry("shellcheck-v0.7.2/shellcheck"), BINARY);
+            addEntry(tar, new TarArchiveEntry("shellcheck-v0.7.2/LICENSE.txt"), new byte[100_000]);
+        }
+        return archive;
+    }
+
+    private static void addEntry(ArchiveOutputStream archive, ArchiveEntry entry, byte[] content) throws IOException {
+        if (entry instanceof TarArchiveEntry) {
+            ((TarArchiveEntry) entry).setSize(content.length);
+        }
+        archive.putArchiveEntry(entry);
+        archive.write(content);
+        archive.closeArchiveEntry();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,91 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+public class ResultCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void putThenGet() throws IOException {
+        final ResultCache cache = new ResultCache(temporaryFolder.getRoot().toPath());
+        final String key = Digests.hex(new byte[]{1, 2, 3, 4});
+
+        Assert.assertFalse(cache.get(key).isPresent());
+
+        cache.put(key, new ResultCache.Entry(1, bytes("out"), bytes("err")));
+
+        final Optional<ResultCache.Entry> entry = cache.get(key);
+        Assert.assertTrue(entry.isPresent());
+        Assert.assertEquals(1, entry.get().exitCode);
+        Assert.assertEquals("out", new String(entry.get().stdout, StandardCharsets.UTF_8));
+        Assert.assertEquals("err", new String(entry.get().stderr, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws IOException {
+        final Path root = temporaryFolder.getRoot().toPath();
+        final ResultCache cache = new ResultCache(root, 1000);
+        final byte[] payload = new byte[180];
+
+        for (int i = 0; i < 10; i++) {
+            final String key = key(i);
+            cache.put(key, new ResultCache.Entry(0, payload, new byte[0]));
+            // older keys have been used less recently
+            Files.setLastModifiedTime(root.resolve(key.substring(0, 2)).resolve(key), FileTime.fromMillis(i * 1000L));
+        }
+        // a lookup refreshes an entry
+        Assert.assertTrue(cache.get(key(0)).isPresent());
+
+        cache.evictIfNeeded();
+
+        Assert.assertTrue(cache.get(key(0)).isPresent());
+        Assert.assertFalse(cache.get(key(1)).isPresent());
+        Assert.assertTrue(cache.get(key(9)).isPresent());
+        try (final Stream<Path> files = Files.walk(root)) {
+            Assert.assertTrue(files.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum() <= 800);
+        }
+    }
+
+    private static String key(int i) {
+        return Digests.hex(new byte[]{(byte) i, 42});
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
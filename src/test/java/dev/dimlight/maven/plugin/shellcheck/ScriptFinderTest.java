@@ -0,0 +1,149 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.shared.model.fileset.util.FileSetManager;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class ScriptFinderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void findsTheSameFilesAsTheFileSetManager() throws IOException {
+        final Path root = temporaryFolder.getRoot().toPath();
+        for (String file : Arrays.asList(
+                "top.sh", "top.bash", "README.md",
+                "a/one.sh", "a/b/two.sh", "a/b/c/three.sh", "a/b/c/notes.txt",
+                "a/generated/gen.sh", "a/generated/deep/gen2.sh",
+                ".git/hooks/pre-commit.sh", "a/.svn/x.sh", "a/b/.DS_Store",
+                "vendor/lib.sh", "vendor/keep/kept.sh", "skip/x.sh", "Upper/CASE.SH")) {
+            final Path path = root.resolve(file);
+            Files.createDirectories(path.getParent());
+            Files.write(path, new byte[0]);
+        }
+        Files.createDirectories(root.resolve("empty/dir"));
+        Assume.assumeTrue(Architecture.detect().isUnixLike());
+        Files.createSymbolicLink(root.resolve("linked"), root.resolve("a"));
+        Files.createSymbolicLink(root.resolve("link.sh"), root.resolve("top.sh"));
+
+        assertSameAsFileSetManager(sourceDir(root, Collections.singletonList("**/*.sh"), Collections.emptyList()));
+        assertSameAsFileSetManager(sourceDir(root, Collections.emptyList(), Collections.emptyList()));
+        assertSameAsFileSetManager(sourceDir(root, Arrays.asList("*.sh", "a/b/**", "vendor/"),
+                Arrays.asList("**/generated/**", "vendor/*.sh", "a/b/c/")));
+        assertSameAsFileSetManager(sourceDir(root, Arrays.asList("**/*.sh", "**/*.SH"),
+                Arrays.asList("skip/**", "%regex[.*two\\.sh]")));
+        assertSameAsFileSetManager(sourceDir(root, Collections.singletonList("a/**/*.sh"), Collections.emptyList()));
+
+        final SourceDir withoutDefaultExcludes = sourceDir(root, Collections.singletonList("**/*.sh"),
+                Collections.emptyList());
+        withoutDefaultExcludes.setUseDefaultExcludes(false);
+        assertSameAsFileSetManager(withoutDefaultExcludes);
+    }
+
+    @Test
+    public void followsSymbolicLinksOnlyIfConfigured() throws IOException {
+        Assume.assumeTrue(Architecture.detect().isUnixLike());
+        final Path root = temporaryFolder.newFolder("root").toPath();
+        final Path target = temporaryFolder.newFolder("target").toPath();
+        Files.write(target.resolve("linked.sh"), new byte[0]);
+        Files.createSymbolicLink(root.resolve("dir"), target);
+        Files.createSymbolicLink(target.resolve("cycle"), root);
+
+        final SourceDir sourceDir = sourceDir(root, Collections.singletonList("**/*.sh"), Collections.emptyList());
+        assertSameAsFileSetManager(sourceDir);
+
+        sourceDir.setFollowSymlinks(true);
+        Assert.assertEquals(Collections.singletonList(root.resolve("dir").resolve("linked.sh")),
+                ScriptFinder.find(Collections.singletonList(sourceDir), new SystemStreamLog()));
+    }
+
+    @Test
+    public void missingSourceDirHasNoFiles() {
+        final Path missing = temporaryFolder.getRoot().toPath().resolve("missing");
+        Assert.assertEquals(Collections.emptyList(), ScriptFinder.find(
+                Collections.singletonList(sourceDir(missing, Collections.emptyList(), Collections.emptyList())),
+                new SystemStreamLog()));
+    }
+
+    @Test
+    public void filtersPathsWithThePatternsOfTheSourceDir() throws IOException {
+        final Path root = temporaryFolder.getRoot().toPath().toRealPath();
+        final SourceDir sourceDir = sourceDir(root, Collections.singletonList("**/*.sh"),
+                Collections.singletonList("vendor/**"));
+
+        final ScriptFinder.Filter filter = ScriptFinder.filter(sourceDir, false);
+        Assert.assertTrue(filter.mayBeIncluded(root.resolve("a/b/deleted.sh")));
+        Assert.assertFalse(filter.mayBeIncluded(root.resolve("a/README.md")));
+        Assert.assertFalse(filter.mayBeIncluded(root.resolve("a/run")));
+        Assert.assertFalse(filter.mayBeIncluded(root.resolve("vendor/lib.sh")));
+        Assert.assertFalse(filter.mayBeIncluded(root.resolveSibling("outside.sh")));
+        Assert.assertTrue(filter.mustWalk(root));
+        Assert.assertTrue(filter.mustWalk(root.resolve("a/b")));
+        Assert.assertFalse(filter.mustWalk(root.resolve("vendor")));
+        Assert.assertFalse(filter.mustWalk(root.resolve(".git")));
+        Assert.assertFalse(filter.mustWalk(root.getParent()));
+
+        final ScriptFinder.Filter sniffing = ScriptFinder.filter(sourceDir, true);
+        Assert.assertTrue(sniffing.mayBeIncluded(root.resolve("a/run")));
+        Assert.assertFalse(sniffing.mayBeIncluded(root.resolve("a/README.md")));
+        Assert.assertFalse(sniffing.mayBeIncluded(root.resolve("vendor/run")));
+    }
+
+    private static SourceDir sourceDir(Path directory, List<String> includes, List<String> excludes) {
+        final SourceDir sourceDir = new SourceDir();
+        sourceDir.setDirectory(directory.toString());
+        includes.forEach(sourceDir::addInclude);
+        excludes.forEach(sourceDir::addExclude);
+        return sourceDir;
+    }
+
+    private static void assertSameAsFileSetManager(SourceDir sourceDir) {
+        final Set<Path> expected = new TreeSet<>();
+        for (String includedFile : new FileSetManager(new SystemStreamLog(), false).getIncludedFiles(sourceDir)) {
+            expected.add(Paths.get(sourceDir.getDirectory(), includedFile));
+        }
+
+        final List<Path> found = ScriptFinder.find(Collections.singletonList(sourceDir), new SystemStreamLog());
+
+        Assert.assertEquals("includes " + sourceDir.getIncludes() + " excludes " + sourceDir.getExcludes(),
+                expected, new TreeSet<>(found));
+        Assert.assertEquals("no duplicates", expected.size(), found.size());
+    }
+}
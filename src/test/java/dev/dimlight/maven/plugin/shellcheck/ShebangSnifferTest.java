@@ -0,0 +1,113 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+public class ShebangSnifferTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void recognizesShellShebangsAndDirectives() {
+        for (String script : Arrays.asList(
+                "#!/bin/sh\necho",
+                "#!/bin/bash -e\necho",
+                "#! /usr/bin/dash\n",
+                "#!/usr/bin/env ksh",
+                "#!/usr/bin/env -S LC_ALL=C bash -eu\r\necho",
+                "#!/some/custom/interpreter\n# shellcheck shell=bash\n",
+                "# comment\n# shellcheck disable=SC2086 shell=sh\necho")) {
+            Assert.assertTrue(script, isShellScript(script));
+        }
+        for (String notScript : Arrays.asList(
+                "#!/usr/bin/env python3\nprint()",
+                "#!/bin/zsh\n",
+                "#!/usr/bin/perl\n# shellcheck shell=zsh\n",
+                "just text",
+                "",
+                "#!/bin/sh\n\0binary")) {
+            Assert.assertFalse(notScript, isShellScript(notScript));
+        }
+    }
+
+    @Test
+    public void findsExtensionLessScriptsAndCachesVerdicts() throws IOException {
+        final Path root = temporaryFolder.newFolder("root").toPath();
+        Files.createDirectories(root.resolve("bin"));
+        Files.write(root.resolve("a.sh"), "echo".getBytes(StandardCharsets.UTF_8));
+        Files.write(root.resolve("bin/tool"), "#!/bin/bash\necho".getBytes(StandardCharsets.UTF_8));
+        Files.write(root.resolve("bin/other"), "#!/usr/bin/env python\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(root.resolve("bin/tool.py"), "#!/bin/sh\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(root.resolve("bin/excluded"), "#!/bin/sh\n".getBytes(StandardCharsets.UTF_8));
+        final SourceDir sourceDir = new SourceDir();
+        sourceDir.setDirectory(root.toString());
+        sourceDir.addInclude("*.sh");
+        sourceDir.addExclude("**/excluded");
+        final Path cacheFile = temporaryFolder.getRoot().toPath().resolve("cache").resolve("shebangs.txt");
+
+        final ShebangSniffer sniffer = new ShebangSniffer(cacheFile);
+        final List<Path> expected = Arrays.asList(root.resolve("a.sh"), root.resolve("bin/tool"));
+        Assert.assertEquals(expected, find(sourceDir, sniffer));
+        Assert.assertEquals(0, sniffer.getHits());
+        Assert.assertEquals(2, sniffer.getMisses());
+        sniffer.save();
+
+        final ShebangSniffer cachedSniffer = new ShebangSniffer(cacheFile);
+        Assert.assertEquals(expected, find(sourceDir, cachedSniffer));
+        Assert.assertEquals(2, cachedSniffer.getHits());
+        Assert.assertEquals(0, cachedSniffer.getMisses());
+
+        // a touched file is sniffed again
+        Files.write(root.resolve("bin/other"), "#!/bin/sh\n".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(root.resolve("bin/other"), FileTime.fromMillis(0));
+        final ShebangSniffer touchedSniffer = new ShebangSniffer(cacheFile);
+        Assert.assertEquals(Arrays.asList(root.resolve("a.sh"), root.resolve("bin/other"), root.resolve("bin/tool")),
+                find(sourceDir, touchedSniffer));
+        Assert.assertEquals(1, touchedSniffer.getMisses());
+    }
+
+    private static boolean isShellScript(String head) {
+        final byte[] bytes = head.getBytes(StandardCharsets.ISO_8859_1);
+        return ShebangSniffer.isShellScript(bytes, bytes.length);
+    }
+
+    private static List<Path> find(SourceDir sourceDir, ShebangSniffer sniffer) {
+        return ScriptFinder.find(Collections.singletonList(sourceDir), Optional.of(sniffer), new SystemStreamLog());
+    }
+}
@@ -0,0 +1,145 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+public class SourceGraphTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void followsSourceCommandsAndDirectives() throws IOException {
+        final Path root = temporaryFolder.getRoot().toPath().toRealPath();
+        final Path base = write(root.resolve("lib/base.sh"), "echo base");
+        final Path common = write(root.resolve("lib/common.sh"), "source base.sh");
+        final Path a = write(root.resolve("a.sh"), "#!/bin/bash\nset -e; . \"lib/common.sh\"\necho a");
+        final Path b = write(root.resolve("b.sh"), "#!/bin/bash\n"
+                + "# shellcheck source=lib/base.sh\n"
+                + "source \"$(dirname \"$0\")/lib/base.sh\"\n"
+                + "if true; then source '/dev/null'; fi\n"
+                + "source \"$DYNAMIC\"\n");
+        final Path c = write(root.resolve("c.sh"), "# source lib/common.sh\necho \"source lib/base.sh\" | cat");
+        final Path loop = write(root.resolve("lib/loop.sh"), ". loop.sh");
+
+        final SourceGraph graph = SourceGraph.scan(Arrays.asList(a, b, c, loop), Collections.emptyList());
+
+        Assert.assertEquals(Collections.singleton(common), graph.dependencies(a));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(common, base)), graph.transitiveDependencies(a));
+        Assert.assertEquals(Collections.singleton(base), graph.transitiveDependencies(b));
+        Assert.assertEquals(Collections.emptySet(), graph.transitiveDependencies(c));
+        Assert.assertEquals(Collections.emptySet(), graph.transitiveDependencies(loop));
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList(a, b, common)),
+                graph.transitiveDependents(Collections.singletonList(base)));
+        Assert.assertEquals(Collections.singleton(a), graph.transitiveDependents(Collections.singletonList(common)));
+    }
+
+    @Test
+    public void resolvesAgainstSourcePaths() throws IOException {
+        final Path root = temporaryFolder.getRoot().toPath().toRealPath();
+        final Path lib = write(root.resolve("shared/lib.sh"), "echo lib");
+        final Path script = write(root.resolve("bin/script.sh"), "source lib.sh");
+        final Path directive = write(root.resolve("bin/directive.sh"),
+                "# shellcheck source-path=SCRIPTDIR/../shared\nsource lib.sh");
+
+        final List<Path> scripts = Arrays.asList(script, directive);
+        Assert.assertEquals(Collections.emptySet(),
+                SourceGraph.scan(scripts, Collections.emptyList()).transitiveDependencies(script));
+        Assert.assertEquals(Collections.singleton(lib),
+                SourceGraph.scan(scripts, Collections.emptyList()).transitiveDependencies(directive));
+        Assert.assertEquals(Collections.singleton(lib),
+                SourceGraph.scan(scripts, Arrays.asList("-x", "-P", root.resolve("shared").toString()))
+                        .transitiveDependencies(script));
+    }
+
+    @Test
+    public void splitsSourcePathsOnThePlatformSeparator() {
+        Assert.assertEquals(Arrays.asList("SCRIPTDIR", "lib", "/opt/lib"),
+                SourceGraph.sourcePaths(Arrays.asList("-P", "SCRIPTDIR:lib", "--source-path=/opt/lib"), ":"));
+        Assert.assertEquals(Arrays.asList("C:\\lib", "SCRIPTDIR\\..\\lib", "D:\\shared"),
+                SourceGraph.sourcePaths(Arrays.asList("-PC:\\lib;SCRIPTDIR\\..\\lib", "--source-path", "D:\\shared"), ";"));
+    }
+
+    @Test
+    public void scriptDirIsOnlyTheFirstComponentOfASourcePath() throws IOException {
+        final Path root = temporaryFolder.getRoot().toPath().toRealPath();
+        final Path lib = write(root.resolve("lib/SCRIPTDIR/lib.sh"), "echo lib");
+        final Path script = write(root.resolve("bin/script.sh"), "source lib.sh");
+
+        Assert.assertEquals(Collections.singleton(lib), SourceGraph.scan(Collections.singletonList(script),
+                Arrays.asList("-x", "-P", root.resolve("lib/SCRIPTDIR").toString())).transitiveDependencies(script));
+        Assert.assertEquals(Collections.singleton(lib), SourceGraph.scan(Collections.singletonList(script),
+                Arrays.asList("-x", "-P", "SCRIPTDIR/../lib/SCRIPTDIR")).transitiveDependencies(script));
+    }
+
+    @Test
+    public void rescansOnlyTheGivenFiles() throws IOException {
+        final Path root = temporaryFolder.getRoot().toPath().toRealPath();
+        final Path one = write(root.resolve("one.sh"), "echo one");
+        final Path two = write(root.resolve("two.sh"), "echo two");
+        final Path a = write(root.resolve("a.sh"), "source one.sh");
+        final Path b = write(root.resolve("b.sh"), "source one.sh");
+        final SourceGraph graph = SourceGraph.scan(Arrays.asList(a, b), Collections.emptyList());
+
+        write(a, "source two.sh");
+        write(b, "echo b");
+        final SourceGraph rescanned = graph.rescan(Collections.singletonList(a), Collections.emptyList());
+
+        Assert.assertEquals(Collections.singleton(two), rescanned.dependencies(a));
+        Assert.assertEquals(Collections.singleton(one), rescanned.dependencies(b));
+        Assert.assertEquals(Collections.singleton(b), rescanned.transitiveDependents(Collections.singletonList(one)));
+        Assert.assertEquals(Collections.singleton(one), graph.dependencies(a));
+
+        Files.delete(a);
+        Assert.assertEquals(Collections.emptySet(),
+                rescanned.rescan(Collections.singletonList(a), Collections.emptyList()).dependencies(a));
+    }
+
+    @Test
+    public void detectsExternalSourcesArgs() {
+        Assert.assertTrue(SourceGraph.followsSources(Arrays.asList("-a", "-x")));
+        Assert.assertTrue(SourceGraph.followsSources(Collections.singletonList("--external-sources")));
+        Assert.assertTrue(SourceGraph.followsSources(Collections.singletonList("-ax")));
+        Assert.assertFalse(SourceGraph.followsSources(Arrays.asList("-s", "bash", "--format=tty")));
+    }
+
+    private static Path write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,130 @@
+package dev.dimlight.maven.plugin.shellcheck;
+
+/*-
+ * #%L
+ * shellcheck-maven-plugin
+ * %%
+ * Copyright (C) 2020 Marco Nicolini
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.codehaus.plexus.util.ReflectionUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class WatchMojoTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void watchesAndReactsToTheIncludedFilesOnly() throws Exception {
+        final Path root = temporaryFolder.getRoot().toPath().toRealPath();
+        final Path one = write(root.resolve("a/one.sh"));
+        final Path readme = write(root.resolve("a/README.md"));
+        final Path vendored = write(root.resolve("vendor/lib.sh"));
+        final SourceDir sourceDir = new SourceDir();
+        sourceDir.setDirectory(root.toString());
+        sourceDir.addInclude("**/*.sh");
+        sourceDir.addExclude("vendor/**");
+        final WatchMojo mojo = new WatchMojo();
+        ReflectionUtils.setVariableValueInObject(mojo, "baseDir", root.toFile());
+        ReflectionUtils.setVariableValueInObject(mojo, "sourceDirs", Collections.singletonList(sourceDir));
+
+        Assert.assertEquals(Collections.singleton(one), mojo.discover());
+        try (DirectoryWatcher watcher = mojo.newDirectoryWatcher(Collections.singletonList(root))) {
+            // the root and "a", not the excluded "vendor"
+            Assert.assertEquals(2, watcher.getDirectoryCount());
+        }
+
+        Assert.assertEquals(Collections.singleton(one), mojo.affected(changes(one)));
+        // neither files not included nor excluded ones trigger the discovery of the new scripts
+        final Path created = write(root.resolve("a/created.sh"));
+        Assert.assertEquals(Collections.emptySet(), mojo.affected(changes(readme, vendored)));
+        Assert.assertEquals(Collections.singleton(created), mojo.affected(changes(created, readme)));
+
+        // a deleted directory holding scripts makes them gone
+        Files.delete(one);
+        Files.delete(created);
+        Files.delete(readme);
+        Files.delete(root.resolve("a"));
+        Assert.assertEquals(Collections.emptySet(), mojo.affected(changes(root.resolve("a"))));
+        write(one);
+        Assert.assertEquals(Collections.singleton(one), mojo.discover());
+    }
+
+    @Test
+    public void watchesTheDirectoriesOfSourcedFiles() throws Exception {
+        final Path root = temporaryFolder.getRoot().toPath().toRealPath();
+        final Path script = write(root.resolve("src/script.sh"), "source ../lib/common.bash\n");
+        final Path lib = write(root.resolve("lib/common.bash"), "echo lib\n");
+        write(root.resolve("lib/unused.bash"), "echo unused\n");
+        final SourceDir sourceDir = new SourceDir();
+        sourceDir.setDirectory(root.resolve("src").toString());
+        sourceDir.addInclude("**/*.sh");
+        final WatchMojo mojo = new WatchMojo();
+        ReflectionUtils.setVariableValueInObject(mojo, "baseDir", root.toFile());
+        ReflectionUtils.setVariableValueInObject(mojo, "sourceDirs", Collections.singletonList(sourceDir));
+        ReflectionUtils.setVariableValueInObject(mojo, "args", Collections.singletonList("-x"));
+
+        mojo.discover();
+        mojo.scanSources();
+        try (DirectoryWatcher watcher = mojo.newDirectoryWatcher(Collections.singletonList(root.resolve("src")))) {
+            Assert.assertEquals(1, watcher.getDirectoryCount());
+            mojo.watchDependencies(watcher);
+            Assert.assertEquals(2, watcher.getDirectoryCount());
+        }
+
+        // the library is neither in the source dir nor included, its dependents are checked again anyway
+        Assert.assertEquals(Collections.singleton(script), mojo.affected(changes(lib)));
+        Assert.assertEquals(Collections.emptySet(), mojo.affected(changes(root.resolve("lib/unused.bash"))));
+    }
+
+    @Test
+    public void listsTheCheckOnlyParametersSet() throws Exception {
+        final WatchMojo mojo = new WatchMojo();
+        Assert.assertEquals(Collections.emptyList(), mojo.getCheckOnlyParametersSet());
+        ReflectionUtils.setVariableValueInObject(mojo, "failBuildIfWarnings", true);
+        ReflectionUtils.setVariableValueInObject(mojo, "useBaseline", true);
+        Assert.assertEquals(Arrays.asList("failBuildIfWarnings", "useBaseline"), mojo.getCheckOnlyParametersSet());
+    }
+
+    private static DirectoryWatcher.Changes changes(Path... paths) {
+        return new DirectoryWatcher.Changes(new TreeSet<>(Arrays.asList(paths)), false);
+    }
+
+    private static Path write(Path file) throws IOException {
+        return write(file, "echo " + file.getFileName());
+    }
+
+    private static Path write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}